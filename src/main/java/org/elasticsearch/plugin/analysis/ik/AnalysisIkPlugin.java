@@ -1,19 +1,32 @@
 package org.elasticsearch.plugin.analysis.ik;
 
 import org.apache.lucene.analysis.Analyzer;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.node.DiscoveryNodes;
+import org.elasticsearch.common.settings.ClusterSettings;
+import org.elasticsearch.common.settings.IndexScopedSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.settings.SettingsFilter;
 import org.elasticsearch.index.analysis.AnalyzerProvider;
 import org.elasticsearch.index.analysis.IkAnalyzerProvider;
 import org.elasticsearch.index.analysis.IkTokenizerFactory;
 import org.elasticsearch.index.analysis.TokenizerFactory;
 import org.elasticsearch.indices.analysis.AnalysisModule;
+import org.elasticsearch.plugins.ActionPlugin;
 import org.elasticsearch.plugins.AnalysisPlugin;
 import org.elasticsearch.plugins.Plugin;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestHandler;
+import org.wltea.analyzer.dic.Dictionary;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 
-public class AnalysisIkPlugin extends Plugin implements AnalysisPlugin { // NOTE:htt, 分析插件
+public class AnalysisIkPlugin extends Plugin implements AnalysisPlugin, ActionPlugin { // NOTE:htt, 分析插件
 
 	public static String PLUGIN_NAME = "analysis-ik";
 
@@ -38,4 +51,16 @@ public class AnalysisIkPlugin extends Plugin implements AnalysisPlugin { // NOTE
         return extra;
     }
 
+    @Override
+    public List<RestHandler> getRestHandlers(Settings settings, RestController restController, ClusterSettings clusterSettings,
+            IndexScopedSettings indexScopedSettings, SettingsFilter settingsFilter,
+            IndexNameExpressionResolver indexNameExpressionResolver, Supplier<DiscoveryNodes> nodesInCluster) { // NOTE:htt, 注册词典统计接口
+        return Collections.singletonList(new RestIkDictionaryStatsAction(settings, restController));
+    }
+
+    @Override
+    public void close() { // NOTE:htt, 节点关闭时停止词库检查，释放远程词库的连接池
+        Dictionary.shutdown();
+    }
+
 }
@@ -0,0 +1,80 @@
+package org.elasticsearch.plugin.analysis.ik;
+
+import java.io.IOException;
+
+import org.elasticsearch.client.node.NodeClient;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.BytesRestResponse;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.wltea.analyzer.core.IKSegmenter;
+import org.wltea.analyzer.dic.AdmissionFilter;
+import org.wltea.analyzer.dic.Dictionary;
+import org.wltea.analyzer.dic.DictionaryStats;
+
+/**
+ * GET /_ik/dictionary/stats
+ *
+ * 返回接收请求的节点上各词典集合的结构统计、内存占用及加载、重新加载的耗时，以及准入过滤器、读入缓冲区的计数
+ */
+public class RestIkDictionaryStatsAction extends BaseRestHandler { // NOTE:htt, 词典统计接口
+
+    public RestIkDictionaryStatsAction(Settings settings, RestController controller) {
+        super(settings);
+        controller.registerHandler(RestRequest.Method.GET, "/_ik/dictionary/stats", this);
+    }
+
+    @Override
+    public String getName() {
+        return "ik_dictionary_stats_action";
+    }
+
+    @Override
+    protected RestChannelConsumer prepareRequest(RestRequest request, NodeClient client) throws IOException {
+        String nodeId = client.getLocalNodeId();
+        // 统计需遍历整个词典，在管理线程池中执行，不占用网络线程
+        return channel -> client.threadPool().executor(ThreadPool.Names.MANAGEMENT).execute(() -> {
+            try {
+                channel.sendResponse(new BytesRestResponse(RestStatus.OK, buildStats(channel.newBuilder(), nodeId, request)));
+            } catch (Exception e) {
+                try {
+                    channel.sendResponse(new BytesRestResponse(channel, e));
+                } catch (IOException inner) {
+                    inner.addSuppressed(e);
+                    logger.error("failed to send ik dictionary stats failure response", inner);
+                }
+            }
+        });
+    }
+
+    private static XContentBuilder buildStats(XContentBuilder builder, String nodeId, RestRequest request)
+            throws IOException {
+        builder.startObject();
+        builder.field("node", nodeId);
+        if (AdmissionFilter.isStatsEnabled()) { // NOTE:htt, 准入过滤器的计数仅在调试时开启
+            builder.startObject("admission_filter");
+            builder.field("first_char_hits", AdmissionFilter.getFirstCharHits());
+            builder.field("first_char_misses", AdmissionFilter.getFirstCharMisses());
+            builder.field("bigram_hits", AdmissionFilter.getBigramHits());
+            builder.field("bigram_misses", AdmissionFilter.getBigramMisses());
+            builder.endObject();
+        }
+        builder.startObject("buffer");
+        builder.field("growths", IKSegmenter.getBufferGrowths());
+        builder.field("forced_boundaries", IKSegmenter.getForcedBoundaries());
+        builder.endObject();
+        builder.startObject("dictionary_sets");
+        for (DictionaryStats stats : Dictionary.getAllStats()) { // NOTE:htt, 尚未初始化的词典集合不在结果中
+            builder.startObject(stats.getName());
+            stats.toXContent(builder, request);
+            builder.endObject();
+        }
+        builder.endObject();
+        builder.endObject();
+        return builder;
+    }
+}
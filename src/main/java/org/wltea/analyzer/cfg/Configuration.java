@@ -3,24 +3,57 @@
  */
 package org.wltea.analyzer.cfg;
 
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.index.IndexWriter;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.io.PathUtils;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.env.Environment;
 import org.elasticsearch.plugin.analysis.ik.AnalysisIkPlugin;
 import org.wltea.analyzer.dic.Dictionary;
+import org.wltea.analyzer.dic.DictionarySnapshot;
+import org.wltea.analyzer.dic.StopWordSet;
+import org.wltea.analyzer.help.ESPluginLoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
 public class Configuration { // NOTE:htt, ik配置，包括是否启用smart机制
 
+	//stopwords取该值时不过滤停用词
+	private static final String NO_STOPWORDS = "_none_";
+
+	//use_smart取该值时启用统计歧义处理
+	private static final String STATISTICAL_SMART = "statistical";
+	//use_smart取该值时按规则在全部不相交的词元组合中取最优
+	private static final String OPTIMAL_SMART = "optimal";
+
+	//缓冲区的默认大小及扩容上限（字符数）
+	private static final int DEFAULT_BUFFER_SIZE = 4096;
+	private static final int DEFAULT_MAX_BUFFER_SIZE = 256 * 1024;
+	//缓冲区最小须大于分词器预留的临界区
+	private static final int MIN_BUFFER_SIZE = 256;
+	//词元的默认最大长度（字符数）；上限保证每个字符按3个UTF-8字节计也不超过Lucene的词项长度限制
+	private static final int DEFAULT_MAX_TOKEN_LENGTH = 4096;
+	private static final int MAX_TOKEN_LENGTH_LIMIT = IndexWriter.MAX_TERM_LENGTH / 3;
+
+	private static final Logger logger = ESPluginLoggerFactory.getLogger(Configuration.class.getName());
+
 	private Environment environment;
 	private Settings settings;
 
 	//是否启用智能分词
 	private  boolean useSmart; // NOTE:htt, 是否启用smart机制，默认是不启用
 
+	//智能分词时按词频取一元语言模型概率最大的切分，否则按词元长度、个数等规则裁决
+	private boolean statisticalSmart = false;
+
+	//智能分词按规则裁决时在全部不相交的词元组合中取最优，否则只比较正向及逐个回退冲突词元得到的方案
+	private boolean optimalSmart = false;
+
 	//是否启用远程词典加载
 	private boolean enableRemoteDict=false; // NOTE:htt, 默认启用远程词典选项为true
 
@@ -30,20 +63,94 @@ public class Configuration { // NOTE:htt, ik配置，包括是否启用smart机
 	//是否开启自动检查词库变更
 	private boolean enableAutoCheckDict = true; // NOTE:htt, 默认为true
 
+	//是否使用Aho-Corasick自动机匹配主词典，输出与默认实现相同
+	private boolean useAhoCorasick = false;
+
+	//分析器自定义的停用词，为null则使用词典集合的停用词
+	private StopWordSet stopWordSet;
+
+	//词典集合名称，对应配置文件IKAnalyzer-{name}.cfg.xml，默认使用IKAnalyzer.cfg.xml
+	private String dictionarySet = Dictionary.DEFAULT_SET;
+
+	//读入缓冲区的大小，词元跨越缓冲区末端时扩容，最大到maxBufferSize，超出后在缓冲区末端强制切分
+	private int bufferSize = DEFAULT_BUFFER_SIZE;
+	private int maxBufferSize = DEFAULT_MAX_BUFFER_SIZE;
+
+	//词元的最大长度，更长的词元按该长度强制切分，与缓冲区大小无关
+	private int maxTokenLength = DEFAULT_MAX_TOKEN_LENGTH;
+
 	@Inject
 	public Configuration(Environment env,Settings settings) {
 		this.environment = env;
 		this.settings=settings;
 
-		this.useSmart = settings.get("use_smart", "false").equals("true");
+		String smart = settings.get("use_smart", "false");
+		this.useSmart = smart.equals("true") || smart.equals(STATISTICAL_SMART) || smart.equals(OPTIMAL_SMART);
+		this.statisticalSmart = smart.equals(STATISTICAL_SMART);
+		this.optimalSmart = smart.equals(OPTIMAL_SMART);
 		this.enableLowercase = settings.get("enable_lowercase", "true").equals("true");
 		this.enableRemoteDict = settings.get("enable_remote_dict", "true").equals("true");
 		this.enableAutoCheckDict = settings.get("enable_autocheck_dict", "true").equals("true");
+		this.useAhoCorasick = settings.get("use_aho_corasick", "false").equals("true");
+		this.dictionarySet = settings.get("dictionary_set", Dictionary.DEFAULT_SET);
+		if (!this.dictionarySet.matches("[A-Za-z0-9_\\-]+")) {
+			throw new IllegalArgumentException("invalid dictionary_set [" + this.dictionarySet + "], only letters, digits, '_' and '-' are allowed");
+		}
+
+		this.bufferSize = settings.getAsInt("buffer_size", DEFAULT_BUFFER_SIZE);
+		this.maxBufferSize = settings.getAsInt("max_buffer_size", Math.max(DEFAULT_MAX_BUFFER_SIZE, this.bufferSize));
+		if (this.bufferSize < MIN_BUFFER_SIZE || this.maxBufferSize < this.bufferSize) {
+			throw new IllegalArgumentException("invalid buffer_size [" + this.bufferSize + "] or max_buffer_size [" + this.maxBufferSize
+					+ "], buffer_size must be at least " + MIN_BUFFER_SIZE + " and not greater than max_buffer_size");
+		}
+		this.maxTokenLength = settings.getAsInt("max_token_length", DEFAULT_MAX_TOKEN_LENGTH);
+		if (this.maxTokenLength < 1 || this.maxTokenLength > MAX_TOKEN_LENGTH_LIMIT) {
+			throw new IllegalArgumentException("invalid max_token_length [" + this.maxTokenLength + "], must be between 1 and "
+					+ MAX_TOKEN_LENGTH_LIMIT);
+		}
+
+		this.stopWordSet = loadStopWords(env, settings);
 
 		Dictionary.initial(this);  // NOTE:htt, 初始化词库，包括本次词库，远程词库
+		if (this.useAhoCorasick) {
+			DictionarySnapshot snapshot = Dictionary.getDictionary(this.dictionarySet).getSnapshot();
+			if (snapshot.isAhoCorasickSupported()) {
+				//提前构建主词典的自动机，避免第一次分词时构建
+				snapshot.newMatcher();
+			} else {
+				// FST格式的主词典没有自动机，退回逐词匹配
+				logger.warn("use_aho_corasick is ignored, the main dictionary is not in double-array format");
+				this.useAhoCorasick = false;
+			}
+		}
 
 	}
 
+	/**
+	 * 加载分析器自定义的停用词
+	 * stopwords为词条列表，_none_表示不过滤停用词；stopwords_path为相对于ES配置目录的文本词典；均未设置时返回null
+	 */
+	private static StopWordSet loadStopWords(Environment env, Settings settings) {
+		List<String> words = settings.getAsList("stopwords", null);
+		String path = settings.get("stopwords_path");
+		if (words == null && path == null) {
+			return null;
+		}
+		List<String> stopWords = new ArrayList<String>();
+		if (words != null) {
+			for (String word : words) {
+				if (!NO_STOPWORDS.equals(word)) {
+					stopWords.add(word.trim());
+				}
+			}
+		}
+		try {
+			return StopWordSet.of(stopWords, path == null ? null : env.configFile().resolve(path));
+		} catch (IOException e) {
+			throw new IllegalArgumentException("failed to load stopwords_path [" + path + "]", e);
+		}
+	}
+
 	public Path getConfigInPluginDir() { // NOTE:htt, 获取ik配置目录
 		return PathUtils
 				.get(new File(AnalysisIkPlugin.class.getProtectionDomain().getCodeSource().getLocation().getPath())
@@ -60,6 +167,20 @@ public class Configuration { // NOTE:htt, ik配置，包括是否启用smart机
 		return this;
 	}
 
+	/**
+	 * 智能分词是否使用统计歧义处理，use_smart为statistical时启用；ik_smart之外的分析器不做歧义处理，该选项无效
+	 */
+	public boolean isStatisticalSmart() {
+		return statisticalSmart;
+	}
+
+	/**
+	 * 智能分词是否在全部不相交的词元组合中取最优，use_smart为optimal时启用；ik_smart之外的分析器不做歧义处理，该选项无效
+	 */
+	public boolean isOptimalSmart() {
+		return optimalSmart;
+	}
+
 	public Environment getEnvironment() {
 		return environment;
 	}
@@ -79,4 +200,40 @@ public class Configuration { // NOTE:htt, ik配置，包括是否启用smart机
 	public boolean isEnableAutoCheckDict() {
 		return enableAutoCheckDict;
 	}
+
+	public boolean isUseAhoCorasick() {
+		return useAhoCorasick;
+	}
+
+	/**
+	 * 分析器自定义的停用词，为null则使用词典集合的停用词
+	 */
+	public StopWordSet getStopWordSet() {
+		return stopWordSet;
+	}
+
+	public String getDictionarySet() {
+		return dictionarySet;
+	}
+
+	/**
+	 * 读入缓冲区的初始大小（字符数）
+	 */
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * 缓冲区扩容的上限（字符数）
+	 */
+	public int getMaxBufferSize() {
+		return maxBufferSize;
+	}
+
+	/**
+	 * 词元的最大长度（字符数）
+	 */
+	public int getMaxTokenLength() {
+		return maxTokenLength;
+	}
 }
@@ -0,0 +1,99 @@
+
+/**
+ * IK 中文分词  版本 5.0
+ * IK Analyzer release 5.0
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * 源代码由林良益(linliangyi2005@gmail.com)提供
+ * 版权声明 2012，乌龙茶工作室
+ * provided by Linliangyi and copyright 2012 by Oolong studio
+ * 
+ */
+package org.wltea.analyzer.core;
+
+import org.wltea.analyzer.dic.Hit;
+
+/**
+ * 子分词器正在匹配的词前缀
+ * 
+ * Hit对象放在数组中循环复用：size之前为活动的前缀，之后为空闲的Hit。
+ * 逐字推进时原地压缩，保持加入顺序；容量不足时扩容，稳定后每个字符不再分配对象
+ */
+final class ActiveHits {
+
+	private Hit[] hits = new Hit[16];
+	//活动的前缀数
+	private int size;
+	
+	int size(){
+		return this.size;
+	}
+	
+	boolean isEmpty(){
+		return this.size == 0;
+	}
+	
+	Hit get(int index){
+		return this.hits[index];
+	}
+	
+	/**
+	 * 取得一个空闲的Hit用于新的匹配，调用add后才成为活动的前缀
+	 */
+	Hit claim(){
+		if(this.size == this.hits.length){
+			Hit[] grown = new Hit[this.hits.length << 1];
+			System.arraycopy(this.hits, 0, grown, 0, this.size);
+			this.hits = grown;
+		}
+		Hit hit = this.hits[this.size];
+		if(hit == null){
+			hit = new Hit();
+			this.hits[this.size] = hit;
+		}
+		return hit;
+	}
+	
+	/**
+	 * 将claim取得的Hit加入活动的前缀
+	 */
+	void add(){
+		this.size++;
+	}
+	
+	/**
+	 * 保留第index个前缀，移动到第kept个位置；原位置上的Hit交换到index以便复用
+	 */
+	void keep(int index, int kept){
+		if(index != kept){
+			Hit hit = this.hits[kept];
+			this.hits[kept] = this.hits[index];
+			this.hits[index] = hit;
+		}
+	}
+	
+	/**
+	 * 只保留前size个前缀
+	 */
+	void truncate(int size){
+		this.size = size;
+	}
+	
+	void clear(){
+		this.size = 0;
+	}
+}
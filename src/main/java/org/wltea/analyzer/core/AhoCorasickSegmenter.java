@@ -0,0 +1,93 @@
+
+/**
+ * IK 中文分词  版本 5.0
+ * IK Analyzer release 5.0
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * 源代码由林良益(linliangyi2005@gmail.com)提供
+ * 版权声明 2012，乌龙茶工作室
+ * provided by Linliangyi and copyright 2012 by Oolong studio
+ * 
+ */
+package org.wltea.analyzer.core;
+
+import org.wltea.analyzer.dic.AhoCorasickMatcher;
+import org.wltea.analyzer.dic.DictionarySnapshot;
+
+
+/**
+ *  中文-日韩文子分词器，Aho-Corasick实现
+ *  
+ *  输出的词元与CJKSegmenter完全相同：每个字符只在自动机上转移一次，即得到以该字符结尾的全部词，
+ *  不需要为每个尚未结束的词前缀保留并逐个推进Hit，长文本及长词较多时开销更稳定
+ */
+class AhoCorasickSegmenter implements ISegmenter {
+	
+	//子分词器标签
+	static final String SEGMENTER_NAME = "AC_SEGMENTER";
+	//匹配器对应的词典快照
+	private DictionarySnapshot dictionary;
+	//主词典匹配器
+	private AhoCorasickMatcher matcher;
+
+	/* (non-Javadoc)
+	 * @see org.wltea.analyzer.core.ISegmenter#analyze(org.wltea.analyzer.core.AnalyzeContext)
+	 */
+	public void analyze(AnalyzeContext context) {
+		//词典快照在reset时更换，匹配器随之重建
+		if(this.dictionary != context.getDictionary()){
+			this.dictionary = context.getDictionary();
+			this.matcher = this.dictionary.newMatcher();
+		}
+		
+		if(CharacterUtil.CHAR_USELESS != context.getCurrentCharType()){
+			int cursor = context.getCursor();
+			int count = this.matcher.next(context.getSegmentBuff(), cursor);
+			for(int i = 0; i < count; i++){
+				int length = this.matcher.getLength(i);
+				//输出以当前字符结尾的词
+				context.addLexeme(cursor - length + 1 , length , Lexeme.TYPE_CNWORD);
+			}
+		}else{
+			//遇到CHAR_USELESS字符
+			//之后的字符不再与之前的字符成词
+			this.matcher.reset();
+		}
+		
+		//判断缓冲区是否已经读完
+		if(context.isBufferConsumed()){
+			this.matcher.reset();
+		}
+		
+		//判断是否锁定缓冲区
+		if(this.matcher.isPending()){
+			context.lockBuffer(SEGMENTER_NAME);
+		}else{
+			context.unlockBuffer(SEGMENTER_NAME);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.wltea.analyzer.core.ISegmenter#reset()
+	 */
+	public void reset() {
+		if(this.matcher != null){
+			this.matcher.reset();
+		}
+	}
+
+}
@@ -26,14 +26,14 @@ package org.wltea.analyzer.core;
 
 import java.io.IOException;
 import java.io.Reader;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.Map;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.wltea.analyzer.cfg.Configuration;
-import org.wltea.analyzer.dic.Dictionary;
+import org.wltea.analyzer.dic.DictionarySnapshot;
+import org.wltea.analyzer.dic.StopWordSet;
 
 /**
  * 
@@ -42,10 +42,12 @@ import org.wltea.analyzer.dic.Dictionary;
  */
 class AnalyzeContext { // NOTE:htt, 分词上下文内容
 	
-	//默认缓冲区大小
-	private static final int BUFF_SIZE = 4096;
 	//缓冲区耗尽的临界值
 	private static final int BUFF_EXHAUST_CRITICAL = 100;	
+
+	//缓冲区扩容次数，及达到上限或词元超过最大长度时强制切分的次数
+	private static final LongAdder bufferGrowths = new LongAdder();
+	private static final LongAdder forcedBoundaries = new LongAdder();
 	
  
 	//字符串读取缓冲
@@ -65,25 +67,32 @@ class AnalyzeContext { // NOTE:htt, 分词上下文内容
 	
 	//子分词器锁
     //该集合非空，说明有子分词器在占用segmentBuff
-    private Set<String> buffLocker;
+    private List<String> buffLocker;
     
-    //原始分词结果集合，未经歧义处理
-    private QuickSortSet orgLexemes; // NOTE:htt, 词元链表
-    //LexemePath位置索引表
-    private Map<Integer , LexemePath> pathMap;  // NOTE:htt, 词元链的位置索引
-    //最终分词结果集
-    private LinkedList<Lexeme> results; // NOTE:htt, 分词集合
+    //原始分词结果及歧义处理选出的路径
+    private LexemeLattice orgLexemes; // NOTE:htt, 词元网格
+    //最终分词结果队列：相对起始位置、长度、类型，取出时才生成Lexeme
+    private int[] resultBegins = new int[64]; // NOTE:htt, 分词集合
+    private int[] resultLengths = new int[64];
+    private int[] resultTypes = new int[64];
+    //队首及队尾
+    private int resultHead;
+    private int resultTail;
+    //结果队列中词元的起始位移
+    private int resultOffset;
 	//分词器配置项
 	private Configuration cfg; // NOTE:htt, ik配置，包括是否启用smart机制
+	//当前文档使用的词典快照
+	private DictionarySnapshot dictionary;
+	//当前文档使用的停用词：分析器自定义的停用词，或词典快照中的停用词
+	private StopWordSet stopWords;
 
     public AnalyzeContext(Configuration configuration){
         this.cfg = configuration;
-    	this.segmentBuff = new char[BUFF_SIZE];
-    	this.charTypes = new int[BUFF_SIZE];
-    	this.buffLocker = new HashSet<String>();
-    	this.orgLexemes = new QuickSortSet();
-    	this.pathMap = new HashMap<Integer , LexemePath>();    	
-    	this.results = new LinkedList<Lexeme>();
+    	this.segmentBuff = new char[configuration.getBufferSize()];
+    	this.charTypes = new int[configuration.getBufferSize()];
+    	this.buffLocker = new ArrayList<String>(4);
+    	this.orgLexemes = new LexemeLattice(configuration.getBufferSize());
     }
     
     int getCursor(){
@@ -101,10 +110,38 @@ class AnalyzeContext { // NOTE:htt, 分词上下文内容
     int getCurrentCharType(){
     	return this.charTypes[this.cursor];
     }
+
+    /**
+     * 规格化后的下一个字符，不移动指针
+     * 指针已在缓冲区末端时返回0
+     */
+    char peekNextChar(){
+    	if(this.cursor < this.available - 1){
+    		return CharacterUtil.regularize(this.segmentBuff[this.cursor + 1],cfg.isEnableLowercase());
+    	}
+    	return 0;
+    }
     
     int getBufferOffset(){
     	return this.buffOffset;
     }
+
+    /**
+     * 复用的上下文交给新的分词器时更换配置
+     */
+    void setConfiguration(Configuration configuration){
+    	this.cfg = configuration;
+    	this.resizeBuffer();
+    }
+
+    DictionarySnapshot getDictionary(){
+    	return this.dictionary;
+    }
+
+    void setDictionary(DictionarySnapshot dictionary){
+    	this.dictionary = dictionary;
+    	this.stopWords = cfg.getStopWordSet() != null ? cfg.getStopWordSet() : dictionary.getStopWordSet();
+    }
 	
     /**
      * 根据context的上下文情况，填充segmentBuff 
@@ -125,7 +162,7 @@ class AnalyzeContext { // NOTE:htt, 分词上下文内容
     			readCount = offset;
     		}
     		//继续读取reader ，以onceReadIn - onceAnalyzed为起始位置，继续填充segmentBuff剩余的部分
-    		readCount += reader.read(this.segmentBuff , offset , BUFF_SIZE - offset);
+    		readCount += reader.read(this.segmentBuff , offset , this.segmentBuff.length - offset);
     	}            	
     	//记录最后一次从Reader中读入的可用字符长度
     	this.available = readCount;
@@ -165,7 +202,9 @@ class AnalyzeContext { // NOTE:htt, 分词上下文内容
      * @param segmenterName
      */
 	void lockBuffer(String segmenterName){ // NOTE:htt, 加入segmentBuff的子分词器名称
-		this.buffLocker.add(segmenterName);
+		if(!this.buffLocker.contains(segmenterName)){ // NOTE:htt, 子分词器逐字加锁解锁，用列表避免反复分配散列节点
+			this.buffLocker.add(segmenterName);
+		}
 	}
 	
 	/**
@@ -194,18 +233,54 @@ class AnalyzeContext { // NOTE:htt, 分词上下文内容
 		return this.cursor == this.available - 1;
 	}
 	
+	/**
+	 * 缓冲区已读满、指针到达末端且仍有子分词器占用缓冲区时（词元跨越缓冲区末端），扩容并继续读入，
+	 * 须在处理末端字符之前调用。扩容到上限后不再扩容，记一次强制切分，子分词器在末端输出已处理的部分
+	 * @return 是否读入了新的字符
+	 */
+	boolean growBuffer(Reader reader) throws IOException{
+		if(this.cursor != this.available - 1 || this.available != this.segmentBuff.length || !this.isBufferLocked()){
+			return false;
+		}
+		int maxSize = this.cfg.getMaxBufferSize();
+		if(this.segmentBuff.length >= maxSize){
+			forcedBoundaries.increment();
+			return false;
+		}
+		int capacity = (int) Math.min((long) this.segmentBuff.length << 1, maxSize);
+		this.segmentBuff = Arrays.copyOf(this.segmentBuff, capacity);
+		this.charTypes = Arrays.copyOf(this.charTypes, capacity);
+		bufferGrowths.increment();
+		int readCount = reader.read(this.segmentBuff , this.available , capacity - this.available);
+		if(readCount <= 0){
+			return false;
+		}
+		this.available += readCount;
+		return true;
+	}
+
+	/**
+	 * 缓冲区大小与配置不同时（扩容过，或换了配置）按配置重新分配
+	 */
+	private void resizeBuffer(){
+		if(this.segmentBuff.length != this.cfg.getBufferSize()){
+			this.segmentBuff = new char[this.cfg.getBufferSize()];
+			this.charTypes = new int[this.cfg.getBufferSize()];
+		}
+	}
+
 	/**
 	 * 判断segmentBuff是否需要读取新数据
 	 * 
 	 * 满足一下条件时，
-	 * 1.available == BUFF_SIZE 表示buffer满载
+	 * 1.available == segmentBuff.length 表示buffer满载
 	 * 2.buffIndex < available - 1 && buffIndex > available - BUFF_EXHAUST_CRITICAL表示当前指针处于临界区内
 	 * 3.!context.isBufferLocked()表示没有segmenter在占用buffer
 	 * 要中断当前循环（buffer要进行移位，并再读取数据的操作）
 	 * @return
 	 */
 	boolean needRefillBuffer(){ // NOTE:htt, 是否要取新数据
-		return this.available == BUFF_SIZE 
+		return this.available == this.segmentBuff.length 
 			&& this.cursor < this.available - 1   
 			&& this.cursor  > this.available - BUFF_EXHAUST_CRITICAL
 			&& !this.isBufferLocked();
@@ -220,39 +295,36 @@ class AnalyzeContext { // NOTE:htt, 分词上下文内容
 	
 	/**
 	 * 向分词结果集添加词元
-	 * @param lexeme
+	 * @param begin 相对起始位置
+	 * @param length 长度
+	 * @param lexemeType 词元类型
 	 */
-	void addLexeme(Lexeme lexeme){
-		this.orgLexemes.addLexeme(lexeme);
+	void addLexeme(int begin , int length , int lexemeType){
+		this.orgLexemes.add(begin, length, lexemeType);
 	}
 	
 	/**
-	 * 添加分词结果路径
-	 * 路径起始位置 ---> 路径 映射表
-	 * @param path
-	 */
-	void addLexemePath(LexemePath path){ // NOTE:htt, 添加分词结果路径
-		if(path != null){
-			this.pathMap.put(path.getPathBegin(), path);
-		}
-	}
-	
-	
-	/**
-	 * 返回原始分词结果
+	 * 返回原始分词结果，歧义处理选出的路径也记录在其中
 	 * @return
 	 */
-	QuickSortSet getOrgLexemes(){
+	LexemeLattice getOrgLexemes(){
 		return this.orgLexemes;
 	}
 	
 	/**
 	 * 推送分词结果到结果集合
 	 * 1.从buff头部遍历到this.cursor已处理位置
-	 * 2.将map中存在的分词结果推入results
-	 * 3.将map中不存在的CJDK字符以单字方式推入results
+	 * 2.将起始于当前位置的路径中的词元推入results
+	 * 3.不在路径中的CJDK字符以单字方式推入results
+	 * 调用时上一轮的结果已全部取出
 	 */
 	void outputToResult(){ // NOTE:htt, 输出 [index, cursor]之间的分词
+		LexemeLattice lattice = this.orgLexemes;
+		this.resultHead = 0;
+		this.resultTail = 0;
+		this.resultOffset = this.buffOffset;
+		//路径按起始位置排列，依次匹配
+		int path = 0;
 		int index = 0;
 		for( ; index <= this.cursor ;){
 			//跳过非CJK字符
@@ -260,32 +332,32 @@ class AnalyzeContext { // NOTE:htt, 分词上下文内容
 				index++;
 				continue;
 			}
-			//从pathMap找出对应index位置的LexemePath
-			LexemePath path = this.pathMap.get(index);
-			if(path != null){
-				//输出LexemePath中的lexeme到results集合
-				Lexeme l = path.pollFirst();
-				while(l != null){
-					this.results.add(l); // NOTE:htt, 添加到result集合中
-					
-					//将index移至lexeme后
-					index = l.getBegin() + l.getLength();					
-					l = path.pollFirst();
-					if(l != null){
-						//输出path内部，词元间遗漏的单字
-						for(;index < l.getBegin();index++){ // NOTE:htt, 输出词元遗漏词
-							this.outputSingleCJK(index); // NOTE:htt, 对CJK字符输出
-						}
+			//跳过没有词元的路径，及起始位置已越过的路径
+			while(path < lattice.getPathCount() && (lattice.getPathStart(path) == lattice.getPathEnd(path)
+					|| lattice.getBegin(lattice.getChosen(lattice.getPathStart(path))) < index)){
+				path++;
+			}
+			if(path < lattice.getPathCount() && lattice.getBegin(lattice.getChosen(lattice.getPathStart(path))) == index){
+				//输出路径中的词元到results集合
+				for(int c = lattice.getPathStart(path), end = lattice.getPathEnd(path); c < end; c++){
+					int l = lattice.getChosen(c);
+					//输出path内部，词元间遗漏的单字
+					for(;index < lattice.getBegin(l);index++){ // NOTE:htt, 输出词元遗漏词
+						this.outputSingleCJK(index); // NOTE:htt, 对CJK字符输出
 					}
+					this.addResult(lattice.getBegin(l), lattice.getLength(l), lattice.getType(l)); // NOTE:htt, 添加到result集合中
+					//将index移至lexeme后
+					index = lattice.getBegin(l) + lattice.getLength(l);
 				}
-			}else{//pathMap中找不到index对应的LexemePath
+				path++;
+			}else{//没有起始于index的路径
 				//单字输出
 				this.outputSingleCJK(index);
 				index++;
 			}
 		}
-		//清空当前的Map
-		this.pathMap.clear();
+		//清空词元及路径
+		lattice.clear();
 	}
 	
 	/**
@@ -294,13 +366,43 @@ class AnalyzeContext { // NOTE:htt, 分词上下文内容
 	 */
 	private void outputSingleCJK(int index){ // NOTE:htt, 对CJK字符输出
 		if(CharacterUtil.CHAR_CHINESE == this.charTypes[index]){			
-			Lexeme singleCharLexeme = new Lexeme(this.buffOffset , index , 1 , Lexeme.TYPE_CNCHAR);
-			this.results.add(singleCharLexeme);
+			this.addResult(index , 1 , Lexeme.TYPE_CNCHAR);
 		}else if(CharacterUtil.CHAR_OTHER_CJK == this.charTypes[index]){
-			Lexeme singleCharLexeme = new Lexeme(this.buffOffset , index , 1 , Lexeme.TYPE_OTHER_CJK);
-			this.results.add(singleCharLexeme);
+			this.addResult(index , 1 , Lexeme.TYPE_OTHER_CJK);
 		}
 	}
+	
+	/**
+	 * 向结果队列尾部添加词元，超过max_token_length的词元按该长度强制切分，避免超出Lucene的词项长度限制
+	 */
+	private void addResult(int begin , int length , int lexemeType){
+		int maxLength = this.cfg.getMaxTokenLength();
+		while(length > maxLength){
+			int cut = maxLength;
+			//不在代理对中间切分
+			if(cut > 1 && Character.isLowSurrogate(this.segmentBuff[begin + cut])){
+				cut--;
+			}
+			this.enqueueResult(begin, cut, lexemeType);
+			forcedBoundaries.increment();
+			begin += cut;
+			length -= cut;
+		}
+		this.enqueueResult(begin, length, lexemeType);
+	}
+
+	private void enqueueResult(int begin , int length , int lexemeType){
+		if(this.resultTail == this.resultBegins.length){
+			int capacity = this.resultTail << 1;
+			this.resultBegins = Arrays.copyOf(this.resultBegins, capacity);
+			this.resultLengths = Arrays.copyOf(this.resultLengths, capacity);
+			this.resultTypes = Arrays.copyOf(this.resultTypes, capacity);
+		}
+		this.resultBegins[this.resultTail] = begin;
+		this.resultLengths[this.resultTail] = length;
+		this.resultTypes[this.resultTail] = lexemeType;
+		this.resultTail++;
+	}
 		
 	/**
 	 * 返回lexeme 
@@ -309,80 +411,112 @@ class AnalyzeContext { // NOTE:htt, 分词上下文内容
 	 * @return
 	 */
 	Lexeme getNextLexeme(){ // NOTE:htt, 获取下一个result词元，如果启动smart则会组合，如果为停用词则继续查找
-		//从结果集取出，并移除第一个Lexme
-		Lexeme result = this.results.pollFirst();
-		while(result != null){
+		//从结果队列取出第一个词元
+		while(this.resultHead < this.resultTail){
+			int result = this.resultHead++;
     		//数量词合并
     		this.compound(result); // NOTE:htt, 如果启动smart，并且当前词元为数字则可以组合，并且当前再次为中文数字可进行二次组合
-    		if(Dictionary.getSingleton().isStopWord(this.segmentBuff ,  result.getBegin() , result.getLength())){ // NOTE:htt, 如果为停用词则取下一个词元
-       			//是停止词继续取列表的下一个
-    			result = this.results.pollFirst(); 				
-    		}else{
+    		int begin = this.resultBegins[result];
+    		int length = this.resultLengths[result];
+    		if(!this.stopWords.contains(this.segmentBuff , begin , length)){ // NOTE:htt, 如果为停用词则取下一个词元
 	 			//不是停止词, 生成lexeme的词元文本,输出
-	    		result.setLexemeText(String.valueOf(segmentBuff , result.getBegin() , result.getLength())); // NOTE:htt, 设置词元
-	    		break;
+    			Lexeme lexeme = new Lexeme(this.resultOffset , begin , length , this.resultTypes[result]);
+	    		lexeme.setLexemeText(String.valueOf(segmentBuff , begin , length)); // NOTE:htt, 设置词元
+	    		return lexeme;
     		}
+   			//是停止词继续取队列的下一个
 		}
-		return result;
+		return null;
 	}
 	
 	/**
 	 * 重置分词上下文状态
+	 * 缓冲区及词元数组原样复用，只清空指针，扩容过的缓冲区恢复为配置的大小；同时释放词典快照，空闲的上下文不持有已替换的词典
 	 */
 	void reset(){		
+		this.resizeBuffer();
 		this.buffLocker.clear();
-        this.orgLexemes = new QuickSortSet();
+        this.orgLexemes.clear();
         this.available =0;
         this.buffOffset = 0;
-    	this.charTypes = new int[BUFF_SIZE];
     	this.cursor = 0;
-    	this.results.clear();
-    	this.segmentBuff = new char[BUFF_SIZE];
-    	this.pathMap.clear();
+    	this.resultHead = 0;
+    	this.resultTail = 0;
+    	this.dictionary = null;
+    	this.stopWords = null;
 	}
 	
 	/**
-	 * 组合词元
+	 * 组合词元：与结果队列中紧随其后的词元合并
+	 * @param result 刚取出的词元在队列中的下标
 	 */
-	private void compound(Lexeme result){ // NOTE:htt, 如果启动smart，并且当前词元为数字则可以组合，并且当前再次为中文数字可进行二次组合
+	private void compound(int result){ // NOTE:htt, 如果启动smart，并且当前词元为数字则可以组合，并且当前再次为中文数字可进行二次组合
 
 		if(!this.cfg.isUseSmart()){ // NOTE:htt, 如果不采用smart，则不进行组合
 			return ;
 		}
    		//数量词合并处理
-		if(!this.results.isEmpty()){
+		if(this.resultHead < this.resultTail){
 
-			if(Lexeme.TYPE_ARABIC == result.getLexemeType()){ // NOTE:htt, 如果当前词元是数字，则可以和后续类型进行合并(后续类型为数字、量词)
-				Lexeme nextLexeme = this.results.peekFirst();
+			if(Lexeme.TYPE_ARABIC == this.resultTypes[result]){ // NOTE:htt, 如果当前词元是数字，则可以和后续类型进行合并(后续类型为数字、量词)
+				int nextType = this.resultTypes[this.resultHead];
 				boolean appendOk = false;
-				if(Lexeme.TYPE_CNUM == nextLexeme.getLexemeType()){
+				if(Lexeme.TYPE_CNUM == nextType){
 					//合并英文数词+中文数词
-					appendOk = result.append(nextLexeme, Lexeme.TYPE_CNUM);
-				}else if(Lexeme.TYPE_COUNT == nextLexeme.getLexemeType()){
+					appendOk = this.append(result, Lexeme.TYPE_CNUM);
+				}else if(Lexeme.TYPE_COUNT == nextType){
 					//合并英文数词+中文量词
-					appendOk = result.append(nextLexeme, Lexeme.TYPE_CQUAN);
+					appendOk = this.append(result, Lexeme.TYPE_CQUAN);
 				}
 				if(appendOk){
 					//弹出
-					this.results.pollFirst(); 
+					this.resultHead++; 
 				}
 			}
 			
 			//可能存在第二轮合并
-			if(Lexeme.TYPE_CNUM == result.getLexemeType() && !this.results.isEmpty()){ // NOTE:htt, 如果继续为中文数字并且result中有词元则可能继续合并
-				Lexeme nextLexeme = this.results.peekFirst();
+			if(Lexeme.TYPE_CNUM == this.resultTypes[result] && this.resultHead < this.resultTail){ // NOTE:htt, 如果继续为中文数字并且result中有词元则可能继续合并
 				boolean appendOk = false;
-				 if(Lexeme.TYPE_COUNT == nextLexeme.getLexemeType()){
+				 if(Lexeme.TYPE_COUNT == this.resultTypes[this.resultHead]){
 					 //合并中文数词+中文量词
- 					appendOk = result.append(nextLexeme, Lexeme.TYPE_CQUAN);
+ 					appendOk = this.append(result, Lexeme.TYPE_CQUAN);
  				}  
 				if(appendOk){
 					//弹出
-					this.results.pollFirst();   				
+					this.resultHead++;   				
 				}
 			}
 
 		}
 	}
 	
+	/**
+	 * 合并队首的词元到result之后，与Lexeme.append相同，须首尾相接；合并后超过max_token_length时不合并
+	 * @return 是否成功合并
+	 */
+	private boolean append(int result , int lexemeType){
+		int next = this.resultHead;
+		if(this.resultBegins[result] + this.resultLengths[result] == this.resultBegins[next]
+				&& this.resultLengths[result] + this.resultLengths[next] <= this.cfg.getMaxTokenLength()){
+			this.resultLengths[result] += this.resultLengths[next];
+			this.resultTypes[result] = lexemeType;
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * 缓冲区扩容的累计次数
+	 */
+	static long getBufferGrowths(){
+		return bufferGrowths.sum();
+	}
+
+	/**
+	 * 缓冲区达到上限、词元在缓冲区末端被强制切分，及词元超过max_token_length被切分的累计次数
+	 */
+	static long getForcedBoundaries(){
+		return forcedBoundaries.sum();
+	}
+	
 }
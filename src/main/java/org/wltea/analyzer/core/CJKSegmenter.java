@@ -25,12 +25,10 @@
  */
 package org.wltea.analyzer.core;
 
-import org.wltea.analyzer.dic.Dictionary;
+import org.wltea.analyzer.dic.AdmissionFilter;
+import org.wltea.analyzer.dic.DictionarySnapshot;
 import org.wltea.analyzer.dic.Hit;
 
-import java.util.LinkedList;
-import java.util.List;
-
 
 /**
  *  中文-日韩文子分词器
@@ -39,58 +37,67 @@ class CJKSegmenter implements ISegmenter { // NOTE:htt, 中日韩分词
 	
 	//子分词器标签
 	static final String SEGMENTER_NAME = "CJK_SEGMENTER";
-	//待处理的分词hit队列
-	private List<Hit> tmpHits;
+	//待处理的分词hit队列，Hit循环复用
+	private ActiveHits tmpHits;
 	
 	
 	CJKSegmenter(){
-		this.tmpHits = new LinkedList<Hit>();
+		this.tmpHits = new ActiveHits();
 	}
 
 	/* (non-Javadoc)
 	 * @see org.wltea.analyzer.core.ISegmenter#analyze(org.wltea.analyzer.core.AnalyzeContext)
 	 */
 	public void analyze(AnalyzeContext context) {
+		//当前字是词前缀，但与下一个字不可能成词而未生成hit；仍需锁定缓冲区，与逐字匹配时一致
+		boolean deadPrefix = false;
 		if(CharacterUtil.CHAR_USELESS != context.getCurrentCharType()){
 			
+			DictionarySnapshot dictionary = context.getDictionary();
 			//优先处理tmpHits中的hit
 			if(!this.tmpHits.isEmpty()){
-				//处理词段队列
-				Hit[] tmpArray = this.tmpHits.toArray(new Hit[this.tmpHits.size()]);
-				for(Hit hit : tmpArray){
-					hit = Dictionary.getSingleton().matchWithHit(context.getSegmentBuff(), context.getCursor() , hit);
+				//处理词段队列，仍是词前缀的hit按原顺序保留
+				int kept = 0;
+				for(int i = 0, size = this.tmpHits.size(); i < size; i++){
+					Hit hit = dictionary.matchWithHit(context.getSegmentBuff(), context.getCursor() , this.tmpHits.get(i));
 					if(hit.isMatch()){
 						//输出当前的词
-						Lexeme newLexeme = new Lexeme(context.getBufferOffset() , hit.getBegin() , context.getCursor() - hit.getBegin() + 1 , Lexeme.TYPE_CNWORD);
-						context.addLexeme(newLexeme); // NOTE:htt, 添加中文分词
-						
-						if(!hit.isPrefix()){//不是词前缀，hit不需要继续匹配，移除
-							this.tmpHits.remove(hit);
-						}
-						
-					}else if(hit.isUnmatch()){
-						//hit不是词，移除
-						this.tmpHits.remove(hit);
-					}					
+						context.addLexeme(hit.getBegin() , context.getCursor() - hit.getBegin() + 1 , Lexeme.TYPE_CNWORD); // NOTE:htt, 添加中文分词
+					}
+					if(hit.isPrefix()){//是词前缀，hit需要继续匹配；否则不再保留
+						this.tmpHits.keep(i, kept++);
+					}
 				}
+				this.tmpHits.truncate(kept);
 			}			
 			
 			//*********************************
 			//再对当前指针位置的字符进行单字匹配
-			Hit singleCharHit = Dictionary.getSingleton().matchInMainDict(context.getSegmentBuff(), context.getCursor(), 1); // NOTE:htt, 判断是否主词库
-			if(singleCharHit.isMatch()){//首字成词
-				//输出当前的词
-				Lexeme newLexeme = new Lexeme(context.getBufferOffset() , context.getCursor() , 1 , Lexeme.TYPE_CNWORD); // NOTE:htt, 本次满足的词元
-				context.addLexeme(newLexeme); // NOTE:htt, 添加中文分词
+			AdmissionFilter filter = dictionary.getMainFilter();
+			char currentChar = context.getCurrentChar();
+			if(filter.mayStart(currentChar)){//不可能是词首的字不查询词典
+				if(!context.isBufferConsumed() && !filter.mayStart(currentChar , context.peekNextChar())){
+					//与下一个字不可能成词，只需判断单字
+					if(filter.isSingleWord(currentChar)){
+						context.addLexeme(context.getCursor() , 1 , Lexeme.TYPE_CNWORD);
+					}
+					deadPrefix = filter.isPrefix(currentChar);
+				}else{
+					Hit singleCharHit = dictionary.matchInMainDict(context.getSegmentBuff(), context.getCursor(), 1, this.tmpHits.claim()); // NOTE:htt, 判断是否主词库
+					if(singleCharHit.isMatch()){//首字成词
+						//输出当前的词
+						context.addLexeme(context.getCursor() , 1 , Lexeme.TYPE_CNWORD); // NOTE:htt, 添加中文分词
 
-				//同时也是词前缀
-				if(singleCharHit.isPrefix()){ // NOTE:htt, 如果是前缀，则从t添加到mpHits
-					//前缀匹配则放入hit列表
-					this.tmpHits.add(singleCharHit);
+						//同时也是词前缀
+						if(singleCharHit.isPrefix()){ // NOTE:htt, 如果是前缀，则从t添加到mpHits
+							//前缀匹配则放入hit列表
+							this.tmpHits.add();
+						}
+					}else if(singleCharHit.isPrefix()){//首字为词前缀
+						//前缀匹配则放入hit列表
+						this.tmpHits.add();
+					}
 				}
-			}else if(singleCharHit.isPrefix()){//首字为词前缀
-				//前缀匹配则放入hit列表
-				this.tmpHits.add(singleCharHit);
 			}
 			
 
@@ -107,7 +114,7 @@ class CJKSegmenter implements ISegmenter { // NOTE:htt, 中日韩分词
 		}
 		
 		//判断是否锁定缓冲区
-		if(this.tmpHits.size() == 0){
+		if(this.tmpHits.size() == 0 && !deadPrefix){
 			context.unlockBuffer(SEGMENTER_NAME);
 			
 		}else{
@@ -24,12 +24,9 @@
  */
 package org.wltea.analyzer.core;
 
-import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Set;
+import java.util.Arrays;
 
-import org.wltea.analyzer.dic.Dictionary;
+import org.wltea.analyzer.dic.DictionarySnapshot;
 import org.wltea.analyzer.dic.Hit;
 
 /**
@@ -43,12 +40,9 @@ class CN_QuantifierSegmenter implements ISegmenter{ // NOTE:htt, 分析中文量
 	
 	//中文数词
 	private static String Chn_Num = "一二两三四五六七八九十零壹贰叁肆伍陆柒捌玖拾百千万亿拾佰仟萬億兆卅廿";//Cnum
-	private static Set<Character> ChnNumberChars = new HashSet<Character>(); // NOTE:htt, 保存中文数字
+	private static final char[] ChnNumberChars = Chn_Num.toCharArray(); // NOTE:htt, 保存中文数字，排序后二分查找，避免装箱
 	static{
-		char[] ca = Chn_Num.toCharArray();
-		for(char nChar : ca){
-			ChnNumberChars.add(nChar);
-		}
+		Arrays.sort(ChnNumberChars);
 	}
 	
 	/*
@@ -63,14 +57,14 @@ class CN_QuantifierSegmenter implements ISegmenter{ // NOTE:htt, 分析中文量
 	 */
 	private int nEnd;
 
-	//待处理的量词hit队列
-	private List<Hit> countHits;
+	//待处理的量词hit队列，Hit循环复用
+	private ActiveHits countHits;
 	
 	
 	CN_QuantifierSegmenter(){
 		nStart = -1;
 		nEnd = -1;
-		this.countHits  = new LinkedList<Hit>();
+		this.countHits  = new ActiveHits();
 	}
 	
 	/**
@@ -107,14 +101,14 @@ class CN_QuantifierSegmenter implements ISegmenter{ // NOTE:htt, 分析中文量
 	private void processCNumber(AnalyzeContext context){ // NOTE:htt, 处理中文数字
 		if(nStart == -1 && nEnd == -1){//初始状态
 			if(CharacterUtil.CHAR_CHINESE == context.getCurrentCharType() 
-					&& ChnNumberChars.contains(context.getCurrentChar())){
+					&& Arrays.binarySearch(ChnNumberChars, context.getCurrentChar()) >= 0){
 				//记录数词的起始、结束位置
 				nStart = context.getCursor();
 				nEnd = context.getCursor();
 			}
 		}else{//正在处理状态
 			if(CharacterUtil.CHAR_CHINESE == context.getCurrentCharType() 
-					&& ChnNumberChars.contains(context.getCurrentChar())){
+					&& Arrays.binarySearch(ChnNumberChars, context.getCurrentChar()) >= 0){
 				//记录数词的结束位置
 				nEnd = context.getCursor();
 			}else{
@@ -147,45 +141,39 @@ class CN_QuantifierSegmenter implements ISegmenter{ // NOTE:htt, 分析中文量
 		}
 		
 		if(CharacterUtil.CHAR_CHINESE == context.getCurrentCharType()){
-			
+			DictionarySnapshot dictionary = context.getDictionary();
 			//优先处理countHits中的hit
 			if(!this.countHits.isEmpty()){
-				//处理词段队列
-				Hit[] tmpArray = this.countHits.toArray(new Hit[this.countHits.size()]);
-				for(Hit hit : tmpArray){
-					hit = Dictionary.getSingleton().matchWithHit(context.getSegmentBuff(), context.getCursor() , hit);
+				//处理词段队列，仍是词前缀的hit按原顺序保留
+				int kept = 0;
+				for(int i = 0, size = this.countHits.size(); i < size; i++){
+					Hit hit = dictionary.matchWithHit(context.getSegmentBuff(), context.getCursor() , this.countHits.get(i));
 					if(hit.isMatch()){
 						//输出当前的词
-						Lexeme newLexeme = new Lexeme(context.getBufferOffset() , hit.getBegin() , context.getCursor() - hit.getBegin() + 1 , Lexeme.TYPE_COUNT);
-						context.addLexeme(newLexeme); // NOTE:htt, 如果是量词则添加到context
-						
-						if(!hit.isPrefix()){//不是词前缀，hit不需要继续匹配，移除
-							this.countHits.remove(hit);
-						}
-						
-					}else if(hit.isUnmatch()){
-						//hit不是词，移除
-						this.countHits.remove(hit);
-					}					
+						context.addLexeme(hit.getBegin() , context.getCursor() - hit.getBegin() + 1 , Lexeme.TYPE_COUNT); // NOTE:htt, 如果是量词则添加到context
+					}
+					if(hit.isPrefix()){//是词前缀，hit需要继续匹配；否则不再保留
+						this.countHits.keep(i, kept++);
+					}
 				}
+				this.countHits.truncate(kept);
 			}				
 
 			//*********************************
 			//对当前指针位置的字符进行单字匹配
-			Hit singleCharHit = Dictionary.getSingleton().matchInQuantifierDict(context.getSegmentBuff(), context.getCursor(), 1);
+			Hit singleCharHit = dictionary.matchInQuantifierDict(context.getSegmentBuff(), context.getCursor(), 1, this.countHits.claim());
 			if(singleCharHit.isMatch()){//首字成量词词
 				//输出当前的词
-				Lexeme newLexeme = new Lexeme(context.getBufferOffset() , context.getCursor() , 1 , Lexeme.TYPE_COUNT);
-				context.addLexeme(newLexeme); // NOTE:htt, 如果是量词则添加到context
+				context.addLexeme(context.getCursor() , 1 , Lexeme.TYPE_COUNT); // NOTE:htt, 如果是量词则添加到context
 
 				//同时也是词前缀
 				if(singleCharHit.isPrefix()){ // NOTE:htt, 如果是词前缀则加入hit列表继续判断
 					//前缀匹配则放入hit列表
-					this.countHits.add(singleCharHit);
+					this.countHits.add();
 				}
 			}else if(singleCharHit.isPrefix()){//首字为量词前缀
 				//前缀匹配则放入hit列表
-				this.countHits.add(singleCharHit);// NOTE:htt, 如果是词前缀则加入hit列表继续判断
+				this.countHits.add();// NOTE:htt, 如果是词前缀则加入hit列表继续判断
 			}
 		}else{
 			//输入的不是中文字符
@@ -210,10 +198,11 @@ class CN_QuantifierSegmenter implements ISegmenter{ // NOTE:htt, 分析中文量
 			return true;
 		}else{
 			//找到一个相邻的数词
-			if(!context.getOrgLexemes().isEmpty()){ // NOTE:htt, 如何和数字相邻则继续扫描量词
-				Lexeme l = context.getOrgLexemes().peekLast();
-				if((Lexeme.TYPE_CNUM == l.getLexemeType() ||  Lexeme.TYPE_ARABIC == l.getLexemeType())
-					&& (l.getBegin() + l.getLength() == context.getCursor())){
+			LexemeLattice orgLexemes = context.getOrgLexemes();
+			if(!orgLexemes.isEmpty()){ // NOTE:htt, 如何和数字相邻则继续扫描量词
+				int l = orgLexemes.last();
+				if((Lexeme.TYPE_CNUM == orgLexemes.getType(l) ||  Lexeme.TYPE_ARABIC == orgLexemes.getType(l))
+					&& (orgLexemes.getBegin(l) + orgLexemes.getLength(l) == context.getCursor())){
 					return true;
 				}
 			}
@@ -228,8 +217,7 @@ class CN_QuantifierSegmenter implements ISegmenter{ // NOTE:htt, 分析中文量
 	private void outputNumLexeme(AnalyzeContext context){ // NOTE:htt, 添加中文数字词元到context
 		if(nStart > -1 && nEnd > -1){
 			//输出数词
-			Lexeme newLexeme = new Lexeme(context.getBufferOffset() , nStart , nEnd - nStart + 1 , Lexeme.TYPE_CNUM);
-			context.addLexeme(newLexeme); // NOTE:htt, 添加中文数字
+			context.addLexeme(nStart , nEnd - nStart + 1 , Lexeme.TYPE_CNUM); // NOTE:htt, 添加中文数字
 			
 		}
 	}
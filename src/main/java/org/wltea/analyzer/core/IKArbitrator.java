@@ -24,128 +24,453 @@
  */
 package org.wltea.analyzer.core;
 
-import java.util.Stack;
-import java.util.TreeSet;
+import java.util.Arrays;
+
+import org.wltea.analyzer.dic.DictionarySnapshot;
+
 
 /**
  * IK分词歧义裁决器
+ *
+ * 默认的规则裁决与原实现相同：正向取不相交词元得到第一个方案，再逐个回退冲突词元生成其余方案，
+ * 各方案在生成时增量计算比较所需的权重，不再复制词元链。use_smart为optimal时在全部不相交组合中取最优，
+ * use_smart为statistical时按词频裁决，二者都以词元为边做动态规划，代价与词元数及路径长度成正比。
+ * 工作数组按需扩容，由同一分词器处理的各crossPath复用
  */
 class IKArbitrator { // NOTE:Htt, IK分词歧义处理器
 
+	//单个crossPath参与裁决的词元数上限，超出时直接取正向得到的第一个方案，内存及计算量有界
+	static final int MAX_PATH_LEXEMES = 1 << 14;
+
+	//按词频做统计歧义处理
+	private final boolean statistical;
+	//规则裁决时在全部不相交组合中取最优，否则只比较正向及逐个回退冲突词元得到的方案
+	private final boolean optimal;
+
+	//crossPath中的词元在词元网格中的下标，按起始位置排序
+	private int[] lexemes = new int[64];
+	//以第j个词元结尾的最优前缀：前一个词元（-1表示没有）
+	private int[] prev = new int[64];
+	//最优组合裁决：有效文本长度、词元个数、首个词元的起始位置、词元长度积（X权重）、位置权重（P权重）
+	private int[] payload = new int[64];
+	private int[] count = new int[64];
+	private int[] first = new int[64];
+	private long[] xWeight = new long[64];
+	private long[] pWeight = new long[64];
+	//统计裁决：对数概率之和
+	private double[] score = new double[64];
+	//以相对路径起点的位置结尾的最优前缀对应的词元，-1表示没有；回溯时暂存所选词元
+	private int[] endAt = new int[64];
+
+	//当前方案的词元（栈），及到每个词元为止的有效文本长度、X权重、P权重；权重按int计算，与原实现相同
+	private int[] option = new int[64];
+	private int[] optionPayload = new int[64];
+	private int[] optionXWeight = new int[64];
+	private int[] optionPWeight = new int[64];
+	//第一个方案中与之前词元冲突的词元
+	private int[] conflicts = new int[64];
+	//已生成方案中的最优方案
+	private int[] bestOption = new int[64];
+	private int bestSize;
+	private int bestPayload;
+	private int bestXWeight;
+	private int bestPWeight;
+
 	IKArbitrator(){
-		
+		this(false, false);
+	}
+
+	IKArbitrator(boolean statistical, boolean optimal){
+		this.statistical = statistical;
+		this.optimal = optimal;
 	}
 	
 	/**
 	 * 分词歧义处理
-//	 * @param orgLexemes
+	 * 按顺序遍历词元网格，相交的词元组成一个crossPath，选出的词元按路径记录回词元网格
 	 * @param useSmart
 	 */
 	void process(AnalyzeContext context , boolean useSmart){ // NOTE:htt, 处理词元，如果有冲突但未启用smart则不处理；否则组合词元选择最优方案
-		QuickSortSet orgLexemes = context.getOrgLexemes();
-		Lexeme orgLexeme = orgLexemes.pollFirst();
-		
-		LexemePath crossPath = new LexemePath();
-		while(orgLexeme != null){
-			if(!crossPath.addCrossLexeme(orgLexeme)){ // NOTE:htt, 如果词元没有重叠，则根据未启用smart则添加，否则词元组合最优选择并添加
-				//找到与crossPath不相交的下一个crossPath	
-				if(crossPath.size() == 1 || !useSmart){
-					//crossPath没有歧义 或者 不做歧义处理
-					//直接输出当前crossPath
-					context.addLexemePath(crossPath);
-				}else{ // NOTE:htt, 如果启用smart，则进行冲突识别，选择最合适组合词元
-					//对当前的crossPath进行歧义处理
-					QuickSortSet.Cell headCell = crossPath.getHead();
-					LexemePath judgeResult = this.judge(headCell, crossPath.getPathLength()); // NOTE:htt, 歧义识别，并获取最优方案
-					//输出歧义处理结果judgeResult
-					context.addLexemePath(judgeResult);
-				}
-				
-				//把orgLexeme加入新的crossPath中
-				crossPath = new LexemePath();
-				crossPath.addCrossLexeme(orgLexeme);
+		LexemeLattice orgLexemes = context.getOrgLexemes();
+		//当前crossPath的词元数及起止位置
+		int size = 0;
+		int pathBegin = -1;
+		int pathEnd = -1;
+		for(int l = orgLexemes.first(); l >= 0; l = orgLexemes.next(l)){
+			int begin = orgLexemes.getBegin(l);
+			if(size > 0 && begin >= pathEnd){ // NOTE:htt, 如果词元没有重叠，则根据未启用smart则添加，否则词元组合最优选择并添加
+				//找到与crossPath不相交的下一个crossPath
+				this.output(context, size, pathBegin, pathEnd, useSmart);
+				size = 0;
+			}
+			if(size == 0){
+				pathBegin = begin;
+				pathEnd = begin;
 			}
-			orgLexeme = orgLexemes.pollFirst(); // NOTE:htt, 继续下一个词元
+			if(size == this.lexemes.length){
+				this.lexemes = Arrays.copyOf(this.lexemes, size << 1);
+			}
+			this.lexemes[size++] = l;
+			pathEnd = Math.max(pathEnd, begin + orgLexemes.getLength(l));
 		}
-		
-		
 		//处理最后的path
-		if(crossPath.size() == 1 || !useSmart){
+		if(size > 0){
+			this.output(context, size, pathBegin, pathEnd, useSmart);
+		}
+	}
+	
+	/**
+	 * 输出一个crossPath
+	 */
+	private void output(AnalyzeContext context, int size, int pathBegin, int pathEnd, boolean useSmart){
+		LexemeLattice orgLexemes = context.getOrgLexemes();
+		orgLexemes.startPath();
+		if(size == 1 || !useSmart){
 			//crossPath没有歧义 或者 不做歧义处理
 			//直接输出当前crossPath
-			context.addLexemePath(crossPath);
-		}else{
+			for(int j = 0; j < size; j++){
+				orgLexemes.addToPath(this.lexemes[j]);
+			}
+		}else if(size > MAX_PATH_LEXEMES){
+			this.forwardPath(orgLexemes, size);
+		}else if(!this.statistical && !this.optimal){ // NOTE:htt, 如果启用smart，则进行冲突识别，选择最合适组合词元
 			//对当前的crossPath进行歧义处理
-			QuickSortSet.Cell headCell = crossPath.getHead();
-			LexemePath judgeResult = this.judge(headCell, crossPath.getPathLength());
-			//输出歧义处理结果judgeResult
-			context.addLexemePath(judgeResult);
+			this.ensureCapacity(size, pathEnd - pathBegin + 1);
+			this.judge(orgLexemes, size);
+			for(int i = 0; i < this.bestSize; i++){
+				orgLexemes.addToPath(this.lexemes[this.bestOption[i]]);
+			}
+		}else{
+			this.ensureCapacity(size, pathEnd - pathBegin + 1);
+			int last = this.statistical ? this.judgeByFrequency(orgLexemes, size, pathBegin, pathEnd, context)
+					: this.judgeOptimal(orgLexemes, size, pathBegin, pathEnd);
+			//自后向前回溯，再按顺序加入结果
+			int n = 0;
+			for(int k = last; k >= 0; k = this.prev[k]){
+				this.endAt[n++] = k;
+			}
+			while(n > 0){
+				orgLexemes.addToPath(this.lexemes[this.endAt[--n]]);
+			}
 		}
 	}
-	
+
 	/**
-	 * 歧义识别
-	 * @param lexemeCell 歧义路径链表头
-	 * @param fullTextLength 歧义路径文本长度
-	 * @return
+	 * 歧义识别：正向遍历得到第一个方案，再按冲突词元逆序，回滚方案直到能接受该冲突词元，从该词元开始正向遍历生成新方案；
+	 * 按有效文本长度、词元个数、路径跨度、结束位置、X权重、P权重比较，取最先生成的最优方案，结果记在bestOption中
 	 */
-	private LexemePath judge(QuickSortSet.Cell lexemeCell , int fullTextLength){ // NOTE:htt, 歧义识别，并获取最优方案
-		//候选路径集合
-		TreeSet<LexemePath> pathOptions = new TreeSet<LexemePath>();
-		//候选结果路径
-		LexemePath option = new LexemePath();
-		
-		//对crossPath进行一次遍历,同时返回本次遍历中有冲突的Lexeme栈
-		Stack<QuickSortSet.Cell> lexemeStack = this.forwardPath(lexemeCell , option); // NOTE:htt, 添加不冲突词元到option，并获取有冲突词元
-		
-		//当前词元链并非最理想的，加入候选路径集合
-		pathOptions.add(option.copy());
-		
+	private void judge(LexemeLattice orgLexemes, int size){ // NOTE:htt, 歧义识别，并获取最优方案
+		int depth = 0;
+		int conflictCount = 0;
+		//对crossPath进行一次遍历，同时记录有冲突的词元
+		for(int j = 0; j < size; j++){
+			if(this.checkCross(orgLexemes, depth, j)){
+				this.conflicts[conflictCount++] = j;
+			}else{
+				depth = this.addNotCross(orgLexemes, depth, j);
+			}
+		}
+		this.bestSize = 0;
+		this.offer(orgLexemes, depth);
+
 		//存在歧义词，处理
-		QuickSortSet.Cell c = null;
-		while(!lexemeStack.isEmpty()){
-			c = lexemeStack.pop();
-			//回滚词元链
-			this.backPath(c.getLexeme() , option); // NOTE:htt, 回滚option词元，直到可以接受冲突词元l
-			//从歧义词位置开始，递归，生成可选方案
-			this.forwardPath(c , option); // NOTE:htt, 从冲突词元开始继续添加词元，生成备选方案
-			pathOptions.add(option.copy());
-		}
-		
-		//返回集合中的最优方案
-		return pathOptions.first(); // NOTE:htt, 从方案中选择最优
+		while(conflictCount > 0){
+			int c = this.conflicts[--conflictCount];
+			//回滚词元链，直到它能够接受冲突词元
+			while(this.checkCross(orgLexemes, depth, c)){
+				depth--;
+			}
+			//从冲突词元开始向前遍历，生成可选方案
+			for(int j = c; j < size; j++){
+				if(!this.checkCross(orgLexemes, depth, j)){
+					depth = this.addNotCross(orgLexemes, depth, j);
+				}
+			}
+			this.offer(orgLexemes, depth);
+		}
 	}
-	
+
+	/**
+	 * 第j个词元与方案的范围（首个词元的起始位置到最后一个词元的结束位置）是否相交
+	 */
+	private boolean checkCross(LexemeLattice orgLexemes, int depth, int j){
+		if(depth == 0){
+			return false;
+		}
+		int begin = orgLexemes.getBegin(this.lexemes[j]);
+		return begin < this.optionEnd(orgLexemes, depth)
+				&& orgLexemes.getBegin(this.lexemes[this.option[0]]) < begin + orgLexemes.getLength(this.lexemes[j]);
+	}
+
 	/**
-	 * 向前遍历，添加词元，构造一个无歧义词元组合
-//	 * @param LexemePath path
-	 * @return
+	 * 向方案加入不相交的第j个词元，增量计算权重
+	 *
+	 * 回滚后从冲突词元开始遍历时，冲突词元可能位于方案之前，与原实现相同插在最前，此时重新计算各位置的权重
+	 * @return 加入后的词元数
 	 */
-	private Stack<QuickSortSet.Cell> forwardPath(QuickSortSet.Cell lexemeCell , LexemePath option){ // NOTE:htt, 添加不冲突词元到option，如果有冲突则返回
-		//发生冲突的Lexeme栈
-		Stack<QuickSortSet.Cell> conflictStack = new Stack<QuickSortSet.Cell>();
-		QuickSortSet.Cell c = lexemeCell;
-		//迭代遍历Lexeme链表
-		while(c != null && c.getLexeme() != null){
-			if(!option.addNotCrossLexeme(c.getLexeme())){ // NOTE:htt, 如果添加不相交词元失败，则添加到conflict中
-				//词元交叉，添加失败则加入lexemeStack栈
-				conflictStack.push(c);
+	private int addNotCross(LexemeLattice orgLexemes, int depth, int j){
+		int from = depth;
+		if(depth > 0 && orgLexemes.getBegin(this.lexemes[j]) < orgLexemes.getBegin(this.lexemes[this.option[0]])){
+			System.arraycopy(this.option, 0, this.option, 1, depth);
+			this.option[0] = j;
+			from = 0;
+		}else{
+			this.option[depth] = j;
+		}
+		for(int i = from; i <= depth; i++){
+			int len = orgLexemes.getLength(this.lexemes[this.option[i]]);
+			if(i == 0){
+				this.optionPayload[0] = len;
+				this.optionXWeight[0] = len;
+				this.optionPWeight[0] = len;
+			}else{
+				this.optionPayload[i] = this.optionPayload[i - 1] + len;
+				this.optionXWeight[i] = this.optionXWeight[i - 1] * len;
+				this.optionPWeight[i] = this.optionPWeight[i - 1] + (i + 1) * len;
 			}
-			c = c.getNext();
 		}
-		return conflictStack;
+		return depth + 1;
 	}
-	
+
 	/**
-	 * 回滚词元链，直到它能够接受指定的词元
-//	 * @param lexeme
-	 * @param l
+	 * 方案的结束位置
 	 */
-	private void backPath(Lexeme l, LexemePath option){ // NOTE:htt, 回滚option词元，直到可以接受冲突词元l
-		while(option.checkCross(l)){
-			option.removeTail();
+	private int optionEnd(LexemeLattice orgLexemes, int depth){
+		int l = this.lexemes[this.option[depth - 1]];
+		return orgLexemes.getBegin(l) + orgLexemes.getLength(l);
+	}
+
+	/**
+	 * 当前方案优于已有的最优方案时记为最优方案，相同时保留先生成的
+	 */
+	private void offer(LexemeLattice orgLexemes, int depth){
+		if(this.bestSize == 0 || this.compareOption(orgLexemes, depth) < 0){
+			System.arraycopy(this.option, 0, this.bestOption, 0, depth);
+			this.bestSize = depth;
+			this.bestPayload = this.optionPayload[depth - 1];
+			this.bestXWeight = this.optionXWeight[depth - 1];
+			this.bestPWeight = this.optionPWeight[depth - 1];
+		}
+	}
+
+	/**
+	 * 比较当前方案与最优方案，规则与原LexemePath.compareTo相同，当前方案较优时返回负数
+	 */
+	private int compareOption(LexemeLattice orgLexemes, int depth){
+		//比较有效文本长度，越长越好
+		int payload = this.optionPayload[depth - 1];
+		if(payload != this.bestPayload){
+			return payload > this.bestPayload ? -1 : 1;
+		}
+		//比较词元个数，越少越好
+		if(depth != this.bestSize){
+			return depth < this.bestSize ? -1 : 1;
+		}
+		//路径跨度越大越好
+		int begin = orgLexemes.getBegin(this.lexemes[this.option[0]]);
+		int end = this.optionEnd(orgLexemes, depth);
+		int bestBegin = orgLexemes.getBegin(this.lexemes[this.bestOption[0]]);
+		int last = this.lexemes[this.bestOption[this.bestSize - 1]];
+		int bestEnd = orgLexemes.getBegin(last) + orgLexemes.getLength(last);
+		if(end - begin != bestEnd - bestBegin){
+			return end - begin > bestEnd - bestBegin ? -1 : 1;
+		}
+		//根据统计学结论，逆向切分概率高于正向切分，因此位置越靠后的优先
+		if(end != bestEnd){
+			return end > bestEnd ? -1 : 1;
+		}
+		//词长越平均越好
+		int xWeight = this.optionXWeight[depth - 1];
+		if(xWeight != this.bestXWeight){
+			return xWeight > this.bestXWeight ? -1 : 1;
+		}
+		//词元位置权重比较
+		int pWeight = this.optionPWeight[depth - 1];
+		if(pWeight != this.bestPWeight){
+			return pWeight > this.bestPWeight ? -1 : 1;
+		}
+		return 0;
+	}
+
+	/**
+	 * 最优组合裁决（use_smart为optimal）：在全部不相交的词元组合中取最优
+	 *
+	 * 组合依次比较有效文本长度（越长越好）、词元个数（越少越好）、路径跨度（越大越好）、路径结束位置（越靠后越好）、
+	 * X权重（词元长度积，越大越平均）、P权重（词元位置权重，越大越好）。两个前缀接上同一个后缀时，
+	 * 有效长度、个数可加，跨度只取决于首个词元的起始位置，X权重相乘，个数相同时P权重的增量也相同，
+	 * 因此按（有效长度大、个数少、起始位置靠前、X权重大、P权重大）比较前缀，较优的前缀接上任何后缀仍然较优。
+	 * 按起始位置遍历词元，每个词元接在其起始位置之前结束的最优前缀之后
+	 * @return 最优方案的最后一个词元
+	 */
+	private int judgeOptimal(LexemeLattice orgLexemes, int size, int pathBegin, int pathEnd){
+		Arrays.fill(this.endAt, 0, pathEnd - pathBegin + 1, -1);
+		//在当前位置之前结束的最优前缀
+		int best = -1;
+		for(int p = 0, j = 0; j < size; p++){
+			int e = this.endAt[p];
+			if(e >= 0 && (best < 0 || this.comparePrefix(e, best) < 0)){
+				best = e;
+			}
+			for(; j < size && orgLexemes.getBegin(this.lexemes[j]) - pathBegin == p; j++){
+				int len = orgLexemes.getLength(this.lexemes[j]);
+				this.prev[j] = best;
+				if(best < 0){
+					this.payload[j] = len;
+					this.count[j] = 1;
+					this.first[j] = pathBegin + p;
+					this.xWeight[j] = len;
+					this.pWeight[j] = len;
+				}else{
+					this.payload[j] = this.payload[best] + len;
+					this.count[j] = this.count[best] + 1;
+					this.first[j] = this.first[best];
+					//长度积只用于比较，超出long时取上限
+					this.xWeight[j] = this.xWeight[best] > Long.MAX_VALUE / len ? Long.MAX_VALUE : this.xWeight[best] * len;
+					this.pWeight[j] = this.pWeight[best] + (long) this.count[j] * len;
+				}
+				int end = p + len;
+				if(this.endAt[end] < 0 || this.comparePrefix(j, this.endAt[end]) < 0){
+					this.endAt[end] = j;
+				}
+			}
+		}
+
+		//完整方案还需比较跨度及结束位置
+		int result = 0;
+		for(int j = 1; j < size; j++){
+			if(this.comparePath(orgLexemes, j, result) < 0){
+				result = j;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * 比较以两个词元结尾的前缀，较优的返回负数
+	 */
+	private int comparePrefix(int a, int b){
+		if(this.payload[a] != this.payload[b]){
+			return this.payload[a] > this.payload[b] ? -1 : 1;
+		}
+		if(this.count[a] != this.count[b]){
+			return this.count[a] < this.count[b] ? -1 : 1;
+		}
+		if(this.first[a] != this.first[b]){
+			return this.first[a] < this.first[b] ? -1 : 1;
+		}
+		if(this.xWeight[a] != this.xWeight[b]){
+			return this.xWeight[a] > this.xWeight[b] ? -1 : 1;
+		}
+		if(this.pWeight[a] != this.pWeight[b]){
+			return this.pWeight[a] > this.pWeight[b] ? -1 : 1;
+		}
+		return 0;
+	}
+
+	/**
+	 * 按完整的组合比较规则比较以两个词元结尾的方案，较优的返回负数
+	 */
+	private int comparePath(LexemeLattice orgLexemes, int a, int b){
+		if(this.payload[a] != this.payload[b]){
+			return this.payload[a] > this.payload[b] ? -1 : 1;
+		}
+		if(this.count[a] != this.count[b]){
+			return this.count[a] < this.count[b] ? -1 : 1;
+		}
+		int endA = orgLexemes.getBegin(this.lexemes[a]) + orgLexemes.getLength(this.lexemes[a]);
+		int endB = orgLexemes.getBegin(this.lexemes[b]) + orgLexemes.getLength(this.lexemes[b]);
+		if(endA - this.first[a] != endB - this.first[b]){
+			return endA - this.first[a] > endB - this.first[b] ? -1 : 1;
+		}
+		if(endA != endB){
+			return endA > endB ? -1 : 1;
+		}
+		if(this.xWeight[a] != this.xWeight[b]){
+			return this.xWeight[a] > this.xWeight[b] ? -1 : 1;
+		}
+		if(this.pWeight[a] != this.pWeight[b]){
+			return this.pWeight[a] > this.pWeight[b] ? -1 : 1;
+		}
+		return 0;
+	}
+
+	/**
+	 * 统计裁决：取一元语言模型对数概率之和最大的切分
+	 *
+	 * 没有被所选词元覆盖的字按不在词典中的单字计分，因此位置p之前结束的最优前缀为：
+	 * p-1之前的最优前缀再跳过一个字，或恰好在p结束的最优前缀。得分相同时取词元覆盖的、及最后一个词较长的切分
+	 * @return 最优方案的最后一个词元，-1表示不选词元
+	 */
+	private int judgeByFrequency(LexemeLattice orgLexemes, int size, int pathBegin, int pathEnd, AnalyzeContext context){
+		DictionarySnapshot dictionary = context.getDictionary();
+		char[] segmentBuff = context.getSegmentBuff();
+		int length = pathEnd - pathBegin;
+		double unknown = dictionary.unknownCharLogProbability();
+		Arrays.fill(this.endAt, 0, length + 1, -1);
+		//在当前位置之前结束的最优前缀及其得分
+		int best = -1;
+		double bestScore = 0;
+		for(int p = 0, j = 0; p <= length; p++){
+			if(p > 0){
+				bestScore += unknown;
+			}
+			int e = this.endAt[p];
+			if(e >= 0 && this.score[e] >= bestScore){
+				best = e;
+				bestScore = this.score[e];
+			}
+			for(; j < size && orgLexemes.getBegin(this.lexemes[j]) - pathBegin == p; j++){
+				int len = orgLexemes.getLength(this.lexemes[j]);
+				this.prev[j] = best;
+				this.score[j] = bestScore + dictionary.logProbability(segmentBuff, pathBegin + p, len);
+				int end = p + len;
+				if(this.endAt[end] < 0 || this.score[j] > this.score[this.endAt[end]]){
+					this.endAt[end] = j;
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * 向前遍历，添加不相交的词元，构造一个无歧义词元组合
+	 */
+	private void forwardPath(LexemeLattice orgLexemes, int size){ // NOTE:htt, 添加不冲突词元到option
+		int end = -1;
+		for(int j = 0; j < size; j++){
+			int l = this.lexemes[j];
+			if(orgLexemes.getBegin(l) >= end){
+				orgLexemes.addToPath(l);
+				end = orgLexemes.getBegin(l) + orgLexemes.getLength(l);
+			}
+		}
+	}
+
+	/**
+	 * 工作数组扩容
+	 * @param size 词元数
+	 * @param positions 路径长度+1
+	 */
+	private void ensureCapacity(int size, int positions){
+		if(size > this.prev.length){
+			int capacity = Math.max(size, this.prev.length * 2);
+			this.prev = new int[capacity];
+			this.payload = new int[capacity];
+			this.count = new int[capacity];
+			this.first = new int[capacity];
+			this.xWeight = new long[capacity];
+			this.pWeight = new long[capacity];
+			this.score = new double[capacity];
+			this.option = new int[capacity];
+			this.optionPayload = new int[capacity];
+			this.optionXWeight = new int[capacity];
+			this.optionPWeight = new int[capacity];
+			this.conflicts = new int[capacity];
+			this.bestOption = new int[capacity];
+		}
+		if(positions > this.endAt.length || size > this.endAt.length){
+			this.endAt = new int[Math.max(Math.max(positions, size), this.endAt.length * 2)];
 		}
-		
 	}
 	
 }
@@ -24,27 +24,27 @@
 package org.wltea.analyzer.core;
 
 import org.wltea.analyzer.cfg.Configuration;
+import org.wltea.analyzer.dic.Dictionary;
 
 import java.io.IOException;
 import java.io.Reader;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
  * IK分词器主类
  *
+ * 缓冲区、子分词器及歧义裁决器在reset或首次分词时从当前线程的SegmentationContext池中借用，
+ * 读完或close时归还
  */
 public final class IKSegmenter { // NOTE:htt, ik分词器主类
 	
 	//字符窜reader
 	private Reader input; // NOTE:htt, 待读取的input
-	//分词器上下文
-	private AnalyzeContext context;  // NOTE:htt, 分词上下文内容
-	//分词处理器列表
-	private List<ISegmenter> segmenters; // NOTE:htt, 分词器处理列表
-	//分词歧义裁决器
-	private IKArbitrator arbitrator; // NOTE:Htt, IK分词歧义处理器
+	//借用的分词上下文，包括子分词器及歧义裁决器；未借用时为null
+	private SegmentationContext segmentation;
     private  Configuration configuration; // NOTE:htt, ik配置，包括是否启用smart机制
+	//配置选择的词典集合
+	private Dictionary dictionary;
 	
 
 	/**
@@ -54,35 +54,27 @@ public final class IKSegmenter { // NOTE:htt, ik分词器主类
 	public IKSegmenter(Reader input ,Configuration configuration){
 		this.input = input; // NOTE:htt, 数据读入input
         this.configuration = configuration;
-        this.init(); // NOTEhtt, ik分词器初始化
+		//取得配置选择的词典集合
+		this.dictionary = Dictionary.getDictionary(configuration.getDictionarySet());
 	}
 
-	
 	/**
-	 * 初始化
+	 * 从当前线程借用分词上下文，并取词典快照
 	 */
-	private void init(){ // NOTEhtt, ik分词器初始化
-		//初始化分词上下文
-		this.context = new AnalyzeContext(configuration);
-		//加载子分词器
-		this.segmenters = this.loadSegmenters(); // NOTE:htt, 加载分词器
-		//加载歧义裁决器
-		this.arbitrator = new IKArbitrator(); // NOTE:Htt, IK分词歧义处理器
+	private void acquire(){ // NOTEhtt, ik分词器初始化
+		this.segmentation = SegmentationContext.borrow(configuration);
+		//每篇文档取一次词典快照，分词过程中词典重新加载不影响当前文档
+		this.segmentation.context.setDictionary(this.dictionary.getSnapshot());
 	}
-	
+
 	/**
-	 * 初始化词典，加载子分词器实现
-	 * @return List<ISegmenter>
+	 * 归还分词上下文
 	 */
-	private List<ISegmenter> loadSegmenters(){ // NOTE:htt, 加载分词器
-		List<ISegmenter> segmenters = new ArrayList<ISegmenter>(4);
-		//处理字母的子分词器
-		segmenters.add(new LetterSegmenter());  // NOTE:htt, 英文字母和数字分词器
-		//处理中文数量词的子分词器
-		segmenters.add(new CN_QuantifierSegmenter()); // NOTE:htt, 分析中文量词
-		//处理中文词的子分词器
-		segmenters.add(new CJKSegmenter()); // NOTE:htt, 中日韩分词
-		return segmenters;
+	private void release(){
+		if(this.segmentation != null){
+			this.segmentation.release();
+			this.segmentation = null;
+		}
 	}
 	
 	/**
@@ -91,6 +83,11 @@ public final class IKSegmenter { // NOTE:htt, ik分词器主类
 	 * @throws java.io.IOException
 	 */
 	public synchronized Lexeme next()throws IOException{ // NOTE:htt, 获取下一个result词元，如果启动smart则会组合，如果为停用词则继续查找
+		if(this.segmentation == null){
+			this.acquire();
+		}
+		AnalyzeContext context = this.segmentation.context;
+		List<ISegmenter> segmenters = this.segmentation.segmenters;
 		Lexeme l = null;
 		while((l = context.getNextLexeme()) == null ){ // NOTE:htt, 获取下一个result词元，如果启动smart则会组合，如果为停用词则继续查找
 			/*
@@ -100,17 +97,21 @@ public final class IKSegmenter { // NOTE:htt, ik分词器主类
 			 */
 			int available = context.fillBuffer(this.input); // NOTE:htt, 添加读取的内容
 			if(available <= 0){
-				//reader已经读完
-				context.reset();
+				//reader已经读完，归还分词上下文
+				this.release();
 				return null;
 				
 			}else{
 				//初始化指针
 				context.initCursor(); // NOTE:htt, 处理第一个字符
 				do{
-        			//遍历子分词器
-        			for(ISegmenter segmenter : segmenters){
-        				segmenter.analyze(context); // NOTE:htt, 英文字母、中文量词、中日韩分词进行分析
+        			//词元跨越缓冲区末端时扩容并继续读入，达到上限时在末端强制切分
+        			if(context.isBufferConsumed() && context.isBufferLocked()){
+        				context.growBuffer(this.input);
+        			}
+        			//遍历子分词器，按下标访问，逐字处理时不创建迭代器
+        			for(int i = 0; i < segmenters.size(); i++){
+        				segmenters.get(i).analyze(context); // NOTE:htt, 英文字母、中文量词、中日韩分词进行分析
         			}
         			//字符缓冲区接近读完，需要读入新的字符
         			if(context.needRefillBuffer()){ // NOTE:htt, 要取新数据则break
@@ -119,12 +120,12 @@ public final class IKSegmenter { // NOTE:htt, ik分词器主类
    				//向前移动指针
 				}while(context.moveCursor()); // NOTE:htt, 移动游标，直到需要读取新数据
 				//重置子分词器，为下轮循环进行初始化
-				for(ISegmenter segmenter : segmenters){
-					segmenter.reset();
+				for(int i = 0; i < segmenters.size(); i++){
+					segmenters.get(i).reset();
 				}
 			}
 			//对分词进行歧义处理
-			this.arbitrator.process(context, configuration.isUseSmart()); // NOTE:htt, 处理词元，如果有冲突但未启用smart则不处理；否则组合词元选择最优方案
+			this.segmentation.arbitrator.process(context, configuration.isUseSmart()); // NOTE:htt, 处理词元，如果有冲突但未启用smart则不处理；否则组合词元选择最优方案
 			//将分词结果输出到结果集，并处理未切分的单个CJK字符
 			context.outputToResult(); // NOTE:htt, 输出 [index, cursor]之间的分词
 			//记录本次分词的缓冲区位移
@@ -139,9 +140,32 @@ public final class IKSegmenter { // NOTE:htt, ik分词器主类
      */
 	public synchronized void reset(Reader input) { // NOTE:htt, 重置
 		this.input = input;
-		context.reset();
-		for(ISegmenter segmenter : segmenters){
-			segmenter.reset();
+		if(this.segmentation == null){
+			this.acquire();
+		}else{
+			this.segmentation.reset();
+			this.segmentation.context.setDictionary(this.dictionary.getSnapshot());
 		}
 	}
+
+	/**
+	 * 词元跨越缓冲区末端时缓冲区扩容的累计次数（所有分词器）
+	 */
+	public static long getBufferGrowths(){
+		return AnalyzeContext.getBufferGrowths();
+	}
+
+	/**
+	 * 缓冲区达到max_buffer_size、词元在缓冲区末端被强制切分，及词元超过max_token_length被切分的累计次数（所有分词器）
+	 */
+	public static long getForcedBoundaries(){
+		return AnalyzeContext.getForcedBoundaries();
+	}
+
+	/**
+	 * 提前结束分词，归还分词上下文；之后调用reset可继续使用
+	 */
+	public synchronized void close() {
+		this.release();
+	}
 }
@@ -93,7 +93,7 @@ class LetterSegmenter implements ISegmenter { // NOTE:htt, 英文字母和数字
 		bufferLockFlag = this.processEnglishLetter(context) || bufferLockFlag; // NOTE:htt, 处理英文字母
 		//处理阿拉伯字母
 		bufferLockFlag = this.processArabicLetter(context) || bufferLockFlag; // NOTE:htt, 处理数字词元
-		//处理混合字母(这个要放最后处理，可以通过QuickSortSet排除重复)
+		//处理混合字母(这个要放最后处理，可以通过LexemeLattice排除重复)
 		bufferLockFlag = this.processMixLetter(context) || bufferLockFlag; // NOTE:htt, 处理字母和数字混合
 		
 		//判断是否锁定缓冲区
@@ -147,8 +147,7 @@ class LetterSegmenter implements ISegmenter { // NOTE:htt, 英文字母和数字
 				this.end = context.getCursor();
 			}else{
 				//遇到非Letter字符，输出词元
-				Lexeme newLexeme = new Lexeme(context.getBufferOffset() , this.start , this.end - this.start + 1 , Lexeme.TYPE_LETTER);
-				context.addLexeme(newLexeme); // NOTE:htt, 如果遇到不是英文或数字，则将已有英文或数字添加到context
+				context.addLexeme(this.start , this.end - this.start + 1 , Lexeme.TYPE_LETTER); // NOTE:htt, 如果遇到不是英文或数字，则将已有英文或数字添加到context
 				this.start = -1;
 				this.end = -1;
 			}			
@@ -157,8 +156,7 @@ class LetterSegmenter implements ISegmenter { // NOTE:htt, 英文字母和数字
 		//判断缓冲区是否已经读完
 		if(context.isBufferConsumed() && (this.start != -1 && this.end != -1)){ // NOTE:htt, 缓冲区已读完则添加已处理内容到context
             //缓冲以读完，输出词元
-            Lexeme newLexeme = new Lexeme(context.getBufferOffset() , this.start , this.end - this.start + 1 , Lexeme.TYPE_LETTER);
-            context.addLexeme(newLexeme);
+            context.addLexeme(this.start , this.end - this.start + 1 , Lexeme.TYPE_LETTER);
             this.start = -1;
             this.end = -1;
 		}
@@ -193,8 +191,7 @@ class LetterSegmenter implements ISegmenter { // NOTE:htt, 英文字母和数字
 				this.englishEnd =  context.getCursor();
 			}else{
 				//遇到非English字符,输出词元
-				Lexeme newLexeme = new Lexeme(context.getBufferOffset() , this.englishStart , this.englishEnd - this.englishStart + 1 , Lexeme.TYPE_ENGLISH);
-				context.addLexeme(newLexeme); // NOTE:htt, 非英文词元则添加到context，并重新设置英文起始标记
+				context.addLexeme(this.englishStart , this.englishEnd - this.englishStart + 1 , Lexeme.TYPE_ENGLISH); // NOTE:htt, 非英文词元则添加到context，并重新设置英文起始标记
 				this.englishStart = -1;
 				this.englishEnd= -1;
 			}
@@ -203,8 +200,7 @@ class LetterSegmenter implements ISegmenter { // NOTE:htt, 英文字母和数字
 		//判断缓冲区是否已经读完
 		if(context.isBufferConsumed() && (this.englishStart != -1 && this.englishEnd != -1)){ // NOTE:htt, 如果缓冲区读完则添加词元
             //缓冲以读完，输出词元
-            Lexeme newLexeme = new Lexeme(context.getBufferOffset() , this.englishStart , this.englishEnd - this.englishStart + 1 , Lexeme.TYPE_ENGLISH);
-            context.addLexeme(newLexeme);
+            context.addLexeme(this.englishStart , this.englishEnd - this.englishStart + 1 , Lexeme.TYPE_ENGLISH);
             this.englishStart = -1;
             this.englishEnd= -1;
 		}	
@@ -242,8 +238,7 @@ class LetterSegmenter implements ISegmenter { // NOTE:htt, 英文字母和数字
 				//不输出数字，但不标记结束
 			}else{
 				////遇到非Arabic字符,输出词元
-				Lexeme newLexeme = new Lexeme(context.getBufferOffset() , this.arabicStart , this.arabicEnd - this.arabicStart + 1 , Lexeme.TYPE_ARABIC);
-				context.addLexeme(newLexeme); // NOTE:htt, 非数字则将已有数字添加到context
+				context.addLexeme(this.arabicStart , this.arabicEnd - this.arabicStart + 1 , Lexeme.TYPE_ARABIC); // NOTE:htt, 非数字则将已有数字添加到context
 				this.arabicStart = -1;
 				this.arabicEnd = -1;
 			}
@@ -252,8 +247,7 @@ class LetterSegmenter implements ISegmenter { // NOTE:htt, 英文字母和数字
 		//判断缓冲区是否已经读完
 		if(context.isBufferConsumed() && (this.arabicStart != -1 && this.arabicEnd != -1)){ // NOTE:htt, 缓存区已读完则添加数字到context
             //生成已切分的词元
-            Lexeme newLexeme = new Lexeme(context.getBufferOffset() ,  this.arabicStart , this.arabicEnd - this.arabicStart + 1 , Lexeme.TYPE_ARABIC);
-            context.addLexeme(newLexeme);
+            context.addLexeme(this.arabicStart , this.arabicEnd - this.arabicStart + 1 , Lexeme.TYPE_ARABIC);
             this.arabicStart = -1;
             this.arabicEnd = -1;
 		}
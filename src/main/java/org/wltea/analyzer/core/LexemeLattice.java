@@ -0,0 +1,214 @@
+
+/**
+ * IK 中文分词  版本 5.0
+ * IK Analyzer release 5.0
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * 源代码由林良益(linliangyi2005@gmail.com)提供
+ * 版权声明 2012，乌龙茶工作室
+ * provided by Linliangyi and copyright 2012 by Oolong studio
+ * 
+ */
+package org.wltea.analyzer.core;
+
+import java.util.Arrays;
+
+/**
+ * 词元网格：子分词器输出的原始词元及歧义处理选出的路径
+ * 
+ * 子分词器输出的词元以起始位置、长度、类型三个并行的int数组存放，按起始位置分桶，
+ * 桶内按长度从长到短链接，因此按（起始位置，长度倒序）遍历，与Lexeme.compareTo的顺序一致，重复的词元只保留先加入的。
+ * 歧义处理选出的词元按路径依次记录，输出结果后清空；数组按需扩容，由同一上下文处理的各段缓冲区复用
+ */
+final class LexemeLattice {
+
+	//词元的相对起始位置、长度、类型
+	private int[] begins = new int[64];
+	private int[] lengths = new int[64];
+	private int[] types = new int[64];
+	//同一起始位置的下一个（更短的）词元，-1表示没有
+	private int[] nexts = new int[64];
+	private int size;
+	
+	//各起始位置的第一个（最长的）词元，-1表示没有
+	private int[] heads;
+	//已有词元的最小、最大起始位置
+	private int minBegin = Integer.MAX_VALUE;
+	private int maxBegin = -1;
+	//排在最后的词元
+	private int last = -1;
+	
+	//歧义处理选出的词元，各路径依次存放
+	private int[] chosen = new int[64];
+	private int chosenCount;
+	//各路径在chosen中的起始下标
+	private int[] pathStarts = new int[16];
+	private int pathCount;
+	
+	LexemeLattice(int positions){
+		this.heads = new int[positions];
+		Arrays.fill(this.heads, -1);
+	}
+	
+	/**
+	 * 添加词元，与已有词元起始位置及长度相同时不添加
+	 * @return 是否添加
+	 */
+	boolean add(int begin, int length, int type){
+		if(begin >= this.heads.length){
+			int capacity = this.heads.length;
+			this.heads = Arrays.copyOf(this.heads, Math.max(begin + 1, capacity << 1));
+			Arrays.fill(this.heads, capacity, this.heads.length, -1);
+		}
+		int prev = -1;
+		int current = this.heads[begin];
+		while(current >= 0 && this.lengths[current] > length){
+			prev = current;
+			current = this.nexts[current];
+		}
+		if(current >= 0 && this.lengths[current] == length){
+			return false;
+		}
+		if(this.size == this.begins.length){
+			int capacity = this.size << 1;
+			this.begins = Arrays.copyOf(this.begins, capacity);
+			this.lengths = Arrays.copyOf(this.lengths, capacity);
+			this.types = Arrays.copyOf(this.types, capacity);
+			this.nexts = Arrays.copyOf(this.nexts, capacity);
+		}
+		int lexeme = this.size++;
+		this.begins[lexeme] = begin;
+		this.lengths[lexeme] = length;
+		this.types[lexeme] = type;
+		this.nexts[lexeme] = current;
+		if(prev < 0){
+			this.heads[begin] = lexeme;
+		}else{
+			this.nexts[prev] = lexeme;
+		}
+		this.minBegin = Math.min(this.minBegin, begin);
+		this.maxBegin = Math.max(this.maxBegin, begin);
+		if(this.last < 0 || begin > this.begins[this.last]
+				|| (begin == this.begins[this.last] && length < this.lengths[this.last])){
+			this.last = lexeme;
+		}
+		return true;
+	}
+	
+	boolean isEmpty(){
+		return this.size == 0;
+	}
+	
+	int size(){
+		return this.size;
+	}
+	
+	int getBegin(int lexeme){
+		return this.begins[lexeme];
+	}
+	
+	int getLength(int lexeme){
+		return this.lengths[lexeme];
+	}
+	
+	int getType(int lexeme){
+		return this.types[lexeme];
+	}
+	
+	/**
+	 * 排在最前的词元，没有时返回-1
+	 */
+	int first(){
+		return this.size == 0 ? -1 : this.heads[this.minBegin];
+	}
+	
+	/**
+	 * 排在其后的词元，没有时返回-1
+	 */
+	int next(int lexeme){
+		if(this.nexts[lexeme] >= 0){
+			return this.nexts[lexeme];
+		}
+		for(int begin = this.begins[lexeme] + 1; begin <= this.maxBegin; begin++){
+			if(this.heads[begin] >= 0){
+				return this.heads[begin];
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * 排在最后的词元，没有时返回-1
+	 */
+	int last(){
+		return this.last;
+	}
+	
+	/**
+	 * 开始记录一条新的路径
+	 */
+	void startPath(){
+		if(this.pathCount == this.pathStarts.length){
+			this.pathStarts = Arrays.copyOf(this.pathStarts, this.pathCount << 1);
+		}
+		this.pathStarts[this.pathCount++] = this.chosenCount;
+	}
+	
+	/**
+	 * 向当前路径追加词元，须按位置顺序追加
+	 */
+	void addToPath(int lexeme){
+		if(this.chosenCount == this.chosen.length){
+			this.chosen = Arrays.copyOf(this.chosen, this.chosenCount << 1);
+		}
+		this.chosen[this.chosenCount++] = lexeme;
+	}
+	
+	int getPathCount(){
+		return this.pathCount;
+	}
+	
+	/**
+	 * 第path条路径的词元在chosen中的下标范围[getPathStart, getPathEnd)
+	 */
+	int getPathStart(int path){
+		return this.pathStarts[path];
+	}
+	
+	int getPathEnd(int path){
+		return path + 1 < this.pathCount ? this.pathStarts[path + 1] : this.chosenCount;
+	}
+	
+	int getChosen(int index){
+		return this.chosen[index];
+	}
+	
+	/**
+	 * 清空词元及路径，保留数组
+	 */
+	void clear(){
+		if(this.maxBegin >= 0){
+			Arrays.fill(this.heads, this.minBegin, this.maxBegin + 1, -1);
+		}
+		this.size = 0;
+		this.minBegin = Integer.MAX_VALUE;
+		this.maxBegin = -1;
+		this.last = -1;
+		this.chosenCount = 0;
+		this.pathCount = 0;
+	}
+}
@@ -0,0 +1,122 @@
+
+/**
+ * IK 中文分词  版本 5.0
+ * IK Analyzer release 5.0
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * 源代码由林良益(linliangyi2005@gmail.com)提供
+ * 版权声明 2012，乌龙茶工作室
+ * provided by Linliangyi and copyright 2012 by Oolong studio
+ * 
+ */
+package org.wltea.analyzer.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.wltea.analyzer.cfg.Configuration;
+
+/**
+ * 可复用的分词上下文：缓冲区、词元网格、结果队列、子分词器及歧义裁决器
+ * 
+ * 每个线程保留少量空闲的上下文，IKSegmenter在reset时借用，在close或读完时归还，
+ * 逐文档分析短字段时不再重新分配缓冲区及子分词器。上下文只在借用它的IKSegmenter中使用
+ */
+final class SegmentationContext {
+
+	//每个线程最多保留的空闲上下文数
+	static final int MAX_IDLE_PER_THREAD = 4;
+
+	private static final ThreadLocal<ArrayDeque<SegmentationContext>> IDLE =
+			ThreadLocal.withInitial(() -> new ArrayDeque<SegmentationContext>(MAX_IDLE_PER_THREAD));
+
+	//分词上下文
+	final AnalyzeContext context;
+	//子分词器列表
+	final List<ISegmenter> segmenters;
+	//分词歧义裁决器
+	final IKArbitrator arbitrator;
+	//子分词器及裁决器的选择，配置相同的上下文才能复用
+	private final boolean ahoCorasick;
+	private final boolean statistical;
+	private final boolean optimal;
+
+	private SegmentationContext(Configuration configuration){
+		this.ahoCorasick = configuration.isUseAhoCorasick();
+		this.statistical = configuration.isStatisticalSmart();
+		this.optimal = configuration.isOptimalSmart();
+		this.context = new AnalyzeContext(configuration);
+		this.segmenters = loadSegmenters(this.ahoCorasick);
+		this.arbitrator = new IKArbitrator(this.statistical, this.optimal);
+	}
+
+	/**
+	 * 借用当前线程空闲的上下文，没有可用的则新建
+	 */
+	static SegmentationContext borrow(Configuration configuration){
+		ArrayDeque<SegmentationContext> idle = IDLE.get();
+		for(SegmentationContext c : idle){
+			if(c.ahoCorasick == configuration.isUseAhoCorasick() && c.statistical == configuration.isStatisticalSmart()
+					&& c.optimal == configuration.isOptimalSmart()){
+				idle.remove(c);
+				c.context.setConfiguration(configuration);
+				return c;
+			}
+		}
+		return new SegmentationContext(configuration);
+	}
+
+	/**
+	 * 重置后归还到当前线程，空闲的上下文已满时丢弃
+	 */
+	void release(){
+		this.reset();
+		ArrayDeque<SegmentationContext> idle = IDLE.get();
+		if(idle.size() < MAX_IDLE_PER_THREAD){
+			idle.push(this);
+		}
+	}
+
+	/**
+	 * 重置上下文及子分词器，为下一篇文档做准备
+	 */
+	void reset(){
+		this.context.reset();
+		for(int i = 0; i < this.segmenters.size(); i++){
+			this.segmenters.get(i).reset();
+		}
+	}
+
+	/**
+	 * 加载子分词器
+	 */
+	private static List<ISegmenter> loadSegmenters(boolean ahoCorasick){ // NOTE:htt, 加载分词器
+		List<ISegmenter> segmenters = new ArrayList<ISegmenter>(4);
+		//处理字母的子分词器
+		segmenters.add(new LetterSegmenter());  // NOTE:htt, 英文字母和数字分词器
+		//处理中文数量词的子分词器
+		segmenters.add(new CN_QuantifierSegmenter()); // NOTE:htt, 分析中文量词
+		//处理中文词的子分词器
+		if(ahoCorasick){
+			segmenters.add(new AhoCorasickSegmenter());
+		}else{
+			segmenters.add(new CJKSegmenter()); // NOTE:htt, 中日韩分词
+		}
+		return segmenters;
+	}
+}
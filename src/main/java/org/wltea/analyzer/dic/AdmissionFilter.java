@@ -0,0 +1,270 @@
+/**
+ * IK 中文分词  版本 5.0
+ * IK Analyzer release 5.0
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.wltea.analyzer.dic;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 主词典的准入过滤器，不可变
+ *
+ * 与词典树一同构建：首字位图（64K位）、字对存在表（按字对散列的位图）、以及每个首字开头的最长词长。
+ * 不可能是词首的字、不可能组成词前两个字的字对只需一两次位运算即可排除，不必查询词典树；
+ * 字对存在表可能误判存在，但不会误判不存在
+ */
+public final class AdmissionFilter {
+
+    //字对存在表的位数，2^21位即256KB
+    private static final int BIGRAM_BITS_LOG = 21;
+    private static final int BIGRAM_BITS = 1 << BIGRAM_BITS_LOG;
+    //记录的最长词长，超过的按该值记录，表示不限
+    private static final int MAX_LENGTH_LIMIT = 0xFF;
+
+    //是否统计通过及排除的次数，逐字调用，默认关闭，仅用于调试：-Dik.admission_filter.stats=true
+    private static final boolean STATS_ENABLED = Boolean.getBoolean("ik.admission_filter.stats");
+
+    //节点内所有过滤器共用的计数：通过及排除的次数
+    private static final LongAdder firstCharHits = new LongAdder();
+    private static final LongAdder firstCharMisses = new LongAdder();
+    private static final LongAdder bigramHits = new LongAdder();
+    private static final LongAdder bigramMisses = new LongAdder();
+
+    //可以作为词首的字
+    private final long[] firstChars;
+    //本身是一个启用的词的字
+    private final long[] singleWords;
+    //是更长的词前缀的字，与词典匹配的前缀状态一致
+    private final long[] prefixChars;
+    //词的前两个字
+    private final long[] bigrams;
+    //首字 -> 以该字开头的最长词长，长于该值的词段既不是词也不是词前缀
+    private final byte[] maxLengths;
+
+    private AdmissionFilter(long[] firstChars, long[] singleWords, long[] prefixChars, long[] bigrams,
+            byte[] maxLengths) {
+        this.firstChars = firstChars;
+        this.singleWords = singleWords;
+        this.prefixChars = prefixChars;
+        this.bigrams = bigrams;
+        this.maxLengths = maxLengths;
+    }
+
+    /**
+     * 由双数组构建，扫描一遍check数组：根节点的子节点为首字，其子节点为字对，词节点回溯到首字得到词长
+     */
+    static AdmissionFilter build(DoubleArrayTrie trie) {
+        AdmissionFilter filter = new AdmissionFilter(new long[1 << 10], new long[1 << 10], new long[1 << 10],
+                new long[BIGRAM_BITS >>> 6], new byte[1 << 16]);
+        for (int t = 1, size = trie.getSize(); t < size; t++) {
+            int p = trie.parent(t);
+            if (p < 0) {
+                continue;
+            }
+            if (p == DoubleArrayTrie.ROOT) {
+                char c = trie.label(t);
+                set(filter.firstChars, c);
+                if (trie.isWord(t)) {
+                    set(filter.singleWords, c);
+                }
+                if (trie.hasNextNode(t)) {
+                    set(filter.prefixChars, c);
+                }
+            } else if (trie.parent(p) == DoubleArrayTrie.ROOT) {
+                set(filter.bigrams, bigram(trie.label(p), trie.label(t)));
+            }
+            if (trie.isWord(t)) {
+                int length = 1;
+                int s = t;
+                for (; trie.parent(s) != DoubleArrayTrie.ROOT; s = trie.parent(s)) {
+                    length++;
+                }
+                filter.updateMaxLength(trie.label(s), length);
+            }
+        }
+        return filter;
+    }
+
+    /**
+     * 由FST的全部词条构建，FST不能按节点回溯父节点，逐词取首字、前两个字及词长
+     */
+    static AdmissionFilter build(FstTrie trie) {
+        AdmissionFilter filter = new AdmissionFilter(new long[1 << 10], new long[1 << 10], new long[1 << 10],
+                new long[BIGRAM_BITS >>> 6], new byte[1 << 16]);
+        trie.forEachWord(word -> {
+            char c = word.charAt(0);
+            set(filter.firstChars, c);
+            if (word.length() == 1) {
+                set(filter.singleWords, c);
+            } else {
+                set(filter.prefixChars, c);
+                set(filter.bigrams, bigram(c, word.charAt(1)));
+            }
+            filter.updateMaxLength(c, word.length());
+        });
+        return filter;
+    }
+
+    /**
+     * 在基础词典的过滤器上叠加增量词典，当前对象不变
+     * 增量词典中启用或屏蔽的单字覆盖基础词典，其余位取并集
+     */
+    AdmissionFilter withOverlay(DictSegment overlay) {
+        AdmissionFilter filter = new AdmissionFilter(this.firstChars.clone(), this.singleWords.clone(),
+                this.prefixChars.clone(), this.bigrams.clone(), this.maxLengths.clone());
+        for (DictSegment first : overlay.getChildren()) {
+            char c = first.getNodeChar();
+            set(filter.firstChars, c);
+            filter.updateMaxLength(c, 1);
+            if (first.isWord()) {
+                set(filter.singleWords, c);
+            } else if (first.isDisabled()) {
+                clear(filter.singleWords, c);
+            }
+            if (first.hasNextNode()) {
+                set(filter.prefixChars, c);
+            }
+            for (DictSegment second : first.getChildren()) {
+                set(filter.bigrams, bigram(c, second.getNodeChar()));
+                filter.collectMaxLength(c, second, 2);
+            }
+        }
+        return filter;
+    }
+
+    /*
+     * 增量词典中的路径不论是否成词都计入最长词长，屏蔽的词也使其前缀成为词前缀
+     */
+    private void collectMaxLength(char first, DictSegment ds, int depth) {
+        updateMaxLength(first, depth);
+        for (DictSegment child : ds.getChildren()) {
+            collectMaxLength(first, child, depth + 1);
+        }
+    }
+
+    private void updateMaxLength(char c, int length) {
+        if (length > (this.maxLengths[c] & 0xFF)) {
+            this.maxLengths[c] = (byte) Math.min(length, MAX_LENGTH_LIMIT);
+        }
+    }
+
+    /**
+     * 该字是否可能是词首，返回false时以该字开头的词段既不是词也不是词前缀
+     */
+    public boolean mayStart(char c) {
+        boolean hit = get(this.firstChars, c);
+        if (STATS_ENABLED) {
+            (hit ? firstCharHits : firstCharMisses).increment();
+        }
+        return hit;
+    }
+
+    /**
+     * 两个字是否可能是某个词的前两个字，返回false时以该字对开头的词段既不是词也不是词前缀
+     */
+    public boolean mayStart(char c1, char c2) {
+        boolean hit = get(this.bigrams, bigram(c1, c2));
+        if (STATS_ENABLED) {
+            (hit ? bigramHits : bigramMisses).increment();
+        }
+        return hit;
+    }
+
+    /**
+     * 该字本身是否为一个启用的词
+     */
+    public boolean isSingleWord(char c) {
+        return get(this.singleWords, c);
+    }
+
+    /**
+     * 该字是否为更长的词的前缀
+     */
+    public boolean isPrefix(char c) {
+        return get(this.prefixChars, c);
+    }
+
+    /**
+     * 以该字开头的最长词长，不是词首时返回0，词过长时返回Integer.MAX_VALUE
+     */
+    public int maxLength(char c) {
+        int length = this.maxLengths[c] & 0xFF;
+        return length == MAX_LENGTH_LIMIT ? Integer.MAX_VALUE : length;
+    }
+
+    /**
+     * 占用的堆内存字节数
+     */
+    long ramBytesUsed() {
+        return (this.firstChars.length + this.singleWords.length + this.prefixChars.length
+                + this.bigrams.length) * 8L + this.maxLengths.length;
+    }
+
+    /**
+     * 是否统计通过及排除的次数，未开启时各计数均为0
+     */
+    public static boolean isStatsEnabled() {
+        return STATS_ENABLED;
+    }
+
+    /**
+     * 首字位图通过的次数
+     */
+    public static long getFirstCharHits() {
+        return firstCharHits.sum();
+    }
+
+    /**
+     * 首字位图排除的次数
+     */
+    public static long getFirstCharMisses() {
+        return firstCharMisses.sum();
+    }
+
+    /**
+     * 字对存在表通过的次数
+     */
+    public static long getBigramHits() {
+        return bigramHits.sum();
+    }
+
+    /**
+     * 字对存在表排除的次数
+     */
+    public static long getBigramMisses() {
+        return bigramMisses.sum();
+    }
+
+    private static int bigram(char c1, char c2) {
+        int h = (c1 << 16 | c2) * 0x9E3779B9;
+        return h >>> (32 - BIGRAM_BITS_LOG);
+    }
+
+    private static boolean get(long[] bits, int i) {
+        return (bits[i >>> 6] & (1L << i)) != 0;
+    }
+
+    private static void set(long[] bits, int i) {
+        bits[i >>> 6] |= 1L << i;
+    }
+
+    private static void clear(long[] bits, int i) {
+        bits[i >>> 6] &= ~(1L << i);
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ * IK 中文分词  版本 5.0
+ * IK Analyzer release 5.0
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.wltea.analyzer.dic;
+
+import java.util.BitSet;
+
+/**
+ * 基于双数组词典树的Aho-Corasick自动机，只读
+ *
+ * 状态即双数组的节点，goto函数直接使用双数组的状态转移；另外为每个节点计算失败指针（最长的、同时也是词典树节点的真后缀）
+ * 及输出指针（失败链上最近的一个词），逐字输入即可得到以当前字符结尾的全部词，每个字符只需查找一次
+ */
+final class AhoCorasick {
+
+    private final DoubleArrayTrie trie;
+    //节点 -> 失败指针
+    private final int[] fail;
+    //节点 -> 失败链上最近的词节点，-1表示没有
+    private final int[] output;
+    //节点 -> 深度，即从根节点到该节点的词长
+    private final char[] depth;
+    //节点或其失败链上的某个节点有子节点，即当前文本的某个后缀仍是词前缀
+    private final BitSet pending;
+
+    private AhoCorasick(DoubleArrayTrie trie, int[] fail, int[] output, char[] depth, BitSet pending) {
+        this.trie = trie;
+        this.fail = fail;
+        this.output = output;
+        this.depth = depth;
+        this.pending = pending;
+    }
+
+    /**
+     * 由双数组构建自动机
+     * 先扫描一遍check数组得到各节点的子节点，再按层次顺序计算失败指针，父节点总是先于子节点处理
+     */
+    static AhoCorasick build(DoubleArrayTrie trie) {
+        int size = trie.getSize();
+        //STEP1 按父节点归集子节点
+        int[] childStart = new int[size + 1];
+        for (int t = 1; t < size; t++) {
+            int p = trie.parent(t);
+            if (p >= 0) {
+                childStart[p + 1]++;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            childStart[i + 1] += childStart[i];
+        }
+        int[] children = new int[childStart[size]];
+        int[] fill = new int[size];
+        for (int t = 1; t < size; t++) {
+            int p = trie.parent(t);
+            if (p >= 0) {
+                children[childStart[p] + fill[p]++] = t;
+            }
+        }
+        fill = null;
+
+        //STEP2 层次遍历计算失败指针、输出指针、深度
+        int[] fail = new int[size];
+        int[] output = new int[size];
+        char[] depth = new char[size];
+        BitSet pending = new BitSet(size);
+        int[] queue = new int[children.length + 1];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = DoubleArrayTrie.ROOT;
+        output[DoubleArrayTrie.ROOT] = -1;
+        while (head < tail) {
+            int s = queue[head++];
+            for (int i = childStart[s]; i < childStart[s + 1]; i++) {
+                int t = children[i];
+                char c = trie.label(t);
+                int f = DoubleArrayTrie.ROOT;
+                if (s != DoubleArrayTrie.ROOT) {
+                    f = fail[s];
+                    int next;
+                    while ((next = trie.transition(f, c)) < 0 && f != DoubleArrayTrie.ROOT) {
+                        f = fail[f];
+                    }
+                    f = next < 0 ? DoubleArrayTrie.ROOT : next;
+                }
+                fail[t] = f;
+                output[t] = trie.isWord(f) ? f : output[f];
+                depth[t] = (char) (depth[s] + 1);
+                if (trie.hasNextNode(t) || pending.get(f)) {
+                    pending.set(t);
+                }
+                queue[tail++] = t;
+            }
+        }
+        return new AhoCorasick(trie, fail, output, depth, pending);
+    }
+
+    /**
+     * 输入一个字符，沿失败指针回退直到存在该字符的转移
+     * @return 新状态，没有任何后缀可以继续时回到根节点
+     */
+    int next(int state, char c) {
+        int s = state;
+        while (true) {
+            int t = this.trie.transition(s, c);
+            if (t >= 0) {
+                return t;
+            }
+            if (s == DoubleArrayTrie.ROOT) {
+                return s;
+            }
+            s = this.fail[s];
+        }
+    }
+
+    boolean isWord(int state) {
+        return this.trie.isWord(state);
+    }
+
+    /*
+     * 失败链上最近的词节点，-1表示没有
+     */
+    int output(int state) {
+        return this.output[state];
+    }
+
+    int depth(int state) {
+        return this.depth[state];
+    }
+
+    boolean isPending(int state) {
+        return this.pending.get(state);
+    }
+
+    /**
+     * 自动机额外占用的堆内存字节数
+     */
+    long ramBytesUsed() {
+        return this.fail.length * 4L + this.output.length * 4L + this.depth.length * 2L + this.pending.size() / 8;
+    }
+}
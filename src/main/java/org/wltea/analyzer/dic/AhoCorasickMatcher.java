@@ -0,0 +1,108 @@
+/**
+ * IK 中文分词  版本 5.0
+ * IK Analyzer release 5.0
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.wltea.analyzer.dic;
+
+/**
+ * 主词典的多模式匹配器，非线程安全，每个分词器持有一个
+ *
+ * 逐字输入文本，每个字符返回以该字符结尾的全部词，与逐个起始位置向下匹配的结果相同，
+ * 但每个字符只需在基础词典及增量词典的自动机上各转移一次，不必为每个未结束的词前缀各保留一个Hit。
+ * 增量词典中启用的词由增量自动机输出；基础词典中的词只有在增量词典未设置时才输出，屏蔽的词因此被过滤
+ */
+public final class AhoCorasickMatcher {
+
+    private final OverlayTrie trie;
+    private final AhoCorasick base;
+    //没有增量词典时为null
+    private final AhoCorasick overlay;
+
+    private int baseState = DoubleArrayTrie.ROOT;
+    private int overlayState = DoubleArrayTrie.ROOT;
+
+    //以当前字符结尾的各个词的长度，复用以避免每个字符分配
+    private int[] lengths = new int[8];
+
+    AhoCorasickMatcher(OverlayTrie trie) {
+        this.trie = trie;
+        //只有双数组基础词典支持自动机，见DictionarySnapshot.isAhoCorasickSupported
+        this.base = ((DoubleArrayTrie) trie.getBase()).getAutomaton();
+        this.overlay = trie.getOverlayAutomaton();
+    }
+
+    /**
+     * 回到初始状态，之后输入的字符与之前的文本不再组成词
+     */
+    public void reset() {
+        this.baseState = DoubleArrayTrie.ROOT;
+        this.overlayState = DoubleArrayTrie.ROOT;
+    }
+
+    /**
+     * 输入buff[cursor]
+     * @return 以该字符结尾的词数，各词长度通过getLength取得
+     */
+    public int next(char[] buff, int cursor) {
+        char c = buff[cursor];
+        int count = 0;
+        this.baseState = this.base.next(this.baseState, c);
+        for (int s = this.base.isWord(this.baseState) ? this.baseState : this.base.output(this.baseState);
+             s >= 0; s = this.base.output(s)) {
+            int length = this.base.depth(s);
+            //增量词典中启用或屏蔽的词以增量词典为准
+            if (this.overlay == null || this.trie.overlayState(buff, cursor - length + 1, length) == 0) {
+                count = add(count, length);
+            }
+        }
+        if (this.overlay != null) {
+            this.overlayState = this.overlay.next(this.overlayState, c);
+            for (int s = this.overlay.isWord(this.overlayState) ? this.overlayState
+                    : this.overlay.output(this.overlayState); s >= 0; s = this.overlay.output(s)) {
+                count = add(count, this.overlay.depth(s));
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 第i个以当前字符结尾的词的长度
+     */
+    public int getLength(int i) {
+        return this.lengths[i];
+    }
+
+    /**
+     * 当前文本的某个后缀是否仍是词前缀，即之后输入的字符可能与已输入的字符组成词
+     */
+    public boolean isPending() {
+        return this.base.isPending(this.baseState)
+                || (this.overlay != null && this.overlay.isPending(this.overlayState));
+    }
+
+    private int add(int count, int length) {
+        if (count == this.lengths.length) {
+            int[] grown = new int[count << 1];
+            System.arraycopy(this.lengths, 0, grown, 0, count);
+            this.lengths = grown;
+        }
+        this.lengths[count] = length;
+        return count + 1;
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * IK 中文分词  版本 5.0
+ * IK Analyzer release 5.0
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.wltea.analyzer.dic;
+
+import java.util.function.Consumer;
+
+/**
+ * 只读的基础词典，OverlayTrie在其上叠加增量词典
+ *
+ * 节点以int表示，根节点为ROOT，由transition逐字向下转移；Hit记录前缀节点，之后从该节点继续匹配。
+ * 实现为双数组（DoubleArrayTrie）或Lucene FST（FstTrie）
+ */
+abstract class BaseTrie {
+
+    //根节点
+    static final int ROOT = 0;
+
+    /**
+     * 状态转移
+     * @return 子节点，不存在返回-1
+     */
+    abstract int transition(int node, char c);
+
+    /*
+     * 从根节点到该节点的路径是否为一个启用的词
+     */
+    abstract boolean isWord(int node);
+
+    /*
+     * 该节点是否有子节点
+     */
+    abstract boolean hasNextNode(int node);
+
+    /**
+     * 词段的词频编码（WordFrequency）
+     * @return 不是词或未标注词频时为0
+     */
+    abstract int frequency(char[] charArray, int begin, int length);
+
+    /**
+     * 全部词的词频之和，未标注的词按默认词频计算，首次调用时统计
+     */
+    abstract double getTotalFrequency();
+
+    /**
+     * 遍历全部启用的词条
+     */
+    abstract void forEachWord(Consumer<String> consumer);
+
+    /**
+     * 准入过滤器，首次调用时构建
+     */
+    abstract AdmissionFilter getFilter();
+
+    abstract long ramBytesUsed();
+
+    abstract long offHeapBytesUsed();
+
+    abstract boolean isMapped();
+}
@@ -25,42 +25,48 @@
 package org.wltea.analyzer.dic;
 
 import java.util.Arrays;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
 
 /**
  * 词典树分段，表示词典树的一个分枝
+ *
+ * 子节点以基本类型字符为键：子节点较少时使用按字符排序的char[]及对应的子节点数组，二分查找；
+ * 子节点较多时切换为开放寻址散列表。查找过程不分配对象
  */
 class DictSegment implements Comparable<DictSegment> { // NOTE:htt, 词典树，用于词典查找
 
-    //公用字典表，存储汉字
-    private static final Map<Character, Character> charMap = new ConcurrentHashMap<Character, Character>(16, 0.95f);
     //数组大小上限
-    private static final int ARRAY_LENGTH_LIMIT = 3;
+    //按main.dic统计，55%的节点为叶子，36%只有1个子节点，99.4%的节点不超过16个子节点
+    private static final int ARRAY_LENGTH_LIMIT = 16;
+    //散列表装载因子上限为1/2，初始容量为数组上限的4倍
+    private static final int TABLE_INIT_CAPACITY = ARRAY_LENGTH_LIMIT * 4;
+    //按压缩指针估算的对象大小：节点对象，数组对象头
+    private static final long SHALLOW_SIZE = 32;
+    private static final long ARRAY_HEADER_SIZE = 16;
 
-    //Map存储结构
-    private Map<Character, DictSegment> childrenMap; // NOTE:htt, 采用map结构保持字符
-    //数组方式存储结构
-    private DictSegment[] childrenArray; // NOTE:htt, 采用数组结构保持字符
+    //子节点字符，数组方式存储时按升序排列、长度等于storeSize；散列表方式存储时为散列槽位
+    private char[] childrenKeys;
+    //子节点，与childrenKeys一一对应；散列表方式存储时空槽位为null
+    private DictSegment[] childrenArray;
 
 
     //当前节点上存储的字符
-    private final Character nodeChar; // NOTE:htt, 记录当前存储的 字符， 如："石"
+    private final char nodeChar; // NOTE:htt, 记录当前存储的 字符， 如："石"
     //当前节点存储的Segment数目
-    //storeSize <=ARRAY_LENGTH_LIMIT ，使用数组存储， storeSize >ARRAY_LENGTH_LIMIT ,则使用Map存储
+    //storeSize <=ARRAY_LENGTH_LIMIT ，使用数组存储， storeSize >ARRAY_LENGTH_LIMIT ,则使用散列表存储
     private int storeSize = 0;
-    //当前DictSegment状态 ,默认 0 , 1表示从根节点到当前节点的路径表示一个词
-    private int nodeState = 0;    // NOTE:htt, 0表示为词的中间，1表示词已经到达结尾;末尾字符，如果为1代表完整词并可以使用，为0则为完整的词但是被屏蔽
+    //当前DictSegment状态 ,默认 0 , 1表示从根节点到当前节点的路径表示一个词，2表示该词被屏蔽
+    //作为叠加在双数组上的增量词典时，0表示沿用双数组中的状态，2可屏蔽双数组中的词
+    private int nodeState = 0;    // NOTE:htt, 0表示为词的中间，1表示词已经到达结尾;末尾字符，如果为1代表完整词并可以使用，为2则为完整的词但是被屏蔽
+    //启用的词的词频编码（WordFrequency），0表示未标注；对象按8字节对齐，该字段不增加节点大小
+    private byte frequency = 0;
 
 
-    DictSegment(Character nodeChar) {
-        if (nodeChar == null) {
-            throw new IllegalArgumentException("参数为空异常，字符不能为空");
-        }
+    DictSegment(char nodeChar) {
         this.nodeChar = nodeChar;
     }
 
-    Character getNodeChar() {
+    char getNodeChar() {
         return nodeChar;
     }
 
@@ -71,6 +77,84 @@ class DictSegment implements Comparable<DictSegment> { // NOTE:htt, 词典树，
         return this.storeSize > 0;
     }
 
+    /*
+     * 判断从根节点到当前节点的路径是否为一个启用的词
+     */
+    boolean isWord() {
+        return this.nodeState == 1;
+    }
+
+    /*
+     * 判断从根节点到当前节点的路径是否为一个被屏蔽的词
+     */
+    boolean isDisabled() {
+        return this.nodeState == 2;
+    }
+
+    /*
+     * 词频编码，0表示未标注
+     */
+    int getFrequency() {
+        return this.frequency;
+    }
+
+    /*
+     * 子节点数
+     */
+    int getStoreSize() {
+        return this.storeSize;
+    }
+
+    /*
+     * 子节点是否以散列表方式存储，否则为排序数组
+     */
+    boolean isTableMode() {
+        return this.storeSize > ARRAY_LENGTH_LIMIT;
+    }
+
+    /**
+     * 估算本节点及其子树占用的堆内存字节数
+     */
+    long ramBytesUsed() {
+        long bytes = SHALLOW_SIZE;
+        if (this.childrenKeys != null) {
+            bytes += align(ARRAY_HEADER_SIZE + 2L * this.childrenKeys.length)
+                    + align(ARRAY_HEADER_SIZE + 4L * this.childrenArray.length);
+            for (DictSegment child : this.childrenArray) {
+                if (child != null) {
+                    bytes += child.ramBytesUsed();
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    /**
+     * 获取按字符排序的子节点
+     * @return DictSegment[]
+     */
+    DictSegment[] getChildren() {
+        if (this.storeSize == 0) {
+            return new DictSegment[0];
+        }
+        if (this.storeSize <= ARRAY_LENGTH_LIMIT) {
+            return Arrays.copyOf(this.childrenArray, this.storeSize);
+        }
+        DictSegment[] children = new DictSegment[this.storeSize];
+        int i = 0;
+        for (DictSegment segment : this.childrenArray) {
+            if (segment != null) {
+                children[i++] = segment;
+            }
+        }
+        Arrays.sort(children);
+        return children;
+    }
+
     /**
      * 匹配词段
      * @param charArray
@@ -111,62 +195,79 @@ class DictSegment implements Comparable<DictSegment> { // NOTE:htt, 词典树，
             //否则要将HIT状态重置
             searchHit.setUnmatch(); // NOTE:htt, 重置match状态
         }
-        //设置hit的当前处理位置
-        searchHit.setEnd(begin); // NOTE:htt, 记录当前查找的位置
 
-        Character keyChar = Character.valueOf(charArray[begin]);
-        DictSegment ds = null;
-
-        //引用实例变量为本地变量，避免查询时遇到更新的同步问题
-        DictSegment[] segmentArray = this.childrenArray;
-        Map<Character, DictSegment> segmentMap = this.childrenMap;
-
-        //STEP1 在节点中查找keyChar对应的DictSegment
-        if (segmentArray != null) {
-            //在数组中查找
-            DictSegment keySegment = new DictSegment(keyChar);
-            int position = Arrays.binarySearch(segmentArray, 0, this.storeSize, keySegment);
-            if (position >= 0) {
-                ds = segmentArray[position];
+        DictSegment ds = this;
+        for (int i = begin, end = begin + length; i < end; i++) {
+            //设置hit的当前处理位置
+            searchHit.setEnd(i); // NOTE:htt, 记录当前查找的位置
+            //STEP1 在节点中查找字符对应的DictSegment
+            ds = ds.lookup(charArray[i]);
+            if (ds == null) {
+                //STEP3 没有找到DictSegment， 将HIT设置为不匹配
+                return searchHit;
             }
-
-        } else if (segmentMap != null) {
-            //在map中查找
-            ds = segmentMap.get(keyChar);
         }
 
-        //STEP2 找到DictSegment，判断词的匹配状态，是否继续递归，还是返回结果
-        if (ds != null) {
-            if (length > 1) {
-                //词未匹配完，继续往下搜索
-                return ds.match(charArray, begin + 1, length - 1, searchHit); // NOTE:htt, 继续查找
-            } else if (length == 1) {
-
-                //搜索最后一个char
-                if (ds.nodeState == 1) { // NOTE:htt, 如果为完整的词，并且启动则匹配
-                    //添加HIT状态为完全匹配
-                    searchHit.setMatch();
-                }
-                if (ds.hasNextNode()) { // NOTE:htt, 如果有子字符串，则对应为前缀
-                    //添加HIT状态为前缀匹配
-                    searchHit.setPrefix();
-                    //记录当前位置的DictSegment
-                    searchHit.setMatchedDictSegment(ds); // NOTE:htt, 记录当前找到的路径
-                }
-                return searchHit;
+        //STEP2 找到DictSegment，判断词的匹配状态
+        if (ds != this) {
+            if (ds.nodeState == 1) { // NOTE:htt, 如果为完整的词，并且启动则匹配
+                //添加HIT状态为完全匹配
+                searchHit.setMatch();
+            }
+            if (ds.hasNextNode()) { // NOTE:htt, 如果有子字符串，则对应为前缀
+                //添加HIT状态为前缀匹配
+                searchHit.setPrefix();
+                //记录当前位置的DictSegment
+                searchHit.setMatchedDictSegment(ds); // NOTE:htt, 记录当前找到的路径
             }
-
         }
-        //STEP3 没有找到DictSegment， 将HIT设置为不匹配
         return searchHit;
     }
 
+    /**
+     * 查找字符对应的子节点
+     * @param keyChar
+     * @return 子节点，不存在返回null
+     */
+    DictSegment lookup(char keyChar) {
+        //引用实例变量为本地变量，避免查询时遇到更新的同步问题
+        char[] keys = this.childrenKeys;
+        DictSegment[] children = this.childrenArray;
+        int size = this.storeSize;
+        if (size == 0 || keys == null) {
+            return null;
+        }
+        if (size <= ARRAY_LENGTH_LIMIT) {
+            int position = Arrays.binarySearch(keys, 0, Math.min(size, keys.length), keyChar);
+            return position >= 0 ? children[position] : null;
+        }
+        int mask = keys.length - 1;
+        for (int i = hash(keyChar) & mask; ; i = (i + 1) & mask) {
+            DictSegment ds = children[i];
+            if (ds == null) {
+                return null;
+            }
+            if (keys[i] == keyChar) {
+                return ds;
+            }
+        }
+    }
+
     /**
      * 加载填充词典片段
      * @param charArray
      */
     void fillSegment(char[] charArray) { // NOTE:htt, 添加填充的词
-        this.fillSegment(charArray, 0, charArray.length, 1);
+        this.fillSegment(charArray, 0, charArray.length, 1, 0);
+    }
+
+    /**
+     * 加载填充词典片段，并记录词频编码；同一个词多次出现时取最大的词频
+     * @param charArray
+     * @param frequency 词频编码，0表示未标注
+     */
+    void fillSegment(char[] charArray, int frequency) {
+        this.fillSegment(charArray, 0, charArray.length, 1, frequency);
     }
 
     /**
@@ -174,7 +275,101 @@ class DictSegment implements Comparable<DictSegment> { // NOTE:htt, 词典树，
      * @param charArray
      */
     void disableSegment(char[] charArray) { // NOTE:htt, 添加屏蔽的词
-        this.fillSegment(charArray, 0, charArray.length, 0);
+        this.fillSegment(charArray, 0, charArray.length, 2, 0);
+    }
+
+    /**
+     * 以写时复制方式更新一个词的状态：路径上尚未复制的节点先复制再修改，原节点不变，
+     * 因此正在使用原词典树的查询不受影响
+     * @param charArray
+     * @param state 1启用，2屏蔽，0恢复为未设置
+     * @param frequency 启用的词的词频编码，0表示未标注
+     * @param copied 本批次已复制（尚未发布）的节点，可直接修改
+     */
+    void updateSegment(char[] charArray, int state, int frequency, Set<DictSegment> copied) {
+        DictSegment ds = this;
+        for (char keyChar : charArray) {
+            DictSegment child = ds.lookup(keyChar);
+            if (child == null) {
+                if (state == 0) {
+                    //词不存在，无需恢复
+                    return;
+                }
+                child = ds.lookforSegment(keyChar, 1);
+                copied.add(child);
+            } else if (!copied.contains(child)) {
+                child = child.copy();
+                ds.replaceChild(child);
+                copied.add(child);
+            }
+            ds = child;
+        }
+        if (ds != this) {
+            ds.nodeState = state;
+            ds.frequency = (byte) (state == 1 ? frequency : 0);
+        }
+    }
+
+    /**
+     * 复制当前节点，子节点数组复制，子节点本身共享
+     */
+    DictSegment copy() {
+        DictSegment ds = new DictSegment(this.nodeChar);
+        ds.nodeState = this.nodeState;
+        ds.frequency = this.frequency;
+        ds.storeSize = this.storeSize;
+        if (this.childrenKeys != null) {
+            ds.childrenKeys = this.childrenKeys.clone();
+            ds.childrenArray = this.childrenArray.clone();
+        }
+        return ds;
+    }
+
+    /**
+     * 一次设置全部子节点，用于并行构建后将各子树挂到根节点下，仅用于尚未发布的空节点
+     * @param children 按字符升序排列、字符互不相同的子节点
+     */
+    void setChildren(DictSegment[] children) {
+        int size = children.length;
+        if (size <= ARRAY_LENGTH_LIMIT) {
+            char[] keys = new char[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = children[i].nodeChar;
+            }
+            this.childrenKeys = keys;
+            this.childrenArray = children.clone();
+        } else {
+            //装载因子不超过1/2
+            int capacity = TABLE_INIT_CAPACITY;
+            while (size * 2 > capacity) {
+                capacity <<= 1;
+            }
+            char[] keys = new char[capacity];
+            DictSegment[] table = new DictSegment[capacity];
+            for (DictSegment segment : children) {
+                put(keys, table, segment);
+            }
+            this.childrenKeys = keys;
+            this.childrenArray = table;
+        }
+        this.storeSize = size;
+    }
+
+    /**
+     * 以同一字符的新节点替换已有子节点，仅用于尚未发布的节点
+     */
+    private void replaceChild(DictSegment segment) {
+        char keyChar = segment.nodeChar;
+        if (this.storeSize <= ARRAY_LENGTH_LIMIT) {
+            this.childrenArray[Arrays.binarySearch(this.childrenKeys, 0, this.storeSize, keyChar)] = segment;
+            return;
+        }
+        int mask = this.childrenKeys.length - 1;
+        int i = hash(keyChar) & mask;
+        while (this.childrenKeys[i] != keyChar || this.childrenArray[i] == null) {
+            i = (i + 1) & mask;
+        }
+        this.childrenArray[i] = segment;
     }
 
     /**
@@ -183,32 +378,21 @@ class DictSegment implements Comparable<DictSegment> { // NOTE:htt, 词典树，
      * @param begin
      * @param length
      * @param enabled
+     * @param frequency
      */
     private synchronized void fillSegment(char[] charArray, int begin, int length,
-            int enabled) { // NOTE:htt, 将 中文字符纳入 加载到内存中
-        //获取字典表中的汉字对象
-        Character beginChar = Character.valueOf(charArray[begin]);
-        Character keyChar = charMap.get(beginChar);
-        //字典中没有该字，则将其添加入字典
-        if (keyChar == null) {
-            charMap.put(beginChar, beginChar);
-            keyChar = beginChar;
+            int enabled, int frequency) { // NOTE:htt, 将 中文字符纳入 加载到内存中
+        DictSegment ds = this;
+        for (int i = begin, end = begin + length; i < end && ds != null; i++) {
+            //搜索当前节点的存储，查询对应keyChar的keyChar，如果没有则创建
+            ds = ds.lookforSegment(charArray[i], enabled); // NOTE:htt, 如果不超过ARRAY_LENGTH_LIMIT采用数组存储，否则采用散列表存储
         }
-
-        //搜索当前节点的存储，查询对应keyChar的keyChar，如果没有则创建
-        DictSegment ds = lookforSegment(keyChar, enabled); // NOTE:htt, 如果小于ARRAY_LENGTH_LIMIT采用数组存储，否则采用map存储
-        if (ds != null) {
-            //处理keyChar对应的segment
-            if (length > 1) {
-                //词元还没有完全加入词典树
-                ds.fillSegment(charArray, begin + 1, length - 1, enabled); // NOTE:htt, 继续在当前字符下构建子树，用于将子串都纳入
-            } else if (length == 1) {
-                //已经是词元的最后一个char,设置当前节点状态为enabled，
-                //enabled=1表明一个完整的词，enabled=0表示从词典中屏蔽当前词
-                ds.nodeState = enabled; // NOTE:htt, 末尾字符，如果为1代表完整词并可以使用，为0则为完整的词但是被屏蔽
-            }
+        if (ds != null && ds != this) {
+            //已经是词元的最后一个char,设置当前节点状态为enabled，
+            //enabled=1表明一个完整的词，enabled=2表示从词典中屏蔽当前词
+            ds.nodeState = enabled; // NOTE:htt, 末尾字符，如果为1代表完整词并可以使用，为2则为完整的词但是被屏蔽
+            ds.frequency = (byte) (enabled == 1 ? Math.max(ds.frequency, frequency) : 0);
         }
-
     }
 
     /**
@@ -217,100 +401,80 @@ class DictSegment implements Comparable<DictSegment> { // NOTE:htt, 词典树，
      * @param create  =1如果没有找到，则创建新的segment ; =0如果没有找到，不创建，返回null
      * @return
      */
-    private DictSegment lookforSegment(Character keyChar,
-            int create) { // NOTE:htt, 如果小于ARRAY_LENGTH_LIMIT采用数组存储，否则采用map存储
+    private DictSegment lookforSegment(char keyChar,
+            int create) { // NOTE:htt, 如果不超过ARRAY_LENGTH_LIMIT采用数组存储，否则采用散列表存储
 
-        DictSegment ds = null;
+        DictSegment ds = this.lookup(keyChar);
+        if (ds != null || create != 1) {
+            return ds;
+        }
 
-        if (this.storeSize <= ARRAY_LENGTH_LIMIT) {
-            //获取数组容器，如果数组未创建则创建数组
-            DictSegment[] segmentArray = getChildrenArray();
-            //搜寻数组
-            DictSegment keySegment = new DictSegment(keyChar);
-            int position = Arrays.binarySearch(segmentArray, 0, this.storeSize, keySegment);
-            if (position >= 0) {
-                ds = segmentArray[position];
+        ds = new DictSegment(keyChar);
+        if (this.storeSize < ARRAY_LENGTH_LIMIT) {
+            //数组容量未满，按序插入；新建数组后再替换引用，查询不会读到未完成的数组
+            char[] keys = new char[this.storeSize + 1];
+            DictSegment[] children = new DictSegment[this.storeSize + 1];
+            int position = this.storeSize == 0 ? -1
+                    : Arrays.binarySearch(this.childrenKeys, 0, this.storeSize, keyChar);
+            int insert = -(position + 1);
+            if (this.storeSize > 0) {
+                System.arraycopy(this.childrenKeys, 0, keys, 0, insert);
+                System.arraycopy(this.childrenArray, 0, children, 0, insert);
+                System.arraycopy(this.childrenKeys, insert, keys, insert + 1, this.storeSize - insert);
+                System.arraycopy(this.childrenArray, insert, children, insert + 1, this.storeSize - insert);
             }
+            keys[insert] = keyChar;
+            children[insert] = ds;
+            this.childrenKeys = keys;
+            this.childrenArray = children;
+            this.storeSize++;
+
+        } else if (this.storeSize == ARRAY_LENGTH_LIMIT) {
+            //数组容量已满，切换散列表存储
+            this.rehash(TABLE_INIT_CAPACITY, ds);
 
-            //遍历数组后没有找到对应的segment
-            if (ds == null && create == 1) {
-                ds = keySegment;
-                if (this.storeSize < ARRAY_LENGTH_LIMIT) {
-                    //数组容量未满，使用数组存储
-                    segmentArray[this.storeSize] = ds;
-                    //segment数目+1
-                    this.storeSize++;
-                    Arrays.sort(segmentArray, 0, this.storeSize);
-
-                } else {
-                    //数组容量已满，切换Map存储
-                    //获取Map容器，如果Map未创建,则创建Map
-                    Map<Character, DictSegment> segmentMap = getChildrenMap();
-                    //将数组中的segment迁移到Map中
-                    migrate(segmentArray, segmentMap);
-                    //存储新的segment
-                    segmentMap.put(keyChar, ds);
-                    //segment数目+1 ，  必须在释放数组前执行storeSize++ ， 确保极端情况下，不会取到空的数组
-                    this.storeSize++;
-                    //释放当前的数组引用
-                    this.childrenArray = null; // NOTE:htt, 将数组置空，以便后续处理
-                }
-            }
         } else {
-            //获取Map容器，如果Map未创建,则创建Map
-            Map<Character, DictSegment> segmentMap = getChildrenMap();
-            //搜索Map
-            ds = segmentMap.get(keyChar);
-            if (ds == null && create == 1) {
-                //构造新的segment
-                ds = new DictSegment(keyChar);
-                segmentMap.put(keyChar, ds);
-                //当前节点存储segment数目+1
+            if ((this.storeSize + 1) * 2 > this.childrenKeys.length) {
+                //超过装载因子，扩容
+                this.rehash(this.childrenKeys.length * 2, ds);
+            } else {
+                put(this.childrenKeys, this.childrenArray, ds);
                 this.storeSize++;
             }
         }
-
         return ds;
     }
 
-
     /**
-     * 获取数组容器
-     * 线程同步方法
+     * 将现有子节点及新增节点迁移到指定容量的散列表中
      */
-    private DictSegment[] getChildrenArray() { // NOTE:htt, childrenArray按 3长度创建
-        synchronized (this) {
-            if (this.childrenArray == null) {
-                this.childrenArray = new DictSegment[ARRAY_LENGTH_LIMIT];
+    private void rehash(int capacity, DictSegment newSegment) {
+        char[] keys = new char[capacity];
+        DictSegment[] children = new DictSegment[capacity];
+        for (DictSegment segment : this.childrenArray) {
+            if (segment != null) {
+                put(keys, children, segment);
             }
         }
-        return this.childrenArray;
+        put(keys, children, newSegment);
+        //segment数目+1
+        this.storeSize++;
+        this.childrenKeys = keys;
+        this.childrenArray = children;
     }
 
-    /**
-     * 获取Map容器
-     * 线程同步方法
-     */
-    private Map<Character, DictSegment> getChildrenMap() { // NOTE:htt, childrenMap按2倍的容量创建
-        synchronized (this) {
-            if (this.childrenMap == null) {
-                this.childrenMap = new ConcurrentHashMap<Character, DictSegment>(ARRAY_LENGTH_LIMIT * 2, 0.8f);
-            }
+    private static void put(char[] keys, DictSegment[] children, DictSegment segment) {
+        int mask = keys.length - 1;
+        int i = hash(segment.nodeChar) & mask;
+        while (children[i] != null) {
+            i = (i + 1) & mask;
         }
-        return this.childrenMap;
+        keys[i] = segment.nodeChar;
+        children[i] = segment;
     }
 
-    /**
-     * 将数组中的segment迁移到Map中
-     * @param segmentArray
-     */
-    private void migrate(DictSegment[] segmentArray,
-            Map<Character, DictSegment> segmentMap) { // NOTE:htt, 将segmentArray数组内容迁移到 Map中，key为 nodeChar字符
-        for (DictSegment segment : segmentArray) {
-            if (segment != null) {
-                segmentMap.put(segment.nodeChar, segment);
-            }
-        }
+    private static int hash(char c) {
+        return (c * 0x9E3779B9) >>> 16;
     }
 
     /**
@@ -320,7 +484,7 @@ class DictSegment implements Comparable<DictSegment> { // NOTE:htt, 词典树，
      */
     public int compareTo(DictSegment o) {
         //对当前节点存储的char进行比较
-        return this.nodeChar.compareTo(o.nodeChar); // NOTE:htt, 比较存储的字符是否相同
+        return Character.compare(this.nodeChar, o.nodeChar); // NOTE:htt, 比较存储的字符是否相同
     }
 
 }
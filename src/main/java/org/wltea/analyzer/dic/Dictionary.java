@@ -25,13 +25,12 @@
  */
 package org.wltea.analyzer.dic;
 
-import java.io.BufferedReader;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.Files;
 import java.nio.file.FileVisitResult;
@@ -41,18 +40,14 @@ import java.nio.file.attribute.FileTime;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.*;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
-
-import org.apache.http.Header;
-import org.apache.http.HttpEntity;
-import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.config.RequestConfig;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicReference;
+
 import org.elasticsearch.SpecialPermission;
 import org.elasticsearch.common.io.PathUtils;
 import org.elasticsearch.plugin.analysis.ik.AnalysisIkPlugin;
@@ -62,20 +57,47 @@ import org.wltea.analyzer.help.ESPluginLoggerFactory;
 
 
 /**
- * 词典管理类,单子模式
+ * 词典管理类
+ *
+ * 每个词典集合一个实例，由索引设置dictionary_set选择，各集合使用各自的配置文件加载扩展词典；
+ * main.dic、quantifier.dic、stopword.dic 等基础词典节点内只加载一次，所有集合共享
  */
 public class Dictionary { // NOTE:htt, 词典管理，加载主词库，ext词库，停用词词库，远程ext词库，远程ext词库；并支持从目录中定期加载
 
 	/*
-	 * 词典单子实例
+	 * 默认词典集合，使用IKAnalyzer.cfg.xml
+	 */
+	public static final String DEFAULT_SET = "default";
+
+	/*
+	 * 已加载的词典集合，名称 -> 词典实例
+	 */
+	private static final Map<String, Dictionary> dictionarySets = new ConcurrentHashMap<String, Dictionary>();
+
+	/*
+	 * 基础词典，第一个词典集合加载时载入，所有集合共享，之后不再重新加载
 	 */
-	private static Dictionary singleton;
+	private static BaseTrie mainBase;
+	private static BaseTrie stopWordBase;
+	private static OverlayTrie quantifierDict;
 
-	private DictSegment mainDict; // NOTE:htt, 主词典， TODO 推荐使用 volatile，当重新赋值后，其他的线程可以立即看到
+	/*
+	 * 基础词典所在目录及主词典格式，只取自默认集合的IKAnalyzer.cfg.xml，与哪个集合先初始化无关
+	 */
+	private static Path baseConfDir;
+	private static boolean baseFst;
 
-	private DictSegment quantifierDict; // NOTE:htt, 量词词典
+	/*
+	 * 当前词典快照，包括主词典、量词词典、停用词词典；重新加载时整体替换
+	 */
+	private final AtomicReference<DictionarySnapshot> snapshot = new AtomicReference<DictionarySnapshot>();
 
-	private DictSegment stopWords; // NOTE:htt, 停用词词典
+	/*
+	 * 主词典及停用词词典的分层：基础词典、本地扩展、远程扩展、运行时，上层覆盖下层
+	 * 某个来源变化时只更新其所在的层，修改均在当前实例的锁内进行
+	 */
+	private LayeredDictionary mainLayers;
+	private LayeredDictionary stopWordLayers;
 
 	/**
 	 * 配置对象
@@ -84,7 +106,10 @@ public class Dictionary { // NOTE:htt, 词典管理，加载主词库，ext词
 
 	private static final Logger logger = ESPluginLoggerFactory.getLogger(Monitor.class.getName());
 
-	private static ScheduledExecutorService pool = Executors.newScheduledThreadPool(1);
+	//远程词库检查及本地词库检查的线程数，一个远程地址响应慢时其它地址仍按时检查
+	private static final int MONITOR_THREADS = 4;
+
+	private static ScheduledThreadPoolExecutor pool;
 
 	private static final String PATH_DIC_MAIN = "main.dic";
 	private static final String PATH_DIC_SURNAME = "surname.dic"; // NOTE:htt, 姓氏 词典
@@ -98,23 +123,54 @@ public class Dictionary { // NOTE:htt, 词典管理，加载主词库，ext词
 	private final static  String REMOTE_EXT_DICT = "remote_ext_dict";
 	private final static  String EXT_STOP = "ext_stopwords"; // NOTE:htt, 扩展停用词
 	private final static  String REMOTE_EXT_STOP = "remote_ext_stopwords";
-	private final static  String EXT_DICT_FOLDER = "ext-dict";
+	private final static  String REMOTE_CACHE_FOLDER = "remote-cache"; // NOTE:htt, 远程词典的本地缓存目录
+	private final static  String COMPILED_CACHE_FOLDER = "compiled-cache"; // NOTE:htt, 运行时编译的词典的缓存目录
+	private final static  String REMOTE_CHECK_MODE = "remote_check_mode"; // NOTE:htt, poll 或 long_poll
+	private final static  String REMOTE_CHECK_INTERVAL = "remote_check_interval"; // NOTE:htt, 检查间隔，秒
+	private final static  String REMOTE_CHECK_JITTER = "remote_check_jitter"; // NOTE:htt, 检查的随机抖动，秒
+	private final static  String REMOTE_LONG_POLL_TIMEOUT = "remote_long_poll_timeout"; // NOTE:htt, 长轮询时服务器最多挂起的时间，秒
+	private final static  String MAIN_DICT_FORMAT = "main_dict_format"; // NOTE:htt, 主词典格式 double_array 或 fst
+
+	private FileTime extDictConfigLastModifiedTime;
 
-	private static FileTime extDictLastModifiedTime;
-	private static FileTime extDictConfigLastModifiedTime;
+	//本地扩展词典及配置文件的变化检测
+	private final ExtDictWatcher watcher = new ExtDictWatcher(this);
+
+	//首次加载的耗时，重新加载的次数、最近一次的耗时（毫秒）及完成时间，用于统计
+	private volatile long loadMillis;
+	private volatile long reloadCount;
+	private volatile long lastReloadMillis;
+	private volatile long lastReloadTime;
+
+	//词典集合名称及其配置文件
+	private final String name;
+	private final String configFileName;
 
 	private Path confDir; // NOTE:htt, 对应路径为 ${es_conf}/analysis-ik 或 ${ik_path}/config
 	private Properties props;
 
-	private Dictionary(Configuration cfg) { // NOTE:htt, 加载 ${real_ik_conf}/IKAnalyzer.cfg.xml 文件，以便获取 ext 词典等信息
+	private Dictionary(Configuration cfg) {
+		this(cfg, cfg.getDictionarySet());
+	}
+
+	private Dictionary(Configuration cfg, String name) { // NOTE:htt, 加载 ${real_ik_conf}/IKAnalyzer.cfg.xml 文件，以便获取 ext 词典等信息
 		this.configuration = cfg;
+		this.name = name;
+		this.configFileName = configFileName(name);
 		this.props = new Properties();
 		this.confDir = cfg.getEnvironment().configFile().resolve(AnalysisIkPlugin.PLUGIN_NAME); // NOTE:htt, 默认先找 ${es_conf}/analysis-ik 作为配置路径
 		this.props = loadProperties();
 	}
 
+	/**
+	 * 词典集合对应的配置文件，默认集合为IKAnalyzer.cfg.xml，其它集合为IKAnalyzer-{name}.cfg.xml
+	 */
+	private static String configFileName(String name) {
+		return DEFAULT_SET.equals(name) ? FILE_NAME : "IKAnalyzer-" + name + ".cfg.xml";
+	}
+
 	private Properties loadProperties() {
-		Path configFile = confDir.resolve(FILE_NAME);
+		Path configFile = confDir.resolve(configFileName);
 
 		Properties tmpProps = new Properties();
 		InputStream input = null;
@@ -123,7 +179,7 @@ public class Dictionary { // NOTE:htt, 词典管理，加载主词库，ext词
 			input = new FileInputStream(configFile.toFile());
 		} catch (FileNotFoundException e) {
 			confDir = configuration.getConfigInPluginDir(); // NOTE:htt, 如果原有路径没有找到，再查找 ${ik_path}/config 路径
-			configFile = confDir.resolve(FILE_NAME); // NOTE:htt, 加载 ${real_ik_conf}/IKAnalyzer.cfg.xml 文件
+			configFile = confDir.resolve(configFileName); // NOTE:htt, 加载 ${real_ik_conf}/IKAnalyzer.cfg.xml 文件
 			try {
 				logger.info("try load config from {}", configFile);
 				input = new FileInputStream(configFile.toFile());
@@ -148,52 +204,137 @@ public class Dictionary { // NOTE:htt, 词典管理，加载主词库，ext词
 		}
 		return null;
 	}
+
+	private boolean isFstMainDict() {
+		return "fst".equals(getProperty(MAIN_DICT_FORMAT));
+	}
+
+	/**
+	 * 基础词典由所有集合共享，只按默认集合的配置加载；命名集合的配置与之不同时不生效，记录警告
+	 */
+	private void checkBaseConfig() {
+		if (DEFAULT_SET.equals(name)) {
+			return;
+		}
+		if (isFstMainDict() != baseFst) {
+			logger.warn("ik-analyzer: {} of dictionary set [{}] is ignored, base dictionaries are shared and use {} from {}",
+					MAIN_DICT_FORMAT, name, baseFst ? "fst" : "double_array", FILE_NAME);
+		}
+		if (!confDir.toAbsolutePath().equals(baseConfDir)) {
+			logger.warn("ik-analyzer: {}, {} and {} of dictionary set [{}] are loaded from {} rather than {}",
+					PATH_DIC_MAIN, PATH_DIC_QUANTIFIER, PATH_DIC_STOP, name, baseConfDir, confDir.toAbsolutePath());
+		}
+	}
 	/**
 	 * 词典初始化 由于IK Analyzer的词典采用Dictionary类的静态方法进行词典初始化
 	 * 只有当Dictionary类被实际调用时，才会开始载入词典， 这将延长首次分词操作的时间 该方法提供了一个在应用加载阶段就初始化字典的手段
-	 * 
-	 * @return Dictionary
+	 * 每个词典集合只初始化一次，基础词典只在第一次初始化时加载
 	 */
-	public static synchronized void initial(Configuration cfg) { // NOTE:htt, 初始化词库，包括本次词库，远程词库
-		if (singleton == null) {
-			synchronized (Dictionary.class) {
-				if (singleton == null) {
-
-					singleton = new Dictionary(cfg);
-					singleton.loadMainDict(); // NOTE:htt, 从main.dic、用户扩展词库以及 远程词库中加载 分词
-					singleton.loadSurnameDict(); // NOTE:htt, 加载姓氏，但是加载后没有使用 TODO:
-					singleton.loadQuantifierDict(); // NOTE:htt, 加载量词词典
-					singleton.loadSuffixDict();
-					singleton.loadPrepDict();
-					singleton.loadStopWordDict(); // NOTE:htt, 加载停用词
-
-					if(cfg.isEnableRemoteDict()){
-						// 建立监控线程
-						for (String location : singleton.getRemoteExtDictionarys()) {
-							// 10 秒是初始延迟可以修改的 60是间隔时间 单位秒
-							pool.scheduleAtFixedRate(new Monitor(location), 10, 60, TimeUnit.SECONDS); // NOTE:htt, 每60s超时检查远程拓展词库是否变化，如果有变化则重新加载
-						}
-						for (String location : singleton.getRemoteExtStopWordDictionarys()) {
-							pool.scheduleAtFixedRate(new Monitor(location), 10, 60, TimeUnit.SECONDS); // NOTE:htt, 每60s超时检查远程停用词词库是否变化，如果有变化则重新加载
-						}
-					}
-
-					if (cfg.isEnableAutoCheckDict()) {
-						// 监控配置文件及自定义词库
-						pool.scheduleAtFixedRate(new Runnable(){
-							@Override
-							public void run() {
-								Dictionary.getSingleton().checkExtDict(); // NOTE:htt, 检查本地 ext-dict 目录时间以及IKAnalyzer.cfg.xml内容是否有变化，如果有变化则重新加载词库
-							}
+	public static void initial(Configuration cfg) { // NOTE:htt, 初始化词库，包括本次词库，远程词库
+		String name = cfg.getDictionarySet();
+		if (dictionarySets.containsKey(name)) {
+			return;
+		}
+		synchronized (Dictionary.class) {
+			if (dictionarySets.containsKey(name)) {
+				return;
+			}
 
-						}, 10, 30, TimeUnit.SECONDS); // NOTE:htt, 每30s重新检查并尝试加载
+			long start = System.nanoTime();
+			if (mainBase == null) {
+				// 远程词典及运行时编译的词典缓存在数据目录下，与词典集合无关；配置目录只需可读
+				Path[] dataFiles = cfg.getEnvironment().dataFiles();
+				if (dataFiles.length > 0) {
+					Path pluginData = dataFiles[0].resolve(AnalysisIkPlugin.PLUGIN_NAME);
+					RemoteDictionary.setCacheDir(pluginData.resolve(REMOTE_CACHE_FOLDER));
+					DictionaryCompiler.setCacheDir(pluginData.resolve(COMPILED_CACHE_FOLDER));
+				}
+			}
+			Dictionary dictionary = new Dictionary(cfg);
+			// 基础词典只按默认集合的配置加载，命名集合先初始化时另读取IKAnalyzer.cfg.xml
+			Dictionary base = null;
+			if (mainBase == null) {
+				base = DEFAULT_SET.equals(name) ? dictionary : new Dictionary(cfg, DEFAULT_SET);
+				baseConfDir = base.confDir.toAbsolutePath();
+				baseFst = base.isFstMainDict();
+			}
+			dictionary.checkBaseConfig();
+			// 基础词典与本集合的扩展词典、远程词典并行加载；有本地缓存的远程词典直接使用缓存，加载完成后再重新验证
+			Map<String, RemoteDictionaryCache.Entry> cached = new ConcurrentHashMap<String, RemoteDictionaryCache.Entry>();
+			ForkJoinTask<?> baseDicts = base != null ? DictionaryCompiler.fork(base::loadBaseDicts) : null;
+			ForkJoinTask<Map<String, Set<String>>> stopWordSources = DictionaryCompiler.fork(() -> dictionary.loadSources(
+					dictionary.getExtStopWordDictionarys(), dictionary.getRemoteExtStopWordDictionarys(), "Extra Stopwords", cached)); // NOTE:htt, 加载拓展停用词
+			Map<String, Set<String>> mainSources = dictionary.loadSources(dictionary.getExtDictionarys(),
+					dictionary.getRemoteExtDictionarys(), "Extra Dict", cached); // NOTE:htt, 加载用户配置的扩展词库，以及从远程连接加载内容构建词典
+			if (baseDicts != null) {
+				baseDicts.join();
+			}
+			// 扩展词条分层叠加在共享的基础词典之上，基础词典无需重新编译
+			dictionary.mainLayers = dictionary.layered("Main Dict", mainBase, mainSources, dictionary.getRemoteExtDictionarys());
+			dictionary.stopWordLayers = dictionary.layered("Stopwords", stopWordBase, stopWordSources.join(),
+					dictionary.getRemoteExtStopWordDictionarys());
+			dictionary.snapshot.set(new DictionarySnapshot(1, dictionary.mainLayers.build(), quantifierDict,
+					dictionary.stopWordLayers.build()));
+			dictionary.loadMillis = (System.nanoTime() - start) / 1000000;
+			logger.info("[Dict Loading] dictionary set [{}] loaded in {} ms", name, dictionary.loadMillis);
+			dictionary.logMemoryUsage();
+			// 词典全部加载完成后再发布，其它线程不会取得未加载完的词典
+			dictionarySets.put(name, dictionary);
+			dictionary.revalidateRemoteDicts(cached);
+
+			if (pool == null) {
+				pool = new ScheduledThreadPoolExecutor(MONITOR_THREADS, task -> {
+					Thread thread = new Thread(task, "ik-dict-monitor");
+					thread.setDaemon(true);
+					return thread;
+				});
+			}
+			if(cfg.isEnableRemoteDict()){
+				// 建立监控线程
+				List<Monitor> monitors = new ArrayList<Monitor>();
+				for (String location : dictionary.getRemoteExtDictionarys()) {
+					monitors.add(dictionary.newMonitor(location)); // NOTE:htt, 默认每60s超时检查远程拓展词库是否变化，如果有变化则重新加载
+				}
+				for (String location : dictionary.getRemoteExtStopWordDictionarys()) {
+					monitors.add(dictionary.newMonitor(location)); // NOTE:htt, 默认每60s超时检查远程停用词词库是否变化，如果有变化则重新加载
+				}
+				for (Monitor monitor : monitors) {
+					// 长轮询的请求会占用一个线程直到服务器返回，为每个长轮询地址增加一个线程
+					if (monitor.isLongPoll()) {
+						pool.setCorePoolSize(pool.getCorePoolSize() + 1);
 					}
-
+					monitor.start(pool);
 				}
 			}
+
+			if (cfg.isEnableAutoCheckDict()) {
+				// 监控配置文件及自定义词库
+				dictionary.watcher.start(pool); // NOTE:htt, 本地扩展词典或IKAnalyzer.cfg.xml变化时只重新加载变化的文件
+			}
 		}
 	}
 
+	/**
+	 * 停止远程及本地词库的检查，关闭远程请求的连接池及词典构建线程池，由插件在节点关闭时调用
+	 */
+	public static void shutdown() {
+		SpecialPermission.check();
+		AccessController.doPrivileged((PrivilegedAction<Void>) () -> {
+			synchronized (Dictionary.class) {
+				for (Dictionary dictionary : dictionarySets.values()) {
+					dictionary.watcher.close();
+				}
+				if (pool != null) {
+					pool.shutdownNow();
+					pool = null;
+				}
+			}
+			RemoteDictionary.close();
+			DictionaryCompiler.close();
+			return null;
+		});
+	}
+
 	private void walkFileTree(List<String> files, Path path) {
 		if (Files.isRegularFile(path)) {
 			files.add(path.toString());
@@ -221,19 +362,8 @@ public class Dictionary { // NOTE:htt, 词典管理，加载主词库，ext词
 	}
 
 	private void loadDictFile(DictSegment dict, Path file, boolean critical, String name) { // NOTE:htt, 从文件加载内容构建词典
-		try (InputStream is = new FileInputStream(file.toFile())) {
-			BufferedReader br = new BufferedReader(
-					new InputStreamReader(is, "UTF-8"), 512); // NOTE:htt, 需要为UTF-8格式
-			String word = br.readLine();
-			if (word != null) {
-				if (word.startsWith("\uFEFF"))
-					word = word.substring(1);
-				for (; word != null; word = br.readLine()) {
-					word = word.trim();
-					if (word.isEmpty()) continue;
-					dict.fillSegment(word.toCharArray()); // NOTE:htt, 添加填充的词
-				}
-			}
+		try {
+			DictionaryCompiler.fill(dict, file); // NOTE:htt, 需要为UTF-8格式
 		} catch (FileNotFoundException e) {
 			logger.error("ik-analyzer: " + name + " not found", e);
 			if (critical) throw new RuntimeException("ik-analyzer: " + name + " not found!!!", e);
@@ -242,7 +372,42 @@ public class Dictionary { // NOTE:htt, 词典管理，加载主词库，ext词
 		}
 	}
 
-	private List<String> getExtDictionarys() { // NOTE:htt, 从 IKAnalyzer.cfg.xml 文件中获取 ext 文件列表
+	/**
+	 * 读取词典文件中的词条
+	 * @return 词条集合，读取失败返回null
+	 */
+	private Set<String> readDictFile(Path file, String name) {
+		Set<String> words = new HashSet<String>();
+		try {
+			DictionaryCompiler.readWords(file, words::add);
+			return words;
+		} catch (FileNotFoundException e) {
+			logger.error("ik-analyzer: " + name + " not found", e);
+		} catch (IOException e) {
+			logger.error("ik-analyzer: " + name + " loading failed", e);
+		}
+		return null;
+	}
+
+	/**
+	 * 加载词典文件并编译为双数组，优先映射预编译文件(.dic.dat)，文件缺失或过期时重新编译并写入数据目录
+	 * @param fst 编译为FST，预编译文件为.dic.fst
+	 */
+	private BaseTrie loadCompiledDictFile(Path file, String name, boolean fst) {
+		SpecialPermission.check();
+		return AccessController.doPrivileged((PrivilegedAction<BaseTrie>) () -> {
+			try {
+				return fst ? DictionaryCompiler.loadFst(file) : DictionaryCompiler.load(file);
+			} catch (NoSuchFileException | FileNotFoundException e) {
+				logger.error("ik-analyzer: " + name + " not found", e);
+			} catch (IOException e) {
+				logger.error("ik-analyzer: " + name + " loading failed", e);
+			}
+			return DoubleArrayTrie.compile(new DictSegment((char) 0));
+		});
+	}
+
+	List<String> getExtDictionarys() { // NOTE:htt, 从 IKAnalyzer.cfg.xml 文件中获取 ext 文件列表
 		List<String> extDictFiles = new ArrayList<String>(2);
 		String extDictCfg = getProperty(EXT_DICT);
 		if (extDictCfg != null) {
@@ -275,7 +440,7 @@ public class Dictionary { // NOTE:htt, 词典管理，加载主词库，ext词
 		return remoteExtDictFiles;
 	}
 
-	private List<String> getExtStopWordDictionarys() { // NOTE:htt, 获取拓展停用词 文件列表
+	List<String> getExtStopWordDictionarys() { // NOTE:htt, 获取拓展停用词 文件列表
 		List<String> extStopWordDictFiles = new ArrayList<String>(2);
 		String extStopWordDictCfg = getProperty(EXT_STOP);
 		if (extStopWordDictCfg != null) {
@@ -312,19 +477,81 @@ public class Dictionary { // NOTE:htt, 词典管理，加载主词库，ext词
 		return confDir.toAbsolutePath().toString();
 	}
 
+	/**
+	 * 本词典集合的配置文件
+	 */
+	Path getConfigFile() {
+		return confDir.resolve(configFileName).toAbsolutePath();
+	}
+
+	/**
+	 * ext_dict、ext_stopwords中配置的文件或目录
+	 */
+	List<Path> getLocalDictRoots() {
+		List<Path> roots = new ArrayList<Path>();
+		for (String key : new String[] { EXT_DICT, EXT_STOP }) {
+			String cfg = getProperty(key);
+			if (cfg != null) {
+				for (String filePath : cfg.split(";")) {
+					if (!"".equals(filePath.trim())) {
+						roots.add(PathUtils.get(getDictRoot(), filePath.trim()));
+					}
+				}
+			}
+		}
+		return roots;
+	}
+
 
 	/**
-	 * 获取词典单子实例
+	 * 获取默认词典集合
 	 * 
-	 * @return Dictionary 单例对象
+	 * @return Dictionary 默认词典集合
 	 */
 	public static Dictionary getSingleton() {
-		if (singleton == null) {
-			throw new IllegalStateException("词典尚未初始化，请先调用initial方法");
+		return getDictionary(DEFAULT_SET);
+	}
+
+	/**
+	 * 获取词典集合
+	 *
+	 * @param name 词典集合名称，即索引设置dictionary_set
+	 * @return Dictionary
+	 */
+	public static Dictionary getDictionary(String name) {
+		Dictionary dictionary = dictionarySets.get(name);
+		if (dictionary == null) {
+			throw new IllegalStateException("词典集合[" + name + "]尚未初始化，请先调用initial方法");
 		}
-		return singleton;
+		return dictionary;
+	}
+
+	/**
+	 * 词典集合名称
+	 */
+	public String getName() {
+		return name;
 	}
 
+	/**
+	 * 统计当前快照中各词典的结构及内存占用，以及加载、重新加载的耗时；需遍历整个词典，不应在分词过程中调用
+	 */
+	public DictionaryStats getStats() {
+		return new DictionaryStats(name, snapshot.get(), loadMillis, reloadCount, lastReloadMillis, lastReloadTime);
+	}
+
+	/**
+	 * 已初始化的全部词典集合的统计，按名称排序
+	 */
+	public static List<DictionaryStats> getAllStats() {
+		List<String> names = new ArrayList<String>(dictionarySets.keySet());
+		Collections.sort(names);
+		List<DictionaryStats> stats = new ArrayList<DictionaryStats>(names.size());
+		for (String name : names) {
+			stats.add(dictionarySets.get(name).getStats());
+		}
+		return stats;
+	}
 
 	/**
 	 * 批量加载新词条
@@ -332,38 +559,127 @@ public class Dictionary { // NOTE:htt, 词典管理，加载主词库，ext词
 	 * @param words
 	 *            Collection<String>词条列表
 	 */
-	public void addWords(Collection<String> words) { // NOTE:htt, 添加词典
+	public synchronized void addWords(Collection<String> words) { // NOTE:htt, 添加词典
 		if (words != null) {
+			long start = System.nanoTime();
+			List<String> runtimeWords = new ArrayList<String>();
 			for (String word : words) {
 				if (word != null) {
-					// 批量加载词条到主内存词典中
-					singleton.mainDict.fillSegment(word.trim().toCharArray());
+					// 批量加载词条到运行时层
+					runtimeWords.add(word.trim());
 				}
 			}
+			mainLayers.setRuntimeState(runtimeWords, 1);
+			publish(mainLayers.getTrie(), null, null);
+			reloaded(start);
 		}
 	}
 
 	/**
 	 * 批量移除（屏蔽）词条
 	 */
-	public void disableWords(Collection<String> words) { // NOTE:htt, 批量取消词典
+	public synchronized void disableWords(Collection<String> words) { // NOTE:htt, 批量取消词典
 		if (words != null) {
+			long start = System.nanoTime();
+			List<String> runtimeWords = new ArrayList<String>();
 			for (String word : words) {
 				if (word != null) {
-					// 批量屏蔽词条
-					singleton.mainDict.disableSegment(word.trim().toCharArray()); // NOTE:htt, 批量取消词典
+					// 批量屏蔽词条，覆盖下层中的同一个词
+					runtimeWords.add(word.trim()); // NOTE:htt, 批量取消词典
 				}
 			}
+			mainLayers.setRuntimeState(runtimeWords, 2);
+			publish(mainLayers.getTrie(), null, null);
+			reloaded(start);
 		}
 	}
 
+	/**
+	 * 获取当前词典快照
+	 * 分词器在处理一篇文档前取得快照，之后的查询都在该快照上进行，不受重新加载的影响
+	 *
+	 * @return DictionarySnapshot
+	 */
+	public DictionarySnapshot getSnapshot() {
+		return snapshot.get();
+	}
+
+	/**
+	 * 以新的词典生成快照并整体替换，参数为null则沿用当前快照中的词典
+	 */
+	private synchronized void publish(OverlayTrie mainDict, OverlayTrie quantifierDict, OverlayTrie stopWords) {
+		DictionarySnapshot current = snapshot.get();
+		snapshot.set(new DictionarySnapshot(current.getVersion() + 1,
+				mainDict != null ? mainDict : current.getMainDict(),
+				quantifierDict != null ? quantifierDict : current.getQuantifierDict(),
+				stopWords != null ? stopWords : current.getStopWords(),
+				stopWords != null ? StopWordSet.of(stopWords.words()) : current.getStopWordSet()));
+	}
+
+	/**
+	 * 以来源的新内容替换其在所在层中原有的词条，只有该层变化的词条重新计算
+	 *
+	 * @param layer LayeredDictionary.EXT 或 LayeredDictionary.REMOTE
+	 * @param source 本地文件路径或远程地址
+	 * @param words 来源当前的全部词条
+	 * @param stopWords 是否为停用词来源
+	 */
+	private synchronized void updateSource(int layer, String source, Set<String> words, boolean stopWords) {
+		long start = System.nanoTime();
+		if (stopWords) {
+			if (stopWordLayers.updateSource(layer, source, words)) {
+				publish(null, null, stopWordLayers.getTrie());
+				reloaded(start);
+			}
+		} else if (mainLayers.updateSource(layer, source, words)) {
+			publish(mainLayers.getTrie(), null, null);
+			reloaded(start);
+		}
+	}
+
+	/**
+	 * 记录一次重新加载
+	 */
+	private synchronized void reloaded(long start) {
+		lastReloadMillis = (System.nanoTime() - start) / 1000000;
+		lastReloadTime = System.currentTimeMillis();
+		reloadCount++;
+	}
+
+	/**
+	 * 词典占用的堆内存字节数
+	 */
+	public long ramBytesUsed() {
+		return snapshot.get().ramBytesUsed();
+	}
+
+	/**
+	 * 词典占用的堆外内存字节数，包括直接内存及映射的预编译文件
+	 */
+	public long offHeapBytesUsed() {
+		return snapshot.get().offHeapBytesUsed();
+	}
+
+	/**
+	 * 词典占用的堆外内存中映射自预编译文件的部分，同一主机上的进程共享页缓存
+	 */
+	public long mappedBytesUsed() {
+		return snapshot.get().mappedBytesUsed();
+	}
+
+	private void logMemoryUsage() {
+		DictionarySnapshot current = snapshot.get();
+		logger.info("[Dict Memory] [{}] version {}: {} bytes heap, {} bytes off-heap, {} bytes mapped", name,
+				current.getVersion(), current.ramBytesUsed(), current.offHeapBytesUsed(), current.mappedBytesUsed());
+	}
+
 	/**
 	 * 检索匹配主词典
 	 * 
 	 * @return Hit 匹配结果描述
 	 */
 	public Hit matchInMainDict(char[] charArray) { // NOTE:htt, 判断是否在主词典中
-		return singleton.mainDict.match(charArray);
+		return snapshot.get().matchInMainDict(charArray);
 	}
 
 	/**
@@ -372,7 +688,16 @@ public class Dictionary { // NOTE:htt, 词典管理，加载主词库，ext词
 	 * @return Hit 匹配结果描述
 	 */
 	public Hit matchInMainDict(char[] charArray, int begin, int length) { // NOTE:htt, 判断是否在主词典中
-		return singleton.mainDict.match(charArray, begin, length);
+		return snapshot.get().matchInMainDict(charArray, begin, length);
+	}
+
+	/**
+	 * 检索匹配主词典，结果写入传入的Hit
+	 * 
+	 * @return hit
+	 */
+	public Hit matchInMainDict(char[] charArray, int begin, int length, Hit hit) {
+		return snapshot.get().matchInMainDict(charArray, begin, length, hit);
 	}
 
 	/**
@@ -381,7 +706,16 @@ public class Dictionary { // NOTE:htt, 词典管理，加载主词库，ext词
 	 * @return Hit 匹配结果描述
 	 */
 	public Hit matchInQuantifierDict(char[] charArray, int begin, int length) { // NOTE:htt, 判断是否为两次
-		return singleton.quantifierDict.match(charArray, begin, length);
+		return snapshot.get().matchInQuantifierDict(charArray, begin, length);
+	}
+
+	/**
+	 * 检索匹配量词词典，结果写入传入的Hit
+	 * 
+	 * @return hit
+	 */
+	public Hit matchInQuantifierDict(char[] charArray, int begin, int length, Hit hit) {
+		return snapshot.get().matchInQuantifierDict(charArray, begin, length, hit);
 	}
 
 	/**
@@ -390,8 +724,7 @@ public class Dictionary { // NOTE:htt, 词典管理，加载主词库，ext词
 	 * @return Hit
 	 */
 	public Hit matchWithHit(char[] charArray, int currentIndex, Hit matchedHit) { // NOTE:htt, 从当前已匹配的位置继续判断是否匹配
-		DictSegment ds = matchedHit.getMatchedDictSegment(); // TODO:htt, 判断ds是否为null
-		return ds.match(charArray, currentIndex, 1, matchedHit); // NOTE:htt, 从当前已匹配的位置继续判断是否匹配
+		return snapshot.get().matchWithHit(charArray, currentIndex, matchedHit); // NOTE:htt, 从当前已匹配的位置继续判断是否匹配
 	}
 
 	/**
@@ -400,173 +733,99 @@ public class Dictionary { // NOTE:htt, 词典管理，加载主词库，ext词
 	 * @return boolean
 	 */
 	public boolean isStopWord(char[] charArray, int begin, int length) { // NOTE:htt, 判断是否为停用词
-		return singleton.stopWords.match(charArray, begin, length).isMatch();
+		return snapshot.get().isStopWord(charArray, begin, length);
 	}
 
 	/**
-	 * 加载主词典及扩展词典
+	 * 加载基础词典，所有词典集合共享：main.dic、quantifier.dic、stopword.dic 映射预编译的双数组，其余词典并行加载
+	 * main_dict_format 为 fst 时主词典编译为FST；只在默认集合的实例上调用，以IKAnalyzer.cfg.xml的配置为准
 	 */
-	private void loadMainDict() { // NOTE:htt, 从main.dic、用户扩展词库以及 远程词库中加载 分词
-		// 建立一个主词典实例
-		mainDict = new DictSegment((char) 0); // NOTE:htt, main dictionary的根节点
-
-		// 读取主词典文件
-		Path file = PathUtils.get(getDictRoot(), Dictionary.PATH_DIC_MAIN); // NOTE:htt, 加载 ${real_ik_conf}/main.dic 主词典
-		loadDictFile(mainDict, file, false, "Main Dict"); // NOTE:htt, 从main.dic文件加载内容构建词典
-		// 加载扩展词典
-		this.loadExtDict(); // NOTE:htt, 加载用户配置的扩展词库
-		// 加载远程自定义词库
-		this.loadRemoteExtDict(); // NOTE:htt, 从远程连接加载内容构建词典
+	private void loadBaseDicts() {
+		// 读取主词典文件，优先使用预编译的双数组
+		Path mainFile = PathUtils.get(getDictRoot(), Dictionary.PATH_DIC_MAIN); // NOTE:htt, 加载 ${real_ik_conf}/main.dic 主词典
+		boolean fst = isFstMainDict();
+		ForkJoinTask<BaseTrie> mainDict = DictionaryCompiler.fork(() -> loadCompiledDictFile(mainFile, "Main Dict", fst));
+		ForkJoinTask<?> surnameDict = DictionaryCompiler.fork(this::loadSurnameDict); // NOTE:htt, 加载姓氏，但是加载后没有使用 TODO:
+		ForkJoinTask<OverlayTrie> quantifier = DictionaryCompiler.fork(this::loadQuantifierDict); // NOTE:htt, 加载量词词典
+		ForkJoinTask<?> suffixDict = DictionaryCompiler.fork(this::loadSuffixDict);
+		ForkJoinTask<?> prepDict = DictionaryCompiler.fork(this::loadPrepDict);
+		Path stopFile = PathUtils.get(getDictRoot(), Dictionary.PATH_DIC_STOP);
+		ForkJoinTask<BaseTrie> stopWords = DictionaryCompiler.fork(() -> loadCompiledDictFile(stopFile, "Main Stopwords", false)); // NOTE:htt, 加载停用词
+		surnameDict.join();
+		suffixDict.join();
+		prepDict.join();
+		mainBase = mainDict.join();
+		quantifierDict = quantifier.join();
+		stopWordBase = stopWords.join();
 	}
 
 	/**
-	 * 加载用户配置的扩展词典到主词库表
+	 * 并行读取本地扩展词典文件及远程扩展词典
+	 * @param cached 不为null时远程词典优先使用本地缓存，使用了缓存的地址及其缓存记录在其中
+	 * @return 来源 -> 词条，按配置顺序排列；读取失败的来源不在其中
 	 */
-	private void loadExtDict() { // NOTE:htt, 加载用户配置的扩展词库
-		// 加载扩展词典配置
-		List<String> extDictFiles = getExtDictionarys(); // NOTE:htt, 从 IKAnalyzer.cfg.xml 文件中获取 ext 文件列表
-		if (extDictFiles != null) {
-			for (String extDictName : extDictFiles) {
-				// 读取扩展词典文件
-				logger.info("[Dict Loading] " + extDictName);
-				Path file = PathUtils.get(extDictName);
-				loadDictFile(mainDict, file, false, "Extra Dict");  // NOTE:htt, 从ext文件加载内容构建词典
-			}
+	private Map<String, Set<String>> loadSources(List<String> files, List<String> locations, String name,
+			Map<String, RemoteDictionaryCache.Entry> cached) {
+		Map<String, Future<Set<String>>> tasks = new LinkedHashMap<String, Future<Set<String>>>();
+		for (String file : files) {
+			// 读取扩展词典文件
+			logger.info("[Dict Loading] " + file);
+			tasks.put(file, DictionaryCompiler.fork(() -> readDictFile(PathUtils.get(file), name))); // NOTE:htt, 从ext文件加载内容构建词典
 		}
-	}
-
-	/**
-	 * 加载远程扩展词典到主词库表
-	 */
-	private void loadRemoteExtDict() { // NOTE:htt, 从远程连接加载内容构建词典
-		List<String> remoteExtDictFiles = getRemoteExtDictionarys(); // NOTE:htt, 从 IKAnalyzer.cfg.xml 文件中获取 remote ext 地址列表
-		for (String location : remoteExtDictFiles) {
-			logger.info("[Dict Loading] " + location);
-			List<String> lists = getRemoteWords(location); // NOTE:htt, 从远程获取分词列表
-			// 如果找不到扩展的字典，则忽略
-			if (lists == null) {
-				logger.error("[Dict Loading] " + location + "加载失败");
+		for (String location : locations) {
+			RemoteDictionaryCache.Entry entry = cached == null ? null : RemoteDictionary.cached(location);
+			if (entry != null) {
+				logger.info("[Dict Loading] {} from cache, {} words", location, entry.words.size());
+				cached.put(location, entry);
+				tasks.put(location, CompletableFuture.completedFuture(entry.words));
 				continue;
 			}
-			for (String theWord : lists) {
-				if (theWord != null && !"".equals(theWord.trim())) {
-					// 加载扩展词典数据到主内存词典中
-					logger.info(theWord);
-					mainDict.fillSegment(theWord.trim().toLowerCase().toCharArray()); // NOTE:htt, 从远程连接加载内容构建词典
-				}
-			}
+			logger.info("[Dict Loading] " + location);
+			tasks.put(location, RemoteDictionary.fetch(location)); // NOTE:htt, 从远程获取分词列表，各地址并发下载
 		}
 
-	}
-
-	private static List<String> getRemoteWords(String location) { // NOTE:htt, 从远程获取分词列表
-		SpecialPermission.check();
-		return AccessController.doPrivileged((PrivilegedAction<List<String>>) () -> {
-			return getRemoteWordsUnprivileged(location);
-		});
-	}
-
-	/**
-	 * 从远程服务器上下载自定义词条
-	 */
-	private static List<String> getRemoteWordsUnprivileged(String location) { // NOTE:htt, 从远程获取分词列表
-
-		List<String> buffer = new ArrayList<String>();
-		RequestConfig rc = RequestConfig.custom().setConnectionRequestTimeout(10 * 1000).setConnectTimeout(10 * 1000)
-				.setSocketTimeout(60 * 1000).build();
-		CloseableHttpClient httpclient = HttpClients.createDefault();
-		CloseableHttpResponse response;
-		BufferedReader in;
-		HttpGet get = new HttpGet(location);
-		get.setConfig(rc);
-		try {
-			response = httpclient.execute(get);
-			if (response.getStatusLine().getStatusCode() == 200) {
-
-				String charset = "UTF-8";
-				// 获取编码，默认为utf-8
-				HttpEntity entity = response.getEntity();
-				if(entity!=null){
-					Header contentType = entity.getContentType();
-					if(contentType!=null&&contentType.getValue()!=null){
-						String typeValue = contentType.getValue();
-						if(typeValue!=null&&typeValue.contains("charset=")){
-							charset = typeValue.substring(typeValue.lastIndexOf("=") + 1);
-						}
-					}
-
-					if (entity.getContentLength() > 0) {
-						in = new BufferedReader(new InputStreamReader(entity.getContent(), charset)); // NOTE:htt, 读取http获取内容
-						String line;
-						while ((line = in.readLine()) != null) {
-							buffer.add(line);
-						}
-						in.close();
-						response.close();
-						return buffer;
-					}
-				}
+		Map<String, Set<String>> sources = new LinkedHashMap<String, Set<String>>();
+		for (Map.Entry<String, Future<Set<String>>> task : tasks.entrySet()) {
+			Set<String> words;
+			try {
+				words = task.getValue().get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				words = null;
+			} catch (ExecutionException e) {
+				logger.error("[Dict Loading] " + task.getKey(), e.getCause());
+				words = null;
+			}
+			// 如果找不到扩展的字典，则忽略
+			if (words != null) {
+				sources.put(task.getKey(), words);
+			} else {
+				logger.error("[Dict Loading] " + task.getKey() + "加载失败");
 			}
-			response.close();
-		} catch (IllegalStateException | IOException e) {
-			logger.error("getRemoteWords {} error", e, location);
 		}
-		return buffer;
+		return sources;
 	}
 
 	/**
-	 * 加载用户扩展的停止词词典
+	 * 以基础词典及各来源的词条生成分层词典，远程地址放在远程层，其余放在本地扩展层
 	 */
-	private void loadStopWordDict() { // NOTE:htt, 加载停用词
-		// 建立主词典实例
-		stopWords = new DictSegment((char) 0);
-
-		// 读取主词典文件
-		Path file = PathUtils.get(getDictRoot(), Dictionary.PATH_DIC_STOP);
-		loadDictFile(stopWords, file, false, "Main Stopwords"); // NOTE:htt, 加载停用词
-
-		// 加载扩展停止词典
-		List<String> extStopWordDictFiles = getExtStopWordDictionarys(); // NOTE:htt, 获取拓展停用词 文件列表
-		if (extStopWordDictFiles != null) {
-			for (String extStopWordDictName : extStopWordDictFiles) {
-				logger.info("[Dict Loading] " + extStopWordDictName);
-
-				// 读取扩展词典文件
-				file = PathUtils.get(extStopWordDictName);
-				loadDictFile(stopWords, file, false, "Extra Stopwords"); // NOTE:htt, 加载拓展停用词
-			}
-		}
-
-		// 加载远程停用词典
-		List<String> remoteExtStopWordDictFiles = getRemoteExtStopWordDictionarys();
-		for (String location : remoteExtStopWordDictFiles) {
-			logger.info("[Dict Loading] " + location);
-			List<String> lists = getRemoteWords(location);
-			// 如果找不到扩展的字典，则忽略
-			if (lists == null) {
-				logger.error("[Dict Loading] " + location + "加载失败");
-				continue;
-			}
-			for (String theWord : lists) {
-				if (theWord != null && !"".equals(theWord.trim())) {
-					// 加载远程词典数据到主内存中
-					logger.info(theWord);
-					stopWords.fillSegment(theWord.trim().toLowerCase().toCharArray());
-				}
-			}
+	private LayeredDictionary layered(String dictName, BaseTrie base, Map<String, Set<String>> sources,
+			List<String> locations) {
+		LayeredDictionary dict = new LayeredDictionary(name + "/" + dictName, base);
+		for (Map.Entry<String, Set<String>> source : sources.entrySet()) {
+			int layer = locations.contains(source.getKey()) ? LayeredDictionary.REMOTE : LayeredDictionary.EXT;
+			dict.putSource(layer, source.getKey(), source.getValue());
 		}
-
+		return dict;
 	}
 
 	/**
 	 * 加载量词词典
 	 */
-	private void loadQuantifierDict() { // NOTE:htt, 加载量词词典
-		// 建立一个量词典实例
-		quantifierDict = new DictSegment((char) 0);
+	private OverlayTrie loadQuantifierDict() { // NOTE:htt, 加载量词词典
 		// 读取量词词典文件
 		Path file = PathUtils.get(getDictRoot(), Dictionary.PATH_DIC_QUANTIFIER);
-		loadDictFile(quantifierDict, file, false, "Quantifier"); // NOTE:htt, 加载量词 词典
+		return new OverlayTrie(loadCompiledDictFile(file, "Quantifier", false), null); // NOTE:htt, 加载量词 词典
 	}
 
 	private void loadSurnameDict() { // NOTE:htt, 加载姓氏，但是加载后没有使用 TODO:
@@ -587,36 +846,168 @@ public class Dictionary { // NOTE:htt, 词典管理，加载主词库，ext词
 		loadDictFile(_PrepDict, file, true, "Preposition"); // NOTE:htt, 从文件加载 前缀 构建词典
 	}
 
-	void reLoadMainDict() { // NOTE:htt, 重新加载主词库、用户扩展词库、 远程词库 和 停用词
+	void reLoadMainDict() { // NOTE:htt, 重新加载用户扩展词库、 远程词库 和 扩展停用词
 		logger.info("重新加载词典...");
-		// 新开一个实例加载词典，减少加载过程对当前词典使用的影响
-		Dictionary tmpDict = new Dictionary(configuration);
-		tmpDict.configuration = getSingleton().configuration;
-		tmpDict.loadMainDict(); // NOTE:htt, 从main.dic、用户扩展词库以及 远程词库中加载 分词
-		tmpDict.loadStopWordDict(); // NOTE:htt, 加载停用词
-		mainDict = tmpDict.mainDict; // NOTE:htt, 更换主词库
-		stopWords = tmpDict.stopWords; // NOTE:htt, 更换停用词
-		logger.info("重新加载词典完毕...");
+		long start = System.nanoTime();
+		// 基础词典在进程内只加载一次，这里只重新加载本地扩展层及远程层，运行时层保留
+		ForkJoinTask<Map<String, Set<String>>> stopWordSources = DictionaryCompiler.fork(() -> loadSources(
+				getExtStopWordDictionarys(), getRemoteExtStopWordDictionarys(), "Extra Stopwords", null)); // NOTE:htt, 加载停用词
+		Map<String, Set<String>> mainSources = loadSources(getExtDictionarys(), getRemoteExtDictionarys(), "Extra Dict", null); // NOTE:htt, 从用户扩展词库以及 远程词库中加载 分词
+		synchronized (this) {
+			LayeredDictionary mainDict = layered("Main Dict", mainLayers.getBase(), mainSources, getRemoteExtDictionarys());
+			mainDict.copyLayer(LayeredDictionary.RUNTIME, mainLayers);
+			LayeredDictionary stopWords = layered("Stopwords", stopWordLayers.getBase(), stopWordSources.join(),
+					getRemoteExtStopWordDictionarys());
+			mainLayers = mainDict;
+			stopWordLayers = stopWords;
+			// 主词库与停用词在同一快照中一次替换，分词时不会混用新旧词典
+			publish(mainDict.build(), null, stopWords.build()); // NOTE:htt, 更换主词库和停用词
+			reloaded(start);
+		}
+		logMemoryUsage();
+		logger.info("重新加载词典完毕，耗时 {} ms", lastReloadMillis);
 	}
 
+	/**
+	 * 增量重新加载本地扩展词典及扩展停用词词典，只更新本地扩展层中各文件新增及删除的词条
+	 */
+	void reloadExtDict() {
+		reloadLocalSources(getExtDictionarys(), false, "Extra Dict");
+		reloadLocalSources(getExtStopWordDictionarys(), true, "Extra Stopwords");
+		logMemoryUsage();
+	}
 
-	public void checkExtDict() { // NOTE:htt, 检查本地 ext-dict 目录时间以及IKAnalyzer.cfg.xml内容是否有变化，如果有变化则重新加载词库
-		try {
-			Path extDictPath = confDir.resolve(EXT_DICT_FOLDER);
-			if (!Files.exists(extDictPath, LinkOption.NOFOLLOW_LINKS)) {
+	/**
+	 * 重新加载一个本地扩展词典文件，只更新本地扩展层中该文件新增及删除的词条
+	 * @param mainDict 该文件是否仍配置为扩展词典，否则从主词典中移除其词条
+	 * @param stopWords 该文件是否仍配置为扩展停用词词典，否则从停用词中移除其词条
+	 */
+	void reloadLocalSource(String file, boolean mainDict, boolean stopWords) {
+		Set<String> words = Collections.<String>emptySet();
+		if (mainDict || stopWords) {
+			words = readDictFile(PathUtils.get(file), file);
+			// 读取失败时保留原有词条
+			if (words == null) {
 				return;
 			}
+		}
+		updateSource(LayeredDictionary.EXT, file, mainDict ? words : Collections.<String>emptySet(), false);
+		updateSource(LayeredDictionary.EXT, file, stopWords ? words : Collections.<String>emptySet(), true);
+	}
 
-			FileTime extDictCurTime = Files.getLastModifiedTime(extDictPath, LinkOption.NOFOLLOW_LINKS);
-			if (!extDictCurTime.equals(extDictLastModifiedTime)) {
-				extDictLastModifiedTime = extDictCurTime;
-				extDictConfigLastModifiedTime = Files.getLastModifiedTime(confDir.resolve(FILE_NAME), LinkOption.NOFOLLOW_LINKS);
-				logger.info("dict file changed, reload.");
-				this.reLoadMainDict();
-				return;
+	private void reloadLocalSources(List<String> files, boolean stopWords, String name) {
+		// 读取失败的文件不在结果中，保留其原有词条
+		for (Map.Entry<String, Set<String>> source : loadSources(files, Collections.<String>emptyList(), name, null).entrySet()) {
+			updateSource(LayeredDictionary.EXT, source.getKey(), source.getValue(), stopWords);
+		}
+		// 已删除的文件，移除其全部词条
+		Set<String> removed;
+		synchronized (this) {
+			removed = new HashSet<String>((stopWords ? stopWordLayers : mainLayers).getSources(LayeredDictionary.EXT));
+		}
+		removed.removeAll(files);
+		for (String source : removed) {
+			updateSource(LayeredDictionary.EXT, source, Collections.<String>emptySet(), stopWords);
+		}
+	}
+
+	/**
+	 * 增量重新加载远程扩展词典或远程扩展停用词词典，只更新远程层中该地址新增及删除的词条
+	 * @return 是否下载成功，失败时保留原有词条
+	 */
+	boolean reloadRemoteDict(String location) {
+		boolean mainDict = getRemoteExtDictionarys().contains(location);
+		boolean stopWords = getRemoteExtStopWordDictionarys().contains(location);
+		if (!mainDict && !stopWords) {
+			return true;
+		}
+		Set<String> words = RemoteDictionary.load(location);
+		// 获取失败时保留原有词条
+		if (words == null) {
+			logger.error("[Dict Reloading] " + location + "加载失败");
+			return false;
+		}
+		updateRemoteSource(location, words, mainDict, stopWords);
+		return true;
+	}
+
+	/**
+	 * 按IKAnalyzer.cfg.xml中的检查方式创建远程地址的监控，各项可以用 "项.地址" 为单个地址单独设置
+	 */
+	private Monitor newMonitor(String location) {
+		long interval = Math.max(1, getRemoteCheckProperty(REMOTE_CHECK_INTERVAL, location, 60)) * 1000L;
+		long jitter = getRemoteCheckProperty(REMOTE_CHECK_JITTER, location, 0) * 1000L;
+		long longPollTimeout = 0;
+		String mode = getProperty(REMOTE_CHECK_MODE + "." + location);
+		if (mode == null) {
+			mode = getProperty(REMOTE_CHECK_MODE);
+		}
+		if ("long_poll".equals(mode)) {
+			longPollTimeout = getRemoteCheckProperty(REMOTE_LONG_POLL_TIMEOUT, location, 60) * 1000L;
+		} else if (mode != null && !"poll".equals(mode)) {
+			logger.warn("[Dict Loading] unknown {} [{}] for {}, using poll", REMOTE_CHECK_MODE, mode, location);
+		}
+		return new Monitor(this, location, interval, jitter, longPollTimeout);
+	}
+
+	private int getRemoteCheckProperty(String key, String location, int defaultValue) {
+		String value = getProperty(key + "." + location);
+		if (value == null) {
+			value = getProperty(key);
+		}
+		if (value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		try {
+			int seconds = Integer.parseInt(value.trim());
+			if (seconds >= 0) {
+				return seconds;
 			}
+		} catch (NumberFormatException e) {
+			// 按默认值处理
+		}
+		logger.warn("[Dict Loading] invalid {} [{}] for {}, using {}", key, value, location, defaultValue);
+		return defaultValue;
+	}
+
+	/**
+	 * 在后台以条件请求重新验证启动时使用了本地缓存的远程词典，远程已变化时增量更新
+	 */
+	private void revalidateRemoteDicts(Map<String, RemoteDictionaryCache.Entry> cached) {
+		for (Map.Entry<String, RemoteDictionaryCache.Entry> entry : cached.entrySet()) {
+			String location = entry.getKey();
+			RemoteDictionary.submit(() -> {
+				Set<String> words = RemoteDictionary.revalidate(location, entry.getValue());
+				if (words != null) {
+					updateRemoteSource(location, words, getRemoteExtDictionarys().contains(location),
+							getRemoteExtStopWordDictionarys().contains(location));
+				}
+				return null;
+			});
+		}
+	}
+
+	private void updateRemoteSource(String location, Set<String> words, boolean mainDict, boolean stopWords) {
+		if (mainDict) {
+			updateSource(LayeredDictionary.REMOTE, location, words, false);
+		}
+		if (stopWords) {
+			updateSource(LayeredDictionary.REMOTE, location, words, true);
+		}
+	}
+
 
-			FileTime extDictConfigCurTime = Files.getLastModifiedTime(confDir.resolve(FILE_NAME), LinkOption.NOFOLLOW_LINKS);
+	public void checkExtDict() { // NOTE:htt, 检查IKAnalyzer.cfg.xml及各本地扩展词典文件内容是否有变化，如果有变化则重新加载词库
+		watcher.check(null);
+	}
+
+	/**
+	 * 检查IKAnalyzer.cfg.xml中的词典列表是否变化，变化时整体重新加载
+	 * @return 是否重新加载
+	 */
+	boolean checkConfig() {
+		try {
+			FileTime extDictConfigCurTime = Files.getLastModifiedTime(confDir.resolve(configFileName), LinkOption.NOFOLLOW_LINKS);
 			if (!extDictConfigCurTime.equals(extDictConfigLastModifiedTime)) {
 				extDictConfigLastModifiedTime = extDictConfigCurTime;
 				Properties props = this.loadProperties();
@@ -629,12 +1020,12 @@ public class Dictionary { // NOTE:htt, 词典管理，加载主词库，ext词
 					this.props = props;
 					logger.info("dict conf changed, reload. curDict[{}], newDict[{}]", curDict, newDict);
 					this.reLoadMainDict();
-					return;
+					return true;
 				}
 			}
-
-		} catch (Exception e) {
-			logger.error("check ext dict error", e);
+		} catch (IOException e) {
+			logger.error("check ext dict config error", e);
 		}
+		return false;
 	}
 }
@@ -0,0 +1,508 @@
+/**
+ * IK 中文分词  版本 5.0
+ * IK Analyzer release 5.0
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.wltea.analyzer.dic;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.store.InputStreamDataInput;
+import org.apache.lucene.store.OutputStreamDataOutput;
+import org.wltea.analyzer.help.ESPluginLoggerFactory;
+
+/**
+ * 词典预编译
+ *
+ * 将.dic文本词典编译为双数组，写入.dic.dat二进制文件；加载时以FileChannel.map映射后直接使用，
+ * 文件头记录格式版本及源文件的长度和CRC32，与源文件一致时直接使用，不一致时重新编译。
+ * 主词典也可以编译为Lucene FST，写入.dic.fst，文件头相同，加载时读入堆内。
+ * 打包时预先生成的文件与.dic位于同一目录；运行时重新编译的文件写入ES数据目录下的缓存目录，配置目录只读即可
+ * 词典每行可在词后以制表符附带词频，词频编码随词一同编译
+ *
+ * 命令行：DictionaryCompiler [-o 输出目录] [--fst] main.dic quantifier.dic ...
+ */
+public final class DictionaryCompiler {
+
+	//文件魔数 "IKDT"
+	static final int MAGIC = 0x494B4454;
+	//格式版本，双数组布局变化时递增，旧版本文件会被重新编译
+	static final int FORMAT_VERSION = 3;
+	//预编译文件后缀
+	static final String SUFFIX = ".dat";
+
+	//FST预编译文件的魔数 "IKFS"、格式版本及后缀
+	static final int FST_MAGIC = 0x494B4653;
+	static final int FST_FORMAT_VERSION = 2;
+	static final String FST_SUFFIX = ".fst";
+
+	//文件头：魔数、版本、源文件长度、源文件CRC32；双数组紧随其后，起始位置8字节对齐；均为小端
+	private static final int HEADER_SIZE = 24;
+
+	private static final Logger logger = ESPluginLoggerFactory.getLogger(DictionaryCompiler.class.getName());
+
+	//运行时编译的预编译文件的写入目录，为null时只在内存中编译，不写回
+	private static volatile Path cacheDir;
+
+	//词典构建线程池，启动及重新加载时并行解析、构建词典；空闲的工作线程会自动退出，不常驻，节点关闭时由close释放
+	private static final AtomicInteger threadCount = new AtomicInteger();
+	private static ForkJoinPool buildPool;
+
+	private DictionaryCompiler() {
+	}
+
+	/**
+	 * 设置运行时编译的预编译文件的写入目录，为null时不写回
+	 */
+	static void setCacheDir(Path dir) {
+		cacheDir = dir;
+	}
+
+	/**
+	 * 词典文件对应的预编译文件，如 main.dic -> main.dic.dat
+	 */
+	static Path compiledFile(Path dictFile) {
+		return dictFile.resolveSibling(dictFile.getFileName().toString() + SUFFIX);
+	}
+
+	/**
+	 * 预编译文件在缓存目录中的位置，未设置缓存目录时返回null
+	 */
+	static Path cachedFile(Path compiled) {
+		Path dir = cacheDir;
+		return dir == null ? null : dir.resolve(compiled.getFileName().toString());
+	}
+
+	/**
+	 * 加载词典文件，依次使用同目录下打包的预编译文件、缓存目录中的预编译文件；
+	 * 均缺失或已过期时解析文本编译，并尝试写入缓存目录
+	 * @param dictFile .dic文本词典
+	 * @return DoubleArrayTrie
+	 * @throws IOException 词典文件不存在或读取失败
+	 */
+	static DoubleArrayTrie load(Path dictFile) throws IOException {
+		long start = System.nanoTime();
+		long[] signature = signature(dictFile);
+		Path compiled = compiledFile(dictFile);
+		Path cached = cachedFile(compiled);
+		DoubleArrayTrie trie = read(compiled, signature);
+		if (trie == null && cached != null) {
+			trie = read(cached, signature);
+			compiled = cached;
+		}
+		if (trie != null) {
+			logger.info("[Dict Loading] {} mapped from {}: {} nodes, {} ms", dictFile, compiled, trie.getNodeCount(),
+					(System.nanoTime() - start) / 1000000);
+			return trie;
+		}
+
+		trie = compile(dictFile);
+		if (cached == null) {
+			logger.info("[Dict Compiling] {}: {} nodes, {} ms, no cache directory to write to", dictFile,
+					trie.getNodeCount(), (System.nanoTime() - start) / 1000000);
+			return trie;
+		}
+		try {
+			write(trie, signature, cached);
+			// 改用映射的文件，与其它进程共享页缓存，编译时分配的直接内存随后即可回收
+			DoubleArrayTrie mapped = read(cached, signature);
+			if (mapped != null) {
+				trie = mapped;
+			}
+			logger.info("[Dict Compiling] {} -> {}: {} nodes, {} ms", dictFile, cached, trie.getNodeCount(),
+					(System.nanoTime() - start) / 1000000);
+		} catch (IOException | SecurityException e) {
+			// 缓存目录不可写时仍可正常使用，只是每次启动都需要重新编译
+			logger.warn("[Dict Compiling] unable to write {}: {}", cached, e.toString());
+		}
+		return trie;
+	}
+
+	/**
+	 * 加载词典文件为FST，预编译文件(.dic.fst)的查找及写回方式同load
+	 * @param dictFile .dic文本词典
+	 * @return FstTrie
+	 * @throws IOException 词典文件不存在或读取失败
+	 */
+	static FstTrie loadFst(Path dictFile) throws IOException {
+		long start = System.nanoTime();
+		long[] signature = signature(dictFile);
+		Path compiled = fstFile(dictFile);
+		Path cached = cachedFile(compiled);
+		FstTrie trie = readFst(compiled, signature);
+		if (trie == null && cached != null) {
+			trie = readFst(cached, signature);
+			compiled = cached;
+		}
+		if (trie != null) {
+			logger.info("[Dict Loading] {} loaded from {}: {} words, {} bytes, {} ms", dictFile, compiled,
+					trie.getWordCount(), trie.ramBytesUsed(), (System.nanoTime() - start) / 1000000);
+			return trie;
+		}
+
+		trie = compileFst(dictFile);
+		if (cached == null) {
+			logger.info("[Dict Compiling] {}: {} words, {} bytes, {} ms, no cache directory to write to", dictFile,
+					trie.getWordCount(), trie.ramBytesUsed(), (System.nanoTime() - start) / 1000000);
+			return trie;
+		}
+		try {
+			writeFst(trie, signature, cached);
+			logger.info("[Dict Compiling] {} -> {}: {} words, {} bytes, {} ms", dictFile, cached, trie.getWordCount(),
+					trie.ramBytesUsed(), (System.nanoTime() - start) / 1000000);
+		} catch (IOException | SecurityException e) {
+			logger.warn("[Dict Compiling] unable to write {}: {}", cached, e.toString());
+		}
+		return trie;
+	}
+
+	/**
+	 * 词典文件对应的FST预编译文件，如 main.dic -> main.dic.fst
+	 */
+	static Path fstFile(Path dictFile) {
+		return dictFile.resolveSibling(dictFile.getFileName().toString() + FST_SUFFIX);
+	}
+
+	/**
+	 * 读取FST预编译文件
+	 * @return 文件不存在、版本不符或源文件已变化时返回null
+	 */
+	static FstTrie readFst(Path compiled, long[] signature) {
+		if (!Files.isRegularFile(compiled)) {
+			return null;
+		}
+		try (InputStream is = new BufferedInputStream(Files.newInputStream(compiled))) {
+			InputStreamDataInput in = new InputStreamDataInput(is);
+			if (in.readInt() != FST_MAGIC || in.readInt() != FST_FORMAT_VERSION) {
+				logger.info("[Dict Loading] {} has unsupported format, recompiling", compiled);
+				return null;
+			}
+			if (in.readLong() != signature[0] || in.readLong() != signature[1]) {
+				logger.info("[Dict Loading] {} is out of date, recompiling", compiled);
+				return null;
+			}
+			return FstTrie.readFrom(in);
+		} catch (IOException e) {
+			logger.warn("[Dict Loading] unable to read {}: {}", compiled, e.toString());
+			return null;
+		}
+	}
+
+	/**
+	 * 解析文本词典并编译为FST
+	 */
+	static FstTrie compileFst(Path dictFile) throws IOException {
+		List<String> words = new ArrayList<String>();
+		readWords(dictFile, words::add);
+		return FstTrie.compile(words);
+	}
+
+	/**
+	 * 读取预编译文件
+	 * @return 文件不存在、版本不符或源文件已变化时返回null
+	 */
+	static DoubleArrayTrie read(Path compiled, long[] signature) {
+		if (!Files.isRegularFile(compiled)) {
+			return null;
+		}
+		try (FileChannel channel = FileChannel.open(compiled, StandardOpenOption.READ)) {
+			// 映射在channel关闭后依然有效，由双数组持有直到被回收
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+				logger.info("[Dict Loading] {} has unsupported format, recompiling", compiled);
+				return null;
+			}
+			if (buffer.getLong() != signature[0] || buffer.getLong() != signature[1]) {
+				logger.info("[Dict Loading] {} is out of date, recompiling", compiled);
+				return null;
+			}
+			return DoubleArrayTrie.readFrom(buffer, true);
+		} catch (IOException e) {
+			logger.warn("[Dict Loading] unable to read {}: {}", compiled, e.toString());
+			return null;
+		}
+	}
+
+	/**
+	 * 写出预编译文件，先写临时文件再原子替换，其它进程不会读到写了一半的文件
+	 */
+	static void write(DoubleArrayTrie trie, long[] signature, Path compiled) throws IOException {
+		writeAtomically(compiled, tmp -> {
+			try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+				header.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(signature[0]).putLong(signature[1]);
+				header.flip();
+				while (header.hasRemaining()) {
+					channel.write(header);
+				}
+				trie.writeTo(channel);
+				channel.force(false);
+			}
+		});
+	}
+
+	/**
+	 * 写出FST预编译文件
+	 */
+	static void writeFst(FstTrie trie, long[] signature, Path compiled) throws IOException {
+		writeAtomically(compiled, tmp -> {
+			try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+				OutputStreamDataOutput out = new OutputStreamDataOutput(os);
+				out.writeInt(FST_MAGIC);
+				out.writeInt(FST_FORMAT_VERSION);
+				out.writeLong(signature[0]);
+				out.writeLong(signature[1]);
+				trie.writeTo(out);
+			}
+		});
+	}
+
+	private interface TempFileWriter {
+		void write(Path tmp) throws IOException;
+	}
+
+	/**
+	 * 在目标文件所在目录写临时文件，完成后原子替换目标文件
+	 */
+	private static void writeAtomically(Path compiled, TempFileWriter writer) throws IOException {
+		Path dir = compiled.toAbsolutePath().getParent();
+		if (!Files.isDirectory(dir)) { // 目录可能是符号链接，createDirectories对其会抛出FileAlreadyExistsException
+			Files.createDirectories(dir);
+		}
+		Path tmp = Files.createTempFile(dir, compiled.getFileName().toString(), ".tmp");
+		try {
+			try {
+				// 临时文件默认仅属主可读，与.dic文件一样对其它用户可读
+				Files.setPosixFilePermissions(tmp, PosixFilePermissions.fromString("rw-r--r--"));
+			} catch (UnsupportedOperationException e) {
+				// 非POSIX文件系统
+			}
+			writer.write(tmp);
+			try {
+				Files.move(tmp, compiled, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp, compiled, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	/**
+	 * 源文件签名：长度及CRC32
+	 * 插件安装时不保留文件修改时间，因此以内容而非时间判断是否过期
+	 */
+	static long[] signature(Path dictFile) throws IOException {
+		try (FileChannel channel = FileChannel.open(dictFile, StandardOpenOption.READ)) {
+			long size = channel.size();
+			CRC32 crc = new CRC32();
+			if (size > 0) {
+				crc.update(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+			}
+			return new long[] { size, crc.getValue() };
+		}
+	}
+
+	/**
+	 * 解析文本词典并编译为双数组
+	 */
+	static DoubleArrayTrie compile(Path dictFile) throws IOException {
+		List<String> words = new ArrayList<String>();
+		readWords(dictFile, words::add);
+		return DoubleArrayTrie.compile(build(words));
+	}
+
+	/**
+	 * 并行构建词典树
+	 *
+	 * 按首字符分组，各组在独立的子树上构建，互不竞争根节点的锁；全部完成后按字符顺序一次挂到根节点下
+	 * @param words 词条，可附带词频
+	 * @return 根节点
+	 */
+	static DictSegment build(Collection<String> words) {
+		Map<Character, List<String>> groups = new HashMap<Character, List<String>>();
+		for (String word : words) {
+			if (!word.isEmpty()) {
+				Character first = word.charAt(0);
+				List<String> group = groups.get(first);
+				if (group == null) {
+					group = new ArrayList<String>();
+					groups.put(first, group);
+				}
+				group.add(word);
+			}
+		}
+
+		List<ForkJoinTask<DictSegment>> tasks = new ArrayList<ForkJoinTask<DictSegment>>(groups.size());
+		for (List<String> group : groups.values()) {
+			tasks.add(ForkJoinTask.adapt(() -> {
+				// 临时根节点下只有该组首字符一个子节点
+				DictSegment root = new DictSegment((char) 0);
+				for (String word : group) {
+					root.fillSegment(WordFrequency.word(word).toCharArray(), WordFrequency.code(word));
+				}
+				return root.getChildren()[0];
+			}));
+		}
+		buildPool().invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+
+		DictSegment[] children = new DictSegment[tasks.size()];
+		for (int i = 0; i < children.length; i++) {
+			children[i] = tasks.get(i).join();
+		}
+		Arrays.sort(children);
+		DictSegment root = new DictSegment((char) 0);
+		root.setChildren(children);
+		return root;
+	}
+
+	/**
+	 * 在词典构建线程池中执行
+	 */
+	static <T> ForkJoinTask<T> fork(Callable<T> task) {
+		return buildPool().submit(task);
+	}
+
+	static ForkJoinTask<?> fork(Runnable task) {
+		return buildPool().submit(task);
+	}
+
+	/**
+	 * 词典构建线程池，首次使用时创建
+	 */
+	private static synchronized ForkJoinPool buildPool() {
+		if (buildPool == null) {
+			buildPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), pool -> {
+				ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+				thread.setName("ik-dict-build-" + threadCount.incrementAndGet());
+				return thread;
+			}, null, false);
+		}
+		return buildPool;
+	}
+
+	/**
+	 * 关闭词典构建线程池，之后再使用时重新创建
+	 */
+	static synchronized void close() {
+		if (buildPool != null) {
+			buildPool.shutdownNow();
+			buildPool = null;
+		}
+	}
+
+	/**
+	 * 将文本词典逐行填充到词典树，UTF-8编码，每行一个词
+	 */
+	static void fill(DictSegment dict, Path dictFile) throws IOException {
+		readWords(dictFile, word -> dict.fillSegment(WordFrequency.word(word).toCharArray(), WordFrequency.code(word)));
+	}
+
+	/**
+	 * 逐行读取文本词典，UTF-8编码，每行一个词，忽略空行
+	 * 行内可在词后以制表符附带词频（如 "词\t1234"），读出的是整行，由WordFrequency解析
+	 */
+	static void readWords(Path dictFile, Consumer<String> consumer) throws IOException {
+		try (InputStream is = new FileInputStream(dictFile.toFile());
+				BufferedReader br = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
+			String word = br.readLine();
+			if (word != null) {
+				if (word.startsWith("\uFEFF"))
+					word = word.substring(1);
+				for (; word != null; word = br.readLine()) {
+					word = word.trim();
+					if (word.isEmpty()) continue;
+					consumer.accept(word);
+				}
+			}
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		Path outputDir = null;
+		boolean fst = false;
+		List<Path> dictFiles = new ArrayList<Path>();
+		for (int i = 0; i < args.length; i++) {
+			if (("-o".equals(args[i]) || "--output".equals(args[i])) && i + 1 < args.length) {
+				outputDir = Paths.get(args[++i]);
+			} else if ("--fst".equals(args[i])) {
+				fst = true;
+			} else {
+				dictFiles.add(Paths.get(args[i]));
+			}
+		}
+		if (dictFiles.isEmpty()) {
+			System.err.println("Usage: DictionaryCompiler [-o <output-dir>] [--fst] <file.dic> [<file.dic> ...]");
+			System.exit(1);
+		}
+
+		for (Path dictFile : dictFiles) {
+			long start = System.nanoTime();
+			String suffix = fst ? FST_SUFFIX : SUFFIX;
+			Path compiled = outputDir == null ? dictFile.resolveSibling(dictFile.getFileName().toString() + suffix)
+					: outputDir.resolve(dictFile.getFileName().toString() + suffix);
+			long[] signature = signature(dictFile);
+			long nodes;
+			if (fst) {
+				FstTrie trie = compileFst(dictFile);
+				writeFst(trie, signature, compiled);
+				nodes = trie.getNodeCount();
+			} else {
+				DoubleArrayTrie trie = compile(dictFile);
+				write(trie, signature, compiled);
+				nodes = trie.getNodeCount();
+			}
+			System.out.println(String.format("%s -> %s: %d nodes, %d bytes, %d ms", dictFile, compiled,
+					nodes, Files.size(compiled), (System.nanoTime() - start) / 1000000));
+		}
+	}
+}
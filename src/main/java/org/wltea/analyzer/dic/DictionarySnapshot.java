@@ -0,0 +1,233 @@
+/**
+ * IK 中文分词  版本 5.0
+ * IK Analyzer release 5.0
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.wltea.analyzer.dic;
+
+/**
+ * 词典快照，不可变
+ *
+ * 同一版本的主词典、量词词典、停用词词典；重新加载、增量更新或增删词条时生成新快照整体替换，
+ * 分词器在reset时取得一个快照，整篇文档都使用同一版本的词典
+ */
+public final class DictionarySnapshot {
+
+	//版本号，每次替换递增，可作为缓存失效的依据
+	private final long version;
+
+	private final OverlayTrie mainDict;
+
+	private final OverlayTrie quantifierDict;
+
+	private final OverlayTrie stopWords;
+
+	//停用词编译成的散列集合，停用词不变时沿用上一个快照的集合
+	private final StopWordSet stopWordSet;
+
+	//主词典的准入过滤器，与快照一同构建
+	private final AdmissionFilter mainFilter;
+
+	//主词典全部词的词频之和的对数，统计分词时作为概率的分母；增量词典中的词不计入
+	private final double logTotalFrequency;
+
+	DictionarySnapshot(long version, OverlayTrie mainDict, OverlayTrie quantifierDict,
+			OverlayTrie stopWords) {
+		this(version, mainDict, quantifierDict, stopWords, StopWordSet.of(stopWords.words()));
+	}
+
+	DictionarySnapshot(long version, OverlayTrie mainDict, OverlayTrie quantifierDict,
+			OverlayTrie stopWords, StopWordSet stopWordSet) {
+		this.version = version;
+		this.mainDict = mainDict;
+		this.quantifierDict = quantifierDict;
+		this.stopWords = stopWords;
+		this.stopWordSet = stopWordSet;
+		this.mainFilter = mainDict.getFilter();
+		this.logTotalFrequency = Math.log(Math.max(mainDict.getBase().getTotalFrequency(), 1));
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	OverlayTrie getMainDict() {
+		return mainDict;
+	}
+
+	OverlayTrie getQuantifierDict() {
+		return quantifierDict;
+	}
+
+	OverlayTrie getStopWords() {
+		return stopWords;
+	}
+
+	/**
+	 * 检索匹配主词典
+	 *
+	 * @return Hit 匹配结果描述
+	 */
+	public Hit matchInMainDict(char[] charArray) {
+		return matchInMainDict(charArray, 0, charArray.length);
+	}
+
+	/**
+	 * 检索匹配主词典
+	 *
+	 * @return Hit 匹配结果描述
+	 */
+	public Hit matchInMainDict(char[] charArray, int begin, int length) {
+		return matchInMainDict(charArray, begin, length, new Hit());
+	}
+
+	/**
+	 * 检索匹配主词典，结果写入传入的Hit，分词时复用Hit以避免逐字分配
+	 *
+	 * @return hit
+	 */
+	public Hit matchInMainDict(char[] charArray, int begin, int length, Hit hit) {
+		//空词段，或词段长于以首字开头的最长词（不是词首时为0）时直接返回，不查询词典树
+		if (length <= 0 || length > mainFilter.maxLength(charArray[begin])) {
+			hit.reset(begin);
+			return hit;
+		}
+		return mainDict.match(charArray, begin, length, hit);
+	}
+
+	/**
+	 * 主词典的准入过滤器
+	 *
+	 * @return AdmissionFilter
+	 */
+	public AdmissionFilter getMainFilter() {
+		return mainFilter;
+	}
+
+	/**
+	 * 检索匹配量词词典
+	 *
+	 * @return Hit 匹配结果描述
+	 */
+	public Hit matchInQuantifierDict(char[] charArray, int begin, int length) {
+		return quantifierDict.match(charArray, begin, length);
+	}
+
+	/**
+	 * 检索匹配量词词典，结果写入传入的Hit
+	 *
+	 * @return hit
+	 */
+	public Hit matchInQuantifierDict(char[] charArray, int begin, int length, Hit hit) {
+		return quantifierDict.match(charArray, begin, length, hit);
+	}
+
+	/**
+	 * 从已匹配的Hit中直接取出前缀节点，继续向下匹配
+	 * Hit记录了产生它的词典节点，因此总是在同一版本的词典上继续匹配
+	 *
+	 * @return Hit
+	 */
+	public Hit matchWithHit(char[] charArray, int currentIndex, Hit matchedHit) {
+		return OverlayTrie.matchWithHit(charArray, currentIndex, matchedHit);
+	}
+
+	/**
+	 * 词段作为一个词的一元语言模型对数概率：log(词频 / 主词典词频之和)
+	 * 未标注词频的词按默认词频计算，不是词的词段也按默认词频计算（如量词、英文数字等词元）
+	 *
+	 * @return 自然对数
+	 */
+	public double logProbability(char[] charArray, int begin, int length) {
+		return WordFrequency.logFrequency(mainDict.frequency(charArray, begin, length)) - logTotalFrequency;
+	}
+
+	/**
+	 * 不在任何词元中的单字的对数概率，低于任何词
+	 *
+	 * @return 自然对数
+	 */
+	public double unknownCharLogProbability() {
+		return Math.log(WordFrequency.UNKNOWN_FREQUENCY) - logTotalFrequency;
+	}
+
+	/**
+	 * 创建主词典的多模式匹配器，自动机按词典构建一次，由同一版本的所有匹配器共享
+	 *
+	 * @return AhoCorasickMatcher
+	 */
+	public AhoCorasickMatcher newMatcher() {
+		if (!isAhoCorasickSupported()) {
+			throw new IllegalStateException("Aho-Corasick matching requires the double-array main dictionary");
+		}
+		return new AhoCorasickMatcher(mainDict);
+	}
+
+	/**
+	 * 主词典是否支持Aho-Corasick匹配，FST格式的主词典不支持
+	 */
+	public boolean isAhoCorasickSupported() {
+		return mainDict.getBase() instanceof DoubleArrayTrie;
+	}
+
+	/**
+	 * 判断是否是停止词
+	 *
+	 * @return boolean
+	 */
+	public boolean isStopWord(char[] charArray, int begin, int length) {
+		return stopWordSet.contains(charArray, begin, length);
+	}
+
+	/**
+	 * 本词典集合的停用词
+	 *
+	 * @return StopWordSet
+	 */
+	public StopWordSet getStopWordSet() {
+		return stopWordSet;
+	}
+
+	/**
+	 * 词典占用的堆内存字节数
+	 */
+	public long ramBytesUsed() {
+		return mainDict.ramBytesUsed() + quantifierDict.ramBytesUsed() + stopWords.ramBytesUsed()
+				+ mainFilter.ramBytesUsed();
+	}
+
+	/**
+	 * 词典占用的堆外内存字节数，包括直接内存及映射的预编译文件
+	 */
+	public long offHeapBytesUsed() {
+		return mainDict.offHeapBytesUsed() + quantifierDict.offHeapBytesUsed() + stopWords.offHeapBytesUsed();
+	}
+
+	/**
+	 * 词典占用的堆外内存中映射自预编译文件的部分，同一主机上的进程共享页缓存
+	 */
+	public long mappedBytesUsed() {
+		long bytes = 0;
+		for (OverlayTrie trie : new OverlayTrie[] { mainDict, quantifierDict, stopWords }) {
+			if (trie.isMapped()) {
+				bytes += trie.offHeapBytesUsed();
+			}
+		}
+		return bytes;
+	}
+}
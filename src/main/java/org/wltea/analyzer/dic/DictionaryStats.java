@@ -0,0 +1,141 @@
+/**
+ * IK 中文分词  版本 5.0
+ * IK Analyzer release 5.0
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.wltea.analyzer.dic;
+
+import java.io.IOException;
+
+import org.elasticsearch.common.xcontent.ToXContentFragment;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+/**
+ * 一个词典集合的统计，不可变
+ *
+ * 当前快照的版本、内存占用及各词典的结构统计，以及加载、重新加载的耗时和次数
+ */
+public final class DictionaryStats implements ToXContentFragment {
+
+	private final String name;
+	private final long version;
+	//首次加载的耗时（毫秒）
+	private final long loadMillis;
+	//重新加载（包括增量更新及增删词条）的次数、最近一次的耗时（毫秒）及完成时间
+	private final long reloadCount;
+	private final long lastReloadMillis;
+	private final long lastReloadTime;
+	private final long heapBytes;
+	private final long offHeapBytes;
+	private final long mappedBytes;
+	private final TrieStats mainDict;
+	private final TrieStats quantifierDict;
+	private final TrieStats stopWords;
+	private final int stopWordSetSize;
+
+	DictionaryStats(String name, DictionarySnapshot snapshot, long loadMillis, long reloadCount, long lastReloadMillis,
+			long lastReloadTime) {
+		this.name = name;
+		this.version = snapshot.getVersion();
+		this.loadMillis = loadMillis;
+		this.reloadCount = reloadCount;
+		this.lastReloadMillis = lastReloadMillis;
+		this.lastReloadTime = lastReloadTime;
+		this.heapBytes = snapshot.ramBytesUsed();
+		this.offHeapBytes = snapshot.offHeapBytesUsed();
+		this.mappedBytes = snapshot.mappedBytesUsed();
+		this.mainDict = TrieStats.of(snapshot.getMainDict());
+		this.quantifierDict = TrieStats.of(snapshot.getQuantifierDict());
+		this.stopWords = TrieStats.of(snapshot.getStopWords());
+		this.stopWordSetSize = snapshot.getStopWordSet().size();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public long getLoadMillis() {
+		return loadMillis;
+	}
+
+	public long getReloadCount() {
+		return reloadCount;
+	}
+
+	public long getLastReloadMillis() {
+		return lastReloadMillis;
+	}
+
+	/**
+	 * 最近一次重新加载完成的时间（epoch毫秒），没有重新加载过时为0
+	 */
+	public long getLastReloadTime() {
+		return lastReloadTime;
+	}
+
+	public long getHeapBytes() {
+		return heapBytes;
+	}
+
+	public long getOffHeapBytes() {
+		return offHeapBytes;
+	}
+
+	public long getMappedBytes() {
+		return mappedBytes;
+	}
+
+	public TrieStats getMainDict() {
+		return mainDict;
+	}
+
+	public TrieStats getQuantifierDict() {
+		return quantifierDict;
+	}
+
+	public TrieStats getStopWords() {
+		return stopWords;
+	}
+
+	@Override
+	public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+		builder.field("version", version);
+		builder.field("load_millis", loadMillis);
+		builder.field("reload_count", reloadCount);
+		builder.field("last_reload_millis", lastReloadMillis);
+		builder.field("last_reload_time", lastReloadTime);
+		builder.field("heap_bytes", heapBytes);
+		builder.field("off_heap_bytes", offHeapBytes);
+		builder.field("mapped_bytes", mappedBytes);
+		builder.startObject("main");
+		mainDict.toXContent(builder, params);
+		builder.endObject();
+		builder.startObject("quantifier");
+		quantifierDict.toXContent(builder, params);
+		builder.endObject();
+		builder.startObject("stopwords");
+		stopWords.toXContent(builder, params);
+		builder.field("set_size", stopWordSetSize);
+		builder.endObject();
+		return builder;
+	}
+}
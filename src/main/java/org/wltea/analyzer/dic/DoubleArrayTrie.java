@@ -0,0 +1,679 @@
+/**
+ * IK 中文分词  版本 5.0
+ * IK Analyzer release 5.0
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.wltea.analyzer.dic;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 双数组词典树（Double-Array Trie）
+ *
+ * 由DictSegment词典树编译而成，只读；节点i的子节点位于 base[i] + code(c)，
+ * 并以 check[子节点] == i 校验归属。匹配结果（完全匹配/前缀匹配）与DictSegment保持一致
+ * 双数组存放在堆外：编译结果位于直接内存，预编译文件则直接映射，多个进程映射同一文件时共享页缓存
+ */
+class DoubleArrayTrie extends BaseTrie {
+
+    //节点状态：从根节点到当前节点的路径是一个启用的词
+    private static final byte STATE_WORD = 0x01;
+    //节点状态：当前节点有子节点，即为词前缀
+    private static final byte STATE_NEXT = 0x02;
+    //节点状态的高6位：启用的词的词频编码（WordFrequency），0表示未标注
+    private static final int FREQUENCY_SHIFT = 2;
+
+    //空闲槽位标识
+    private static final int FREE = -1;
+
+    //序列化头部：节点数、字母表大小、数组长度、保留字段
+    private static final int HEADER_SIZE = 16;
+
+    //字符 -> 字母表编码，0表示该字符不在词典中
+    private final char[] charCodes;
+    //字母表编码 -> 字符，用于从节点反推词条
+    private final char[] codeChars;
+
+    //序列化后的双数组（小端），为直接内存或映射自预编译文件，不占用堆内存
+    //布局：节点数、字母表大小、数组长度、保留字段（各4字节），随后依次为base、check、codeChars、states
+    private final ByteBuffer data;
+    private final IntBuffer base;
+    private final IntBuffer check;
+    private final ByteBuffer states;
+    //base/check/states的长度
+    private final int size;
+    //是否映射自预编译文件，映射的内容由操作系统页缓存在进程间共享
+    private final boolean mapped;
+
+    //节点数（含根节点）
+    private final int nodeCount;
+
+    //基于本双数组的Aho-Corasick自动机，首次使用时构建
+    private volatile AhoCorasick automaton;
+    //基于本双数组的准入过滤器，首次使用时构建
+    private volatile AdmissionFilter filter;
+    //全部词的词频之和，首次使用时统计，小于0表示尚未统计
+    private volatile double totalFrequency = -1;
+
+    private DoubleArrayTrie(ByteBuffer data, boolean mapped) {
+        this.data = data;
+        this.mapped = mapped;
+        this.nodeCount = data.getInt(0);
+        int alphabetSize = data.getInt(4);
+        this.size = data.getInt(8);
+
+        int offset = HEADER_SIZE;
+        this.base = region(data, offset, this.size * 4).asIntBuffer();
+        offset += this.size * 4;
+        this.check = region(data, offset, this.size * 4).asIntBuffer();
+        offset += this.size * 4;
+        //字母表很小，放在堆上
+        this.codeChars = new char[alphabetSize + 1];
+        region(data, offset, this.codeChars.length * 2).asCharBuffer().get(this.codeChars);
+        offset += this.codeChars.length * 2;
+        this.states = region(data, offset, this.size);
+
+        this.charCodes = new char[Character.MAX_VALUE + 1];
+        for (int code = 1; code <= alphabetSize; code++) {
+            this.charCodes[this.codeChars[code]] = (char) code;
+        }
+    }
+
+    private static ByteBuffer region(ByteBuffer data, int offset, int length) {
+        ByteBuffer buffer = data.duplicate();
+        buffer.position(offset);
+        buffer.limit(offset + length);
+        return buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static long bodySize(int size, int alphabetSize) {
+        return HEADER_SIZE + (long) size * 9 + (long) (alphabetSize + 1) * 2;
+    }
+
+    /**
+     * 匹配词段
+     * @param charArray
+     * @param begin
+     * @param length
+     * @return Hit
+     */
+    Hit match(char[] charArray, int begin, int length) {
+        return this.match(ROOT, charArray, begin, length, null);
+    }
+
+    /**
+     * 从指定节点开始匹配词段
+     * @param node 起始节点，根节点或Hit中记录的前缀节点
+     * @param charArray
+     * @param begin
+     * @param length
+     * @param searchHit 为空则新建Hit，否则重置其状态后复用
+     * @return Hit
+     */
+    Hit match(int node, char[] charArray, int begin, int length, Hit searchHit) {
+        if (searchHit == null) {
+            searchHit = new Hit();
+            searchHit.setBegin(begin);
+        } else {
+            searchHit.setUnmatch();
+        }
+        //与DictSegment一致，空词段不匹配
+        if (length <= 0) {
+            return searchHit;
+        }
+
+        int s = node;
+        for (int i = begin, end = begin + length; i < end; i++) {
+            //与DictSegment一致，end记录最后一次查找的位置
+            searchHit.setEnd(i);
+            s = this.transition(s, charArray[i]);
+            if (s < 0) {
+                return searchHit;
+            }
+        }
+
+        byte state = this.states.get(s);
+        if ((state & STATE_WORD) != 0) {
+            searchHit.setMatch();
+        }
+        if ((state & STATE_NEXT) != 0) {
+            searchHit.setPrefix();
+            searchHit.setMatchedNode(this, s);
+        }
+        return searchHit;
+    }
+
+    /**
+     * 状态转移
+     * @return 子节点下标，不存在返回-1
+     */
+    int transition(int node, char c) {
+        int code = this.charCodes[c];
+        if (code == 0) {
+            return -1;
+        }
+        int t = this.base.get(node) + code;
+        if (t < this.size && this.check.get(t) == node) {
+            return t;
+        }
+        return -1;
+    }
+
+    /*
+     * 从根节点到该节点的路径是否为一个启用的词
+     */
+    boolean isWord(int node) {
+        return (this.states.get(node) & STATE_WORD) != 0;
+    }
+
+    /*
+     * 该节点是否有子节点
+     */
+    boolean hasNextNode(int node) {
+        return (this.states.get(node) & STATE_NEXT) != 0;
+    }
+
+    int frequency(char[] charArray, int begin, int length) {
+        int s = ROOT;
+        for (int i = begin, end = begin + length; i < end && s >= 0; i++) {
+            s = this.transition(s, charArray[i]);
+        }
+        if (s <= ROOT) {
+            return 0;
+        }
+        byte state = this.states.get(s);
+        return (state & STATE_WORD) != 0 ? (state & 0xFF) >>> FREQUENCY_SHIFT : 0;
+    }
+
+    double getTotalFrequency() {
+        double total = this.totalFrequency;
+        if (total < 0) {
+            total = 0;
+            for (int t = 1; t < this.size; t++) {
+                byte state = this.states.get(t);
+                if (this.check.get(t) >= 0 && (state & STATE_WORD) != 0) {
+                    total += WordFrequency.decode((state & 0xFF) >>> FREQUENCY_SHIFT);
+                }
+            }
+            this.totalFrequency = total;
+        }
+        return total;
+    }
+
+    int getNodeCount() {
+        return this.nodeCount;
+    }
+
+    /*
+     * base/check/states的长度，节点下标均小于该值
+     */
+    int getSize() {
+        return this.size;
+    }
+
+    /*
+     * 节点的父节点，空闲槽位返回-1
+     */
+    int parent(int node) {
+        return node == ROOT ? -1 : this.check.get(node);
+    }
+
+    /*
+     * 从父节点转移到该节点的字符
+     */
+    char label(int node) {
+        return this.codeChars[node - this.base.get(this.check.get(node))];
+    }
+
+    /**
+     * 获取基于本双数组的Aho-Corasick自动机，首次调用时构建
+     */
+    AhoCorasick getAutomaton() {
+        AhoCorasick ac = this.automaton;
+        if (ac == null) {
+            synchronized (this) {
+                ac = this.automaton;
+                if (ac == null) {
+                    ac = AhoCorasick.build(this);
+                    this.automaton = ac;
+                }
+            }
+        }
+        return ac;
+    }
+
+    /**
+     * 获取本双数组的准入过滤器，首次调用时构建
+     */
+    AdmissionFilter getFilter() {
+        AdmissionFilter f = this.filter;
+        if (f == null) {
+            synchronized (this) {
+                f = this.filter;
+                if (f == null) {
+                    f = AdmissionFilter.build(this);
+                    this.filter = f;
+                }
+            }
+        }
+        return f;
+    }
+
+    boolean isMapped() {
+        return this.mapped;
+    }
+
+    /**
+     * 占用的堆内存字节数：字符编码表，以及已构建的Aho-Corasick自动机
+     */
+    long ramBytesUsed() {
+        AhoCorasick ac = this.automaton;
+        return (long) this.charCodes.length * 2 + (long) this.codeChars.length * 2
+                + (this.data.isDirect() ? 0 : this.data.capacity()) + (ac == null ? 0 : ac.ramBytesUsed());
+    }
+
+    /**
+     * 占用的堆外内存字节数（直接内存或文件映射）
+     */
+    long offHeapBytesUsed() {
+        return this.data.isDirect() ? this.data.capacity() : 0;
+    }
+
+    /**
+     * 序列化后的字节数
+     */
+    long serializedSize() {
+        return this.data.capacity();
+    }
+
+    /**
+     * 写出双数组
+     * @param channel
+     * @throws IOException
+     */
+    void writeTo(WritableByteChannel channel) throws IOException {
+        ByteBuffer buffer = this.data.duplicate();
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * 以writeTo写出的内容构造双数组，不复制数据；构造后buffer的position位于双数组之后
+     * @param buffer
+     * @param mapped buffer是否映射自文件
+     * @return DoubleArrayTrie
+     * @throws IOException 内容不完整或不合法
+     */
+    static DoubleArrayTrie readFrom(ByteBuffer buffer, boolean mapped) throws IOException {
+        ByteBuffer data = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        if (data.remaining() < HEADER_SIZE) {
+            throw new IOException("truncated double-array trie");
+        }
+        int nodeCount = data.getInt(0);
+        int alphabetSize = data.getInt(4);
+        int size = data.getInt(8);
+        if (nodeCount <= 0 || size <= 0 || alphabetSize < 0 || alphabetSize > Character.MAX_VALUE
+                || data.remaining() < bodySize(size, alphabetSize)) {
+            throw new IOException("truncated or corrupt double-array trie");
+        }
+        int length = (int) bodySize(size, alphabetSize);
+        buffer.position(buffer.position() + length);
+        return new DoubleArrayTrie(region(data, 0, length), mapped);
+    }
+
+    /**
+     * 遍历全部启用的词条
+     */
+    void forEachWord(Consumer<String> consumer) {
+        char[] path = new char[64];
+        for (int t = 1; t < this.size; t++) {
+            if (this.check.get(t) < 0 || (this.states.get(t) & STATE_WORD) == 0) {
+                continue;
+            }
+            //从词尾向根回溯，反向得到词条
+            int len = 0;
+            for (int s = t; s != ROOT; s = this.check.get(s)) {
+                if (len == path.length) {
+                    path = Arrays.copyOf(path, len * 2);
+                }
+                path[len++] = this.codeChars[s - this.base.get(this.check.get(s))];
+            }
+            char[] chars = new char[len];
+            for (int i = 0; i < len; i++) {
+                chars[i] = path[len - 1 - i];
+            }
+            consumer.accept(new String(chars));
+        }
+    }
+
+    /**
+     * 还原为DictSegment词典树，用于在当前词典基础上增删词条后重新编译
+     * 屏蔽的词（无子节点且非词的叶子）以disableSegment还原
+     */
+    DictSegment decompile() {
+        DictSegment root = new DictSegment((char) 0);
+        char[] path = new char[64];
+        for (int t = 1; t < this.size; t++) {
+            if (this.check.get(t) < 0) {
+                continue;
+            }
+            byte state = this.states.get(t);
+            boolean word = (state & STATE_WORD) != 0;
+            if (!word && (state & STATE_NEXT) != 0) {
+                //中间节点，由其后代还原
+                continue;
+            }
+            //从叶子向根回溯，反向得到词条
+            int len = 0;
+            for (int s = t; s != ROOT; s = this.check.get(s)) {
+                if (len == path.length) {
+                    path = Arrays.copyOf(path, len * 2);
+                }
+                path[len++] = this.codeChars[s - this.base.get(this.check.get(s))];
+            }
+            char[] chars = new char[len];
+            for (int i = 0; i < len; i++) {
+                chars[i] = path[len - 1 - i];
+            }
+            if (word) {
+                root.fillSegment(chars, (state & 0xFF) >>> FREQUENCY_SHIFT);
+            } else {
+                root.disableSegment(chars);
+            }
+        }
+        return root;
+    }
+
+    /**
+     * 将DictSegment词典树编译为双数组
+     * @param root 词典树根节点
+     * @return DoubleArrayTrie
+     */
+    static DoubleArrayTrie compile(DictSegment root) {
+        //STEP1 广度优先遍历，收集有子节点的节点，并统计字母表
+        final int[] freq = new int[Character.MAX_VALUE + 1];
+        List<DictSegment[]> childLists = new ArrayList<DictSegment[]>();
+        ArrayDeque<DictSegment> queue = new ArrayDeque<DictSegment>();
+        queue.add(root);
+        int nodeCount = 0;
+        while (!queue.isEmpty()) {
+            DictSegment ds = queue.poll();
+            nodeCount++;
+            DictSegment[] children = ds.getChildren();
+            if (children.length > 0) {
+                childLists.add(children);
+            }
+            for (DictSegment child : children) {
+                freq[child.getNodeChar()]++;
+                queue.add(child);
+            }
+        }
+
+        //STEP2 出现次数多的字符分配较小的编码，使数组更紧凑
+        int alphabetSize = 0;
+        for (int f : freq) {
+            if (f > 0) {
+                alphabetSize++;
+            }
+        }
+        Integer[] alphabet = new Integer[alphabetSize];
+        for (int c = 0, i = 0; c < freq.length; c++) {
+            if (freq[c] > 0) {
+                alphabet[i++] = c;
+            }
+        }
+        Arrays.sort(alphabet, (a, b) -> freq[b] != freq[a] ? freq[b] - freq[a] : a - b);
+        char[] charCodes = new char[Character.MAX_VALUE + 1];
+        char[] codeChars = new char[alphabetSize + 1];
+        for (int i = 0; i < alphabetSize; i++) {
+            charCodes[alphabet[i]] = (char) (i + 1);
+            codeChars[i + 1] = (char) alphabet[i].intValue();
+        }
+
+        //STEP3 为每个节点寻找base，子节点多的先放置，子节点少的填补空隙
+        //base只取决于子节点编码，与节点自身位置无关，因此可以不按层次顺序放置
+        final int[][] codes = new int[childLists.size()][];
+        Integer[] order = new Integer[codes.length];
+        for (int k = 0; k < codes.length; k++) {
+            DictSegment[] children = childLists.get(k);
+            codes[k] = new int[children.length];
+            for (int i = 0; i < children.length; i++) {
+                codes[k][i] = charCodes[children[i].getNodeChar()];
+            }
+            Arrays.sort(codes[k]);
+            order[k] = k;
+        }
+        Arrays.sort(order, (a, b) -> codes[b].length - codes[a].length);
+        Builder builder = new Builder(Math.max(nodeCount + alphabetSize, 1024));
+        int[] bases = new int[codes.length];
+        for (Integer k : order) {
+            bases[k] = builder.place(codes[k]);
+        }
+
+        //STEP4 按层次顺序填写check与节点状态，遍历顺序与STEP1一致
+        int[] base = new int[builder.size()];
+        int[] check = new int[builder.size()];
+        byte[] states = new byte[builder.size()];
+        Arrays.fill(check, FREE);
+        check[ROOT] = ROOT;
+        ArrayDeque<Object[]> nodes = new ArrayDeque<Object[]>();
+        nodes.add(new Object[] { root, ROOT });
+        int k = 0;
+        while (!nodes.isEmpty()) {
+            Object[] item = nodes.poll();
+            DictSegment ds = (DictSegment) item[0];
+            int s = (Integer) item[1];
+            if (ds.isWord()) {
+                states[s] |= STATE_WORD | ds.getFrequency() << FREQUENCY_SHIFT;
+            }
+            if (!ds.hasNextNode()) {
+                continue;
+            }
+            states[s] |= STATE_NEXT;
+            DictSegment[] children = childLists.get(k);
+            base[s] = bases[k++];
+            for (DictSegment child : children) {
+                int t = base[s] + charCodes[child.getNodeChar()];
+                check[t] = s;
+                nodes.add(new Object[] { child, t });
+            }
+        }
+        return allocate(nodeCount, codeChars, base, check, states);
+    }
+
+    /**
+     * 将编译结果写入直接内存，编译用的堆上数组随后即可回收
+     */
+    private static DoubleArrayTrie allocate(int nodeCount, char[] codeChars, int[] base, int[] check, byte[] states) {
+        int size = base.length;
+        ByteBuffer data = ByteBuffer.allocateDirect((int) bodySize(size, codeChars.length - 1))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        data.putInt(nodeCount).putInt(codeChars.length - 1).putInt(size).putInt(0);
+        data.asIntBuffer().put(base);
+        data.position(data.position() + size * 4);
+        data.asIntBuffer().put(check);
+        data.position(data.position() + size * 4);
+        data.asCharBuffer().put(codeChars);
+        data.position(data.position() + codeChars.length * 2);
+        data.put(states);
+        data.clear();
+        return new DoubleArrayTrie(data, false);
+    }
+
+    /**
+     * 双数组槽位分配器
+     * 空闲槽位以双向链表串联，查找base时只遍历空闲槽位
+     */
+    private static class Builder {
+
+        //查找base时尝试的空闲槽位数超过该值，则认为该区域已基本占满，之后从更靠后的位置开始查找
+        private static final int PROBE_LIMIT = 64;
+
+        //已占用槽位位图
+        private long[] used;
+        //空闲槽位链表，仅对未占用的槽位有效
+        private int[] nextFree;
+        private int[] prevFree;
+        //空闲链表头尾，0表示链表为空（0号槽位为根节点，不会空闲）
+        private int freeHead;
+        private int freeTail;
+        //最近尝试过的空闲槽位
+        private final int[] probed = new int[PROBE_LIMIT];
+        //按子节点数（取2的对数）分级记录查找base的起始位置
+        private final int[] probeStart = new int[33];
+        //已使用的最大下标+1
+        private int size = 1;
+
+        Builder(int capacity) {
+            this.used = new long[0];
+            this.nextFree = new int[0];
+            this.prevFree = new int[0];
+            this.ensureCapacity(capacity);
+            this.occupy(ROOT);
+            Arrays.fill(this.probeStart, 1);
+        }
+
+        int size() {
+            return this.size;
+        }
+
+        /**
+         * 为子节点编码集合寻找可用的base，并占用对应槽位
+         * @param codes 升序排列的子节点编码
+         * @return base
+         */
+        int place(int[] codes) {
+            int first = codes[0];
+            int last = codes[codes.length - 1];
+
+            int cls = 32 - Integer.numberOfLeadingZeros(codes.length);
+            int begin;
+            int pos;
+            if (codes.length == 1) {
+                //单个子节点，任一空闲槽位均可
+                pos = this.freeHead;
+            } else {
+                //多个子节点，跳过对该规模节点已基本占满的区域
+                int start = this.probeStart[cls];
+                while (start < this.capacity() && this.isUsed(start)) {
+                    start++;
+                }
+                this.probeStart[cls] = start;
+                pos = start < this.capacity() ? start : 0;
+            }
+            int probes = 0;
+            outer:
+            while (true) {
+                if (pos == 0) {
+                    //空闲槽位中没有合适的位置，放置到已使用区域之后（其后槽位均空闲）
+                    begin = Math.max(this.size - first, 1);
+                    this.ensureCapacity(begin + last + 1);
+                    break;
+                }
+                begin = pos - first;
+                this.probed[probes++ % PROBE_LIMIT] = pos;
+                pos = this.nextFree[pos];
+                if (begin < 1) {
+                    continue;
+                }
+                this.ensureCapacity(begin + last + 1);
+                for (int i = codes.length - 1; i > 0; i--) {
+                    if (this.isUsed(begin + codes[i])) {
+                        continue outer;
+                    }
+                }
+                break;
+            }
+            if (probes > PROBE_LIMIT && codes.length > 1) {
+                //尝试次数过多，说明之前的区域对该规模的节点已基本占满，同级节点此后跳过该区域
+                this.probeStart[cls] = this.probed[probes % PROBE_LIMIT];
+            }
+
+            for (int code : codes) {
+                this.occupy(begin + code);
+            }
+            if (begin + last + 1 > this.size) {
+                this.size = begin + last + 1;
+            }
+            return begin;
+        }
+
+        private int capacity() {
+            return this.nextFree.length;
+        }
+
+        private boolean isUsed(int t) {
+            return (this.used[t >>> 6] & (1L << t)) != 0;
+        }
+
+        /**
+         * 占用槽位，并将其从空闲链表中移除
+         */
+        private void occupy(int t) {
+            int prev = this.prevFree[t];
+            int next = this.nextFree[t];
+            if (prev == 0) {
+                this.freeHead = next;
+            } else {
+                this.nextFree[prev] = next;
+            }
+            if (next == 0) {
+                this.freeTail = prev;
+            } else {
+                this.prevFree[next] = prev;
+            }
+            this.used[t >>> 6] |= 1L << t;
+        }
+
+        private void ensureCapacity(int capacity) {
+            int oldCapacity = this.capacity();
+            if (capacity <= oldCapacity) {
+                return;
+            }
+            int newCapacity = Math.max(capacity, oldCapacity + (oldCapacity >> 1));
+            this.used = Arrays.copyOf(this.used, (newCapacity + 63) >>> 6);
+            this.nextFree = Arrays.copyOf(this.nextFree, newCapacity);
+            this.prevFree = Arrays.copyOf(this.prevFree, newCapacity);
+
+            //新增槽位追加到空闲链表尾部
+            int tail = this.freeTail;
+            for (int i = oldCapacity; i < newCapacity; i++) {
+                this.prevFree[i] = tail;
+                this.nextFree[i] = 0;
+                if (tail == 0) {
+                    this.freeHead = i;
+                } else {
+                    this.nextFree[tail] = i;
+                }
+                tail = i;
+            }
+            this.freeTail = tail;
+        }
+    }
+}
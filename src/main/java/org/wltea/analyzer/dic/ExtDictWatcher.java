@@ -0,0 +1,304 @@
+package org.wltea.analyzer.dic;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.SpecialPermission;
+import org.elasticsearch.common.io.PathUtils;
+import org.wltea.analyzer.help.ESPluginLoggerFactory;
+
+/**
+ * 本地扩展词典及配置文件的变化检测
+ *
+ * 以WatchService监听IKAnalyzer.cfg.xml所在目录及ext_dict、ext_stopwords配置的各文件、目录，一批变化在DEBOUNCE毫秒内
+ * 没有新事件后才处理。每个文件记录大小、修改时间及内容的CRC32，只重新加载内容确实变化的文件，文件新增或删除时只增删该文件的词条；
+ * 配置文件中词典列表变化时整体重新加载。文件系统不支持监听时退回为每POLL_INTERVAL秒检查一次
+ */
+final class ExtDictWatcher {
+
+	private static final Logger logger = ESPluginLoggerFactory.getLogger(ExtDictWatcher.class.getName());
+
+	//一批变化的合并时间（毫秒）
+	private static final long DEBOUNCE = 500;
+	//不支持监听时的检查间隔（秒）
+	private static final long POLL_INTERVAL = 30;
+
+	private final Dictionary dictionary;
+	//文件 -> 上次检查时的状态
+	private final Map<String, FileState> files = new HashMap<String, FileState>();
+	//监听的目录
+	private final Map<WatchKey, Path> keys = new HashMap<WatchKey, Path>();
+
+	private WatchService watchService;
+	private Thread thread;
+	private ScheduledFuture<?> polling;
+
+	ExtDictWatcher(Dictionary dictionary) {
+		this.dictionary = dictionary;
+	}
+
+	/**
+	 * 记录当前各文件的状态并开始监听，不支持监听时在pool中定期检查
+	 */
+	synchronized void start(ScheduledExecutorService pool) {
+		SpecialPermission.check();
+		AccessController.doPrivileged((PrivilegedAction<Void>) () -> {
+			snapshot();
+			try {
+				watchService = FileSystems.getDefault().newWatchService();
+				register();
+			} catch (IOException | UnsupportedOperationException e) {
+				logger.warn("[Dict Loading] file watching unavailable, checking every {}s: {}", POLL_INTERVAL, e.toString());
+				closeWatchService();
+			}
+			if (watchService != null) {
+				thread = new Thread(this::watch, "ik-dict-watcher");
+				thread.setDaemon(true);
+				thread.start();
+			} else {
+				polling = pool.scheduleWithFixedDelay(() -> checkPrivileged(null), POLL_INTERVAL, POLL_INTERVAL,
+						TimeUnit.SECONDS);
+			}
+			return null;
+		});
+	}
+
+	synchronized void close() {
+		if (polling != null) {
+			polling.cancel(false);
+			polling = null;
+		}
+		closeWatchService();
+		if (thread != null) {
+			thread.interrupt();
+			thread = null;
+		}
+	}
+
+	private void closeWatchService() {
+		if (watchService != null) {
+			try {
+				watchService.close();
+			} catch (IOException e) {
+				// ignore
+			}
+			watchService = null;
+		}
+		keys.clear();
+	}
+
+	private void watch() {
+		WatchService service = watchService;
+		try {
+			while (true) {
+				Set<Path> changed = new HashSet<Path>();
+				boolean overflow = drain(service.take(), changed);
+				// 合并一批连续的变化，如编辑器先写临时文件再改名
+				WatchKey key;
+				while ((key = service.poll(DEBOUNCE, TimeUnit.MILLISECONDS)) != null) {
+					overflow |= drain(key, changed);
+				}
+				checkPrivileged(overflow ? null : changed);
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			// 已关闭
+		}
+	}
+
+	private void checkPrivileged(Set<Path> changed) {
+		SpecialPermission.check();
+		AccessController.doPrivileged((PrivilegedAction<Void>) () -> {
+			check(changed);
+			return null;
+		});
+	}
+
+	/**
+	 * 取出一个目录的事件
+	 * @return 是否有事件丢失
+	 */
+	private boolean drain(WatchKey key, Set<Path> changed) {
+		boolean overflow = false;
+		Path dir;
+		synchronized (this) {
+			dir = keys.get(key);
+		}
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				overflow = true;
+			} else if (dir != null) {
+				changed.add(dir.resolve((Path) event.context()));
+			}
+		}
+		if (!key.reset()) {
+			// 目录已删除或不可访问，移除后目录重新创建时可以再次注册
+			synchronized (this) {
+				keys.remove(key);
+			}
+		}
+		return overflow;
+	}
+
+	/**
+	 * 检查配置文件及各扩展词典文件
+	 * @param changed 有事件的路径，为null时检查全部文件的内容
+	 */
+	synchronized void check(Set<Path> changed) {
+		try {
+			if (changed == null || changed.contains(dictionary.getConfigFile())) {
+				if (dictionary.checkConfig()) {
+					// 已整体重新加载
+					snapshot();
+					register();
+					return;
+				}
+			}
+
+			List<String> mainFiles = dictionary.getExtDictionarys();
+			List<String> stopWordFiles = dictionary.getExtStopWordDictionarys();
+			Set<String> current = new HashSet<String>(mainFiles);
+			current.addAll(stopWordFiles);
+			for (String file : current) {
+				FileState previous = files.get(file);
+				FileState state = FileState.of(file, previous, changed == null || changed.contains(PathUtils.get(file)));
+				if (state == null) {
+					continue;
+				}
+				files.put(file, state);
+				if (state == FileState.MISSING) {
+					// 文件已删除，按空文件处理，移除其全部词条
+					if (previous != FileState.MISSING) {
+						dictionary.reloadLocalSource(file, false, false);
+					}
+				} else if (previous == null || state.size != previous.size || state.crc != previous.crc) {
+					dictionary.reloadLocalSource(file, mainFiles.contains(file), stopWordFiles.contains(file));
+				}
+			}
+			for (String file : new HashSet<String>(files.keySet())) {
+				if (!current.contains(file)) {
+					files.remove(file);
+					dictionary.reloadLocalSource(file, false, false);
+				}
+			}
+			// 目录中可能新增了子目录
+			if (watchService != null && changed != null && !changed.isEmpty()) {
+				register();
+			}
+		} catch (Exception e) {
+			logger.error("check ext dict error", e);
+		}
+	}
+
+	/**
+	 * 记录当前各文件的状态
+	 */
+	private void snapshot() {
+		files.clear();
+		Set<String> current = new HashSet<String>(dictionary.getExtDictionarys());
+		current.addAll(dictionary.getExtStopWordDictionarys());
+		for (String file : current) {
+			FileState state = FileState.of(file, null, true);
+			if (state != null) {
+				files.put(file, state);
+			}
+		}
+	}
+
+	/**
+	 * 监听配置文件所在目录及各扩展词典的目录，配置为目录的包括其全部子目录
+	 */
+	private void register() throws IOException {
+		if (watchService == null) {
+			return;
+		}
+		Set<Path> dirs = new HashSet<Path>();
+		dirs.add(dictionary.getConfigFile().getParent());
+		for (Path root : dictionary.getLocalDictRoots()) {
+			if (Files.isDirectory(root)) {
+				Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+					@Override
+					public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+						dirs.add(dir);
+						return FileVisitResult.CONTINUE;
+					}
+
+					@Override
+					public FileVisitResult visitFileFailed(Path file, IOException e) {
+						return FileVisitResult.CONTINUE;
+					}
+				});
+			} else if (root.getParent() != null && Files.isDirectory(root.getParent())) {
+				// 文件可能被删除后重新创建，监听其所在目录
+				dirs.add(root.getParent());
+			}
+		}
+		for (Path dir : dirs) {
+			if (!keys.containsValue(dir)) {
+				keys.put(dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+						StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY), dir);
+			}
+		}
+	}
+
+	/**
+	 * 文件的大小、修改时间及内容的CRC32
+	 */
+	static final class FileState {
+		//文件不存在
+		static final FileState MISSING = new FileState(-1, null, 0);
+
+		final long size;
+		final FileTime modified;
+		final long crc;
+
+		private FileState(long size, FileTime modified, long crc) {
+			this.size = size;
+			this.modified = modified;
+			this.crc = crc;
+		}
+
+		/**
+		 * @param previous 上次的状态
+		 * @param touched 是否有该文件的事件；没有事件且大小、修改时间均未变时不读取内容
+		 * @return 当前状态；文件不存在时返回MISSING，暂时不可读（如正在被替换）时返回previous，下次再检查
+		 */
+		static FileState of(String file, FileState previous, boolean touched) {
+			Path path = PathUtils.get(file);
+			try {
+				long size = Files.size(path);
+				FileTime modified = Files.getLastModifiedTime(path);
+				if (previous != null && !touched && previous.size == size && modified.equals(previous.modified)) {
+					return previous;
+				}
+				return new FileState(size, modified, DictionaryCompiler.signature(path)[1]);
+			} catch (NoSuchFileException e) {
+				return MISSING;
+			} catch (IOException e) {
+				return previous;
+			}
+		}
+	}
+}
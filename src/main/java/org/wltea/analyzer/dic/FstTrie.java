@@ -0,0 +1,286 @@
+/**
+ * IK 中文分词  版本 5.0
+ * IK Analyzer release 5.0
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.wltea.analyzer.dic;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+import org.apache.lucene.store.DataInput;
+import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.util.IntsRef;
+import org.apache.lucene.util.IntsRefBuilder;
+import org.apache.lucene.util.fst.Builder;
+import org.apache.lucene.util.fst.FST;
+import org.apache.lucene.util.fst.IntsRefFSTEnum;
+import org.apache.lucene.util.fst.PositiveIntOutputs;
+import org.apache.lucene.util.fst.Util;
+
+/**
+ * 以Lucene FST存储的基础词典，只读
+ *
+ * FST同时共享词的前缀与后缀，词条数达数百万时占用的内存远小于双数组；代价是每次转移需在节点的弧中查找，匹配较慢，
+ * 且不支持Aho-Corasick自动机。FST位于堆内，预编译文件加载时整体读入
+ *
+ * FST中是否成词记录在进入节点的弧上，成词与不成词的弧可能指向同一个共享的节点，因此节点以
+ * (弧的目标地址 + 1) * 2 + 是否成词 表示，0为根节点。词频编码作为词的输出，查询词频时沿路径累加
+ */
+final class FstTrie extends BaseTrie {
+
+    //节点地址须能编码为int
+    private static final long MAX_ADDRESS = (1L << 30) - 2;
+
+    //为null表示空词典
+    private final FST<Long> fst;
+    //根节点的地址
+    private final long root;
+    private final long wordCount;
+    private final long nodeCount;
+    private final int maxLength;
+    //全部词的词频之和，构建时统计
+    private final double totalFrequency;
+
+    //BytesReader及弧不是线程安全的，每个线程一份
+    private final ThreadLocal<Cursor> cursors;
+
+    private volatile AdmissionFilter filter;
+
+    private FstTrie(FST<Long> fst, long wordCount, long nodeCount, int maxLength, double totalFrequency) {
+        if (fst != null && fst.ramBytesUsed() > MAX_ADDRESS) {
+            throw new IllegalArgumentException("dictionary too large for FST format: " + fst.ramBytesUsed() + " bytes");
+        }
+        this.fst = fst;
+        this.root = fst == null ? 0 : fst.getFirstArc(new FST.Arc<Long>()).target;
+        this.wordCount = wordCount;
+        this.nodeCount = nodeCount;
+        this.maxLength = maxLength;
+        this.totalFrequency = totalFrequency;
+        this.cursors = ThreadLocal.withInitial(() -> new Cursor(fst));
+    }
+
+    /**
+     * 由词条构建，词条可附带词频；同一个词多次出现时取最大的词频
+     */
+    static FstTrie compile(Collection<String> entries) throws IOException {
+        String[] words = entries.toArray(new String[0]);
+        //String按UTF-16编码单元比较，与BYTE2的标签顺序一致；制表符小于词中的字符，按词条排序后词即有序
+        Arrays.parallelSort(words);
+        int[] codes = new int[words.length];
+        boolean sorted = true;
+        for (int i = 0; i < words.length; i++) {
+            codes[i] = WordFrequency.code(words[i]);
+            words[i] = WordFrequency.word(words[i]);
+            sorted &= i == 0 || words[i - 1].compareTo(words[i]) <= 0;
+        }
+        if (!sorted) {
+            //词中含有小于制表符的控制字符，按词重新排序
+            Map<String, Integer> byWord = new TreeMap<String, Integer>();
+            for (int i = 0; i < words.length; i++) {
+                byWord.merge(words[i], codes[i], Math::max);
+            }
+            words = byWord.keySet().toArray(new String[0]);
+            int i = 0;
+            for (int code : byWord.values()) {
+                codes[i++] = code;
+            }
+        }
+
+        PositiveIntOutputs outputs = PositiveIntOutputs.getSingleton();
+        Builder<Long> builder = new Builder<Long>(FST.INPUT_TYPE.BYTE2, outputs);
+        IntsRefBuilder scratch = new IntsRefBuilder();
+        long count = 0;
+        int maxLength = 0;
+        double total = 0;
+        for (int i = 0; i < words.length; ) {
+            String word = words[i];
+            int code = codes[i];
+            for (i++; i < words.length && words[i].equals(word); i++) {
+                code = Math.max(code, codes[i]);
+            }
+            if (word.isEmpty()) {
+                continue;
+            }
+            //输出为0时须使用NO_OUTPUT
+            builder.add(Util.toUTF16(word, scratch), code == 0 ? outputs.getNoOutput() : Long.valueOf(code));
+            count++;
+            maxLength = Math.max(maxLength, word.length());
+            total += WordFrequency.decode(code);
+        }
+        //没有词条时finish返回null
+        FST<Long> fst = builder.finish();
+        return new FstTrie(fst, count, fst == null ? 0 : builder.getNodeCount(), maxLength, total);
+    }
+
+    int transition(int node, char c) {
+        if (this.fst == null) {
+            return -1;
+        }
+        Cursor cursor = this.cursors.get();
+        cursor.follow.target = node == ROOT ? this.root : (node >>> 1) - 1;
+        try {
+            FST.Arc<Long> arc = this.fst.findTargetArc(c, cursor.follow, cursor.arc, cursor.reader);
+            if (arc == null) {
+                return -1;
+            }
+            return (int) ((arc.target + 1) << 1) | (arc.isFinal() ? 1 : 0);
+        } catch (IOException e) {
+            //堆内的FST读取不会失败
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    boolean isWord(int node) {
+        return (node & 1) != 0;
+    }
+
+    boolean hasNextNode(int node) {
+        if (node == ROOT) {
+            return this.fst != null;
+        }
+        //FST.targetHasArcs：地址大于0才有出弧
+        return (node >>> 1) - 1 > 0;
+    }
+
+    int frequency(char[] charArray, int begin, int length) {
+        if (this.fst == null || length <= 0) {
+            return 0;
+        }
+        Cursor cursor = this.cursors.get();
+        try {
+            FST.Arc<Long> arc = this.fst.getFirstArc(cursor.arc);
+            long output = 0;
+            for (int i = begin, end = begin + length; i < end; i++) {
+                if (this.fst.findTargetArc(charArray[i], arc, arc, cursor.reader) == null) {
+                    return 0;
+                }
+                output += arc.output;
+            }
+            return arc.isFinal() ? (int) (output + arc.nextFinalOutput) : 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    double getTotalFrequency() {
+        return this.totalFrequency;
+    }
+
+    void forEachWord(Consumer<String> consumer) {
+        if (this.fst == null) {
+            return;
+        }
+        try {
+            IntsRefFSTEnum<Long> words = new IntsRefFSTEnum<Long>(this.fst);
+            IntsRefFSTEnum.InputOutput<Long> next;
+            while ((next = words.next()) != null) {
+                IntsRef input = next.input;
+                char[] chars = new char[input.length];
+                for (int i = 0; i < input.length; i++) {
+                    chars[i] = (char) input.ints[input.offset + i];
+                }
+                consumer.accept(new String(chars));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 获取准入过滤器，首次调用时遍历全部词条构建
+     */
+    AdmissionFilter getFilter() {
+        AdmissionFilter f = this.filter;
+        if (f == null) {
+            synchronized (this) {
+                f = this.filter;
+                if (f == null) {
+                    f = AdmissionFilter.build(this);
+                    this.filter = f;
+                }
+            }
+        }
+        return f;
+    }
+
+    long getWordCount() {
+        return this.wordCount;
+    }
+
+    /*
+     * 构建时的节点数，共享后缀后的节点数
+     */
+    long getNodeCount() {
+        return this.nodeCount;
+    }
+
+    int getMaxLength() {
+        return this.maxLength;
+    }
+
+    long ramBytesUsed() {
+        return this.fst == null ? 0 : this.fst.ramBytesUsed();
+    }
+
+    long offHeapBytesUsed() {
+        return 0;
+    }
+
+    boolean isMapped() {
+        return false;
+    }
+
+    /**
+     * 序列化：词条数、节点数、最长词长、词频之和，以及FST本身
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeVLong(this.wordCount);
+        out.writeVLong(this.nodeCount);
+        out.writeVInt(this.maxLength);
+        out.writeLong(Double.doubleToLongBits(this.totalFrequency));
+        out.writeByte((byte) (this.fst == null ? 0 : 1));
+        if (this.fst != null) {
+            this.fst.save(out);
+        }
+    }
+
+    static FstTrie readFrom(DataInput in) throws IOException {
+        long wordCount = in.readVLong();
+        long nodeCount = in.readVLong();
+        int maxLength = in.readVInt();
+        double totalFrequency = Double.longBitsToDouble(in.readLong());
+        FST<Long> fst = in.readByte() == 0 ? null : new FST<Long>(in, PositiveIntOutputs.getSingleton());
+        return new FstTrie(fst, wordCount, nodeCount, maxLength, totalFrequency);
+    }
+
+    private static final class Cursor {
+        final FST.BytesReader reader;
+        final FST.Arc<Long> follow = new FST.Arc<Long>();
+        final FST.Arc<Long> arc = new FST.Arc<Long>();
+
+        Cursor(FST<Long> fst) {
+            this.reader = fst == null ? null : fst.getBytesReader();
+        }
+    }
+}
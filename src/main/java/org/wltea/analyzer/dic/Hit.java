@@ -42,6 +42,9 @@ public class Hit { // NOTE:htt, 记录当前查找是否查找到
 	
 	//记录词典匹配过程中，当前匹配到的词典分支节点
 	private DictSegment matchedDictSegment; 
+	//记录基础词典匹配过程中，当前匹配到的词典及节点
+	private BaseTrie matchedTrie;
+	private int matchedNode;
 	/*
 	 * 词段开始位置
 	 */
@@ -90,6 +93,18 @@ public class Hit { // NOTE:htt, 记录当前查找是否查找到
 		this.hitState = UNMATCH;
 	}
 	
+	/**
+	 * 重置为从begin开始的一次新匹配，以便复用同一个Hit
+	 */
+	void reset(int begin) {
+		this.hitState = UNMATCH;
+		this.matchedDictSegment = null;
+		this.matchedTrie = null;
+		this.matchedNode = -1;
+		this.begin = begin;
+		this.end = begin;
+	}
+
 	public DictSegment getMatchedDictSegment() {
 		return matchedDictSegment;
 	}
@@ -98,6 +113,19 @@ public class Hit { // NOTE:htt, 记录当前查找是否查找到
 		this.matchedDictSegment = matchedDictSegment;
 	}
 	
+	BaseTrie getMatchedTrie() {
+		return matchedTrie;
+	}
+
+	int getMatchedNode() {
+		return matchedNode;
+	}
+
+	void setMatchedNode(BaseTrie matchedTrie, int matchedNode) {
+		this.matchedTrie = matchedTrie;
+		this.matchedNode = matchedNode;
+	}
+	
 	public int getBegin() {
 		return begin;
 	}
@@ -0,0 +1,286 @@
+/**
+ * IK 中文分词  版本 5.0
+ * IK Analyzer release 5.0
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.wltea.analyzer.dic;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.logging.log4j.Logger;
+import org.wltea.analyzer.help.ESPluginLoggerFactory;
+
+/**
+ * 分层词典
+ *
+ * 自下而上依次为：基础词典（main.dic、stopword.dic，双数组，进程内只加载一次）、本地扩展词典层、远程扩展词典层、
+ * 运行时层（addWords/disableWords）。上层对一个词的启用或屏蔽覆盖下层，各层均未设置的词以基础词典为准。
+ *
+ * 各层的词条合并为一个叠加在基础词典上的增量词典，查询时与基础词典同步向下匹配，仍然只走一遍；
+ * 某层变化时只重新计算该层变化词条的最终状态，以写时复制方式更新增量词典。非线程安全，由Dictionary加锁访问
+ *
+ * 来源的词条可附带词频，词的词频取自上而下第一个标注了该词词频的层，与状态一同写入增量词典
+ */
+final class LayeredDictionary {
+
+    //本地扩展词典层
+    static final int EXT = 0;
+    //远程扩展词典层
+    static final int REMOTE = 1;
+    //运行时层
+    static final int RUNTIME = 2;
+
+    //运行时层中addWords添加的词条作为一个来源
+    private static final String RUNTIME_SOURCE = "<runtime>";
+
+    private static final Logger logger = ESPluginLoggerFactory.getLogger(LayeredDictionary.class.getName());
+
+    private final String name;
+    private final BaseTrie base;
+    private final Layer[] layers = { new Layer(), new Layer(), new Layer() };
+    //各层合并后叠加在基础词典上的词典
+    private OverlayTrie trie;
+
+    LayeredDictionary(String name, BaseTrie base) {
+        this.name = name;
+        this.base = base;
+        this.trie = new OverlayTrie(base, null);
+    }
+
+    BaseTrie getBase() {
+        return this.base;
+    }
+
+    OverlayTrie getTrie() {
+        return this.trie;
+    }
+
+    /**
+     * 某层当前的全部来源
+     */
+    Set<String> getSources(int layer) {
+        return Collections.unmodifiableSet(this.layers[layer].sources.keySet());
+    }
+
+    /**
+     * 加载时设置某层一个来源的词条，之后需调用build
+     */
+    void putSource(int layer, String source, Set<String> words) {
+        this.layers[layer].sources.put(source, parse(words));
+    }
+
+    /**
+     * 沿用另一个分层词典中某层的词条，之后需调用build
+     */
+    void copyLayer(int layer, LayeredDictionary other) {
+        Layer from = other.layers[layer];
+        Layer to = this.layers[layer];
+        for (Map.Entry<String, Map<String, Long>> source : from.sources.entrySet()) {
+            to.sources.put(source.getKey(), new HashMap<String, Long>(source.getValue()));
+        }
+        to.disabled.addAll(from.disabled);
+    }
+
+    /**
+     * 以各层的词条构建叠加词典：启用的词并行构建词典树，屏蔽的词随后写入
+     * @return OverlayTrie
+     */
+    OverlayTrie build() {
+        Set<String> words = new HashSet<String>();
+        for (Layer layer : this.layers) {
+            for (Map<String, Long> sourceWords : layer.sources.values()) {
+                words.addAll(sourceWords.keySet());
+            }
+            words.addAll(layer.disabled);
+        }
+        List<String> enabled = new ArrayList<String>(words.size());
+        Map<String, Integer> disabled = new HashMap<String, Integer>();
+        for (String word : words) {
+            if (state(word) == 1) {
+                enabled.add(WordFrequency.entry(word, frequency(word)));
+            } else {
+                disabled.put(word, 2);
+            }
+        }
+        DictSegment overlay = enabled.isEmpty() ? null : DictionaryCompiler.build(enabled);
+        this.trie = new OverlayTrie(this.base, overlay).update(disabled);
+        return this.trie;
+    }
+
+    /**
+     * 以来源的新内容替换其在某层中原有的词条，只重新计算新增及删除词条的最终状态
+     * @param layer EXT 或 REMOTE
+     * @param source 本地文件路径或远程地址
+     * @param entries 来源当前的全部词条，为空则移除该来源
+     * @return 叠加词典是否变化
+     */
+    boolean updateSource(int layer, String source, Set<String> entries) {
+        long start = System.nanoTime();
+        Map<String, Map<String, Long>> sources = this.layers[layer].sources;
+        Map<String, Long> previous = sources.containsKey(source) ? sources.get(source)
+                : Collections.<String, Long>emptyMap();
+        Map<String, Long> words = parse(entries);
+        //词频变化的词也作为新增词条重新计算
+        List<String> added = new ArrayList<String>();
+        List<String> removed = new ArrayList<String>();
+        for (Map.Entry<String, Long> word : words.entrySet()) {
+            if (!word.getValue().equals(previous.get(word.getKey()))) {
+                added.add(word.getKey());
+            }
+        }
+        for (String word : previous.keySet()) {
+            if (!words.containsKey(word)) {
+                removed.add(word);
+            }
+        }
+        if (words.isEmpty()) {
+            sources.remove(source);
+        } else {
+            sources.put(source, words);
+        }
+        if (added.isEmpty() && removed.isEmpty()) {
+            return false;
+        }
+
+        Map<String, Integer> changes = new HashMap<String, Integer>();
+        for (String word : added) {
+            changes.put(word, change(word));
+        }
+        for (String word : removed) {
+            changes.put(word, change(word));
+        }
+        this.trie = this.trie.update(changes);
+        logger.info("[Dict Reloading] {} layer {} {}: {} added, {} removed, {} ms", this.name, layer, source,
+                added.size(), removed.size(), (System.nanoTime() - start) / 1000000);
+        return true;
+    }
+
+    /**
+     * 在运行时层启用或屏蔽词条，覆盖下层中的同一个词
+     * @param state 1启用，2屏蔽
+     */
+    void setRuntimeState(Collection<String> words, int state) {
+        Layer runtime = this.layers[RUNTIME];
+        Map<String, Long> runtimeWords = runtime.sources.get(RUNTIME_SOURCE);
+        if (runtimeWords == null) {
+            runtimeWords = new HashMap<String, Long>();
+            runtime.sources.put(RUNTIME_SOURCE, runtimeWords);
+        }
+        Map<String, Integer> changes = new HashMap<String, Integer>();
+        for (String word : words) {
+            if (state == 1) {
+                runtimeWords.put(word, 0L);
+                runtime.disabled.remove(word);
+            } else {
+                runtimeWords.remove(word);
+                runtime.disabled.add(word);
+            }
+            changes.put(word, change(word));
+        }
+        this.trie = this.trie.update(changes);
+    }
+
+    /**
+     * 词的最终状态：自上而下第一个设置了该词的层为准
+     * @return 1启用，2屏蔽，0各层均未设置，以基础词典为准
+     */
+    private int state(String word) {
+        for (int i = this.layers.length - 1; i >= 0; i--) {
+            int state = this.layers[i].state(word);
+            if (state != 0) {
+                return state;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 词的词频：自上而下第一个标注了该词词频的层为准，遇到屏蔽该词的层为止
+     * @return 词频，0表示未标注
+     */
+    private long frequency(String word) {
+        for (int i = this.layers.length - 1; i >= 0; i--) {
+            Layer layer = this.layers[i];
+            if (layer.disabled.contains(word)) {
+                return 0;
+            }
+            long frequency = layer.frequency(word);
+            if (frequency > 0) {
+                return frequency;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 词的最终状态及词频，写入增量词典
+     */
+    private int change(String word) {
+        int state = state(word);
+        return OverlayTrie.change(state, state == 1 ? WordFrequency.encode(frequency(word)) : 0);
+    }
+
+    /**
+     * 解析来源的词条：词 -> 词频，同一个词多次出现时取最大的词频
+     */
+    private static Map<String, Long> parse(Set<String> entries) {
+        Map<String, Long> words = new HashMap<String, Long>(Math.max(16, entries.size() * 4 / 3 + 1));
+        for (String entry : entries) {
+            words.merge(WordFrequency.word(entry), WordFrequency.frequency(entry), Math::max);
+        }
+        return words;
+    }
+
+    private static final class Layer {
+        //来源 -> 该来源启用的词条及其词频，0表示未标注
+        final Map<String, Map<String, Long>> sources = new LinkedHashMap<String, Map<String, Long>>();
+        //本层屏蔽的词条
+        final Set<String> disabled = new HashSet<String>();
+
+        int state(String word) {
+            if (this.disabled.contains(word)) {
+                return 2;
+            }
+            for (Map<String, Long> words : this.sources.values()) {
+                if (words.containsKey(word)) {
+                    return 1;
+                }
+            }
+            return 0;
+        }
+
+        long frequency(String word) {
+            long frequency = 0;
+            for (Map<String, Long> words : this.sources.values()) {
+                Long f = words.get(word);
+                if (f != null) {
+                    frequency = Math.max(frequency, f);
+                }
+            }
+            return frequency;
+        }
+    }
+}
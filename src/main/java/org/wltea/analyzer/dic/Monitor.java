@@ -1,14 +1,15 @@
 package org.wltea.analyzer.dic;
 
-import java.io.IOException;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpHead;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.apache.logging.log4j.Logger;
 import org.elasticsearch.SpecialPermission;
 import org.wltea.analyzer.help.ESPluginLoggerFactory;
@@ -17,7 +18,12 @@ public class Monitor implements Runnable { // NOTE:htt, 监控远程词库是否
 
 	private static final Logger logger = ESPluginLoggerFactory.getLogger(Monitor.class.getName());
 
-	private static CloseableHttpClient httpclient = HttpClients.createDefault();
+	//失败后的最大退避：间隔的 2^MAX_BACKOFF - 1 倍
+	private static final int MAX_BACKOFF = 4;
+
+	//首次检查的延迟
+	private static final long INITIAL_DELAY = 10 * 1000;
+
 	/*
 	 * 上次更改时间
 	 */
@@ -32,18 +38,84 @@ public class Monitor implements Runnable { // NOTE:htt, 监控远程词库是否
 	 */
 	private String location; // NOTE:htt, 远程连接地址
 
-	public Monitor(String location) {
+	/*
+	 * 该地址所属的词典集合
+	 */
+	private final Dictionary dictionary;
+
+	/*
+	 * 检查间隔及随机抖动（毫秒），抖动避免各节点同时请求词库服务器
+	 */
+	private final long interval;
+	private final long jitter;
+
+	/*
+	 * 长轮询时服务器最多挂起请求的时间（毫秒），为0时使用普通轮询
+	 */
+	private final long longPollTimeout;
+
+	/*
+	 * 连续失败的次数
+	 */
+	private int failures;
+
+	/*
+	 * 是否已从本地缓存取得上次下载时的Last-Modified、ETag
+	 */
+	private boolean seeded;
+
+	private ScheduledExecutorService pool;
+
+	public Monitor(Dictionary dictionary, String location) {
+		this(dictionary, location, 60 * 1000, 0, 0);
+	}
+
+	/**
+	 * @param interval 检查间隔（毫秒）
+	 * @param jitter 每次检查额外延迟 [0, jitter] 毫秒
+	 * @param longPollTimeout 长轮询的挂起时间（毫秒），为0时使用普通轮询
+	 */
+	public Monitor(Dictionary dictionary, String location, long interval, long jitter, long longPollTimeout) {
+		this.dictionary = dictionary;
 		this.location = location;
 		this.last_modified = null;
 		this.eTags = null;
+		this.interval = interval;
+		this.jitter = jitter;
+		this.longPollTimeout = longPollTimeout;
+	}
+
+	boolean isLongPoll() {
+		return longPollTimeout > 0;
+	}
+
+	/**
+	 * 在线程池中开始检查，每次检查结束后按结果安排下一次
+	 */
+	void start(ScheduledExecutorService pool) {
+		this.pool = pool;
+		schedule(INITIAL_DELAY);
+	}
+
+	private void schedule(long delay) {
+		if (jitter > 0) {
+			delay += ThreadLocalRandom.current().nextLong(jitter + 1);
+		}
+		try {
+			pool.schedule(this, delay, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			// 线程池已关闭，停止检查
+		}
 	}
 
 	public void run() { // NOTE:htt, 重新加载主词库、用户扩展词库、 远程词库 和 停用词
 		SpecialPermission.check();
-		AccessController.doPrivileged((PrivilegedAction<Void>) () -> {
-			this.runUnprivileged();
-			return null;
+		long delay = AccessController.doPrivileged((PrivilegedAction<Long>) () -> {
+			return this.runUnprivileged();
 		});
+		if (pool != null) {
+			schedule(delay);
+		}
 	}
 
 	/**
@@ -53,13 +125,48 @@ public class Monitor implements Runnable { // NOTE:htt, 监控远程词库是否
 	 *  ③如果未变化，休眠1min，返回第①步
 	 * 	④如果有变化，重新加载词典
 	 *  ⑤休眠1min，返回第①步
+	 *
+	 * 请求或重新加载失败时按检查间隔的 1、3、7、15 倍退避，成功后恢复原间隔
+	 *
+	 * 长轮询时请求带上 Prefer: wait=秒数，服务器可以挂起请求直到词库变化或超时；请求被挂起过或词库有变化时立即发起下一次，
+	 * 服务器不支持而立即返回时按检查间隔继续，与普通轮询相同
+	 *
+	 * @return 到下一次检查的延迟（毫秒）
 	 */
+	public long runUnprivileged() { // NOTE:htt, 重新加载主词库、用户扩展词库、 远程词库 和 停用词
+		long start = System.nanoTime();
+		int result = check();
+		if (result < 0) {
+			failures = Math.min(failures + 1, MAX_BACKOFF);
+			return interval * ((1 << failures) - 1);
+		}
+		failures = 0;
+		if (isLongPoll()) {
+			long elapsed = (System.nanoTime() - start) / 1000000;
+			if (result > 0 || elapsed >= longPollTimeout / 2) {
+				return 0;
+			}
+		}
+		return interval;
+	}
 
-	public void runUnprivileged() { // NOTE:htt, 重新加载主词库、用户扩展词库、 远程词库 和 停用词
+	/**
+	 * @return 1远程词库有更新且重新加载成功，0未变化，-1请求或重新加载失败
+	 */
+	private int check() {
+		// 启动时使用了本地缓存的词条，以缓存的版本标识比较，远程未变化时无需重新下载
+		if (!seeded) {
+			seeded = true;
+			RemoteDictionaryCache.Entry cached = RemoteDictionary.cached(location);
+			if (cached != null) {
+				last_modified = cached.lastModified;
+				eTags = cached.eTag;
+			}
+		}
 
-		//超时设置
+		//超时设置，长轮询时读超时需长于服务器挂起的时间
 		RequestConfig rc = RequestConfig.custom().setConnectionRequestTimeout(10*1000)
-				.setConnectTimeout(10*1000).setSocketTimeout(15*1000).build();
+				.setConnectTimeout(10*1000).setSocketTimeout((int) (15*1000 + longPollTimeout)).build();
 
 		HttpHead head = new HttpHead(location);
 		head.setConfig(rc);
@@ -71,11 +178,11 @@ public class Monitor implements Runnable { // NOTE:htt, 监控远程词库是否
 		if (eTags != null) {
 			head.setHeader("If-None-Match", eTags);
 		}
+		if (isLongPoll()) {
+			head.setHeader("Prefer", "wait=" + longPollTimeout / 1000);
+		}
 
-		CloseableHttpResponse response = null;
-		try {
-
-			response = httpclient.execute(head);
+		try (CloseableHttpResponse response = RemoteDictionary.client().execute(head)) {
 
 			//返回200 才做操作
 			if(response.getStatusLine().getStatusCode()==200){
@@ -84,27 +191,25 @@ public class Monitor implements Runnable { // NOTE:htt, 监控远程词库是否
 						||((response.getLastHeader("ETag")!=null) && !response.getLastHeader("ETag").getValue().equalsIgnoreCase(eTags))) {
 
 					// 远程词库有更新,需要重新加载词典，并修改last_modified,eTags
-					Dictionary.getSingleton().reLoadMainDict(); // NOTE:htt, 如果远程词库有更新，则重新加载主词库、用户扩展词库、 远程词库 和 停用词
+					if (!dictionary.reloadRemoteDict(location)) { // NOTE:htt, 如果远程词库有更新，则增量更新该地址贡献的词条
+						// 加载失败时不记录新的last_modified,eTags，下次检查时重试
+						return -1;
+					}
 					last_modified = response.getLastHeader("Last-Modified")==null?null:response.getLastHeader("Last-Modified").getValue(); // NOTE:htt, 更新 last modified 时间
 					eTags = response.getLastHeader("ETag")==null?null:response.getLastHeader("ETag").getValue(); // NOTE:htt, 更新 ETag
+					return 1;
 				}
 			}else if (response.getStatusLine().getStatusCode()==304) {
 				//没有修改，不做操作
 				//noop
 			}else{
 				logger.info("remote_ext_dict {} return bad code {}" , location , response.getStatusLine().getStatusCode() );
+				return -1;
 			}
-
+			return 0;
 		} catch (Exception e) {
-			logger.error("remote_ext_dict {} error!",e , location);
-		}finally{
-			try {
-				if (response != null) {
-					response.close();
-				}
-			} catch (IOException e) {
-				logger.error(e.getMessage(), e);
-			}
+			logger.error("remote_ext_dict " + location + " error!", e);
+			return -1;
 		}
 	}
 
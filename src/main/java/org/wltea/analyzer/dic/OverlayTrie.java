@@ -0,0 +1,276 @@
+/**
+ * IK 中文分词  版本 5.0
+ * IK Analyzer release 5.0
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.wltea.analyzer.dic;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 叠加了增量词典的双数组词典，不可变
+ *
+ * 双数组为基础词典（如main.dic），扩展词典、远程词典及运行时增删的词条保存在增量词典树中。
+ * 查询时两者同步向下匹配：增量词典中启用或屏蔽的词覆盖基础词典，未设置的沿用基础词典。
+ * 更新以写时复制方式生成新的增量词典，只复制变化词条路径上的节点，代价与变化量成正比
+ */
+final class OverlayTrie {
+
+    private final BaseTrie base;
+    //增量词典，为null表示没有增量
+    private final DictSegment overlay;
+    //增量词典编译成的Aho-Corasick自动机，首次使用时构建
+    private volatile AhoCorasick overlayAutomaton;
+    //叠加增量词典后的准入过滤器，首次使用时构建
+    private volatile AdmissionFilter filter;
+
+    OverlayTrie(BaseTrie base, DictSegment overlay) {
+        this.base = base;
+        this.overlay = overlay;
+    }
+
+    BaseTrie getBase() {
+        return this.base;
+    }
+
+    DictSegment getOverlay() {
+        return this.overlay;
+    }
+
+    /**
+     * 增量词典的Aho-Corasick自动机，没有增量时返回null
+     * 增量词典随每次更新整体替换，自动机按需由增量词典编译，代价与增量词条数成正比
+     */
+    AhoCorasick getOverlayAutomaton() {
+        if (this.overlay == null) {
+            return null;
+        }
+        AhoCorasick ac = this.overlayAutomaton;
+        if (ac == null) {
+            synchronized (this) {
+                ac = this.overlayAutomaton;
+                if (ac == null) {
+                    ac = DoubleArrayTrie.compile(this.overlay).getAutomaton();
+                    this.overlayAutomaton = ac;
+                }
+            }
+        }
+        return ac;
+    }
+
+    /**
+     * 叠加增量词典后的准入过滤器；没有增量时即为基础词典的过滤器
+     */
+    AdmissionFilter getFilter() {
+        if (this.overlay == null) {
+            return this.base.getFilter();
+        }
+        AdmissionFilter f = this.filter;
+        if (f == null) {
+            synchronized (this) {
+                f = this.filter;
+                if (f == null) {
+                    f = this.base.getFilter().withOverlay(this.overlay);
+                    this.filter = f;
+                }
+            }
+        }
+        return f;
+    }
+
+    /**
+     * 词段在增量词典中的状态
+     * @return 1启用，2屏蔽，0未设置，以基础词典为准
+     */
+    int overlayState(char[] charArray, int begin, int length) {
+        DictSegment ds = this.overlay;
+        for (int i = begin, end = begin + length; i < end && ds != null; i++) {
+            ds = ds.lookup(charArray[i]);
+        }
+        if (ds == null) {
+            return 0;
+        }
+        return ds.isWord() ? 1 : ds.isDisabled() ? 2 : 0;
+    }
+
+    /**
+     * 词段的词频编码：增量词典中启用且标注了词频的词以增量词典为准，屏蔽的词为0，其余以基础词典为准
+     * @return 词频编码，不是词或未标注时为0
+     */
+    int frequency(char[] charArray, int begin, int length) {
+        DictSegment ds = this.overlay;
+        for (int i = begin, end = begin + length; i < end && ds != null; i++) {
+            ds = ds.lookup(charArray[i]);
+        }
+        if (ds != null && ds.isDisabled()) {
+            return 0;
+        }
+        if (ds != null && ds.isWord() && ds.getFrequency() != 0) {
+            return ds.getFrequency();
+        }
+        return this.base.frequency(charArray, begin, length);
+    }
+
+    /**
+     * 匹配词段
+     * @param charArray
+     * @param begin
+     * @param length
+     * @return Hit
+     */
+    Hit match(char[] charArray, int begin, int length) {
+        return match(charArray, begin, length, new Hit());
+    }
+
+    /**
+     * 匹配词段，结果写入传入的Hit，不分配对象
+     * @return searchHit
+     */
+    Hit match(char[] charArray, int begin, int length, Hit searchHit) {
+        searchHit.reset(begin);
+        return match(this.base, BaseTrie.ROOT, this.overlay, charArray, begin, length, searchHit);
+    }
+
+    /**
+     * 从Hit记录的前缀节点继续向下匹配一个字符
+     * Hit记录了产生它的基础词典及增量词典节点，因此总是在同一版本的词典上继续匹配
+     * @return Hit
+     */
+    static Hit matchWithHit(char[] charArray, int currentIndex, Hit matchedHit) {
+        matchedHit.setUnmatch();
+        return match(matchedHit.getMatchedTrie(), matchedHit.getMatchedNode(), matchedHit.getMatchedDictSegment(),
+                charArray, currentIndex, 1, matchedHit);
+    }
+
+    private static Hit match(BaseTrie base, int node, DictSegment segment, char[] charArray, int begin,
+            int length, Hit searchHit) {
+        if (length <= 0) {
+            return searchHit;
+        }
+        int s = node;
+        DictSegment ds = segment;
+        for (int i = begin, end = begin + length; i < end; i++) {
+            searchHit.setEnd(i);
+            if (s >= 0) {
+                s = base.transition(s, charArray[i]);
+            }
+            if (ds != null) {
+                ds = ds.lookup(charArray[i]);
+            }
+            if (s < 0 && ds == null) {
+                return searchHit;
+            }
+        }
+
+        //增量词典中启用或屏蔽的词优先，否则以基础词典为准
+        boolean word;
+        if (ds != null && (ds.isWord() || ds.isDisabled())) {
+            word = ds.isWord();
+        } else {
+            word = s >= 0 && base.isWord(s);
+        }
+        if (word) {
+            searchHit.setMatch();
+        }
+        boolean baseNext = s >= 0 && base.hasNextNode(s);
+        boolean overlayNext = ds != null && ds.hasNextNode();
+        if (baseNext || overlayNext) {
+            searchHit.setPrefix();
+            searchHit.setMatchedNode(base, baseNext ? s : -1);
+            searchHit.setMatchedDictSegment(overlayNext ? ds : null);
+        }
+        return searchHit;
+    }
+
+    /**
+     * 叠加后全部启用的词条：基础词典中增量词典未设置的词，以及增量词典中启用的词
+     */
+    List<String> words() {
+        List<String> words = new ArrayList<String>();
+        this.base.forEachWord(word -> {
+            if (this.overlay == null || overlayState(word.toCharArray(), 0, word.length()) == 0) {
+                words.add(word);
+            }
+        });
+        if (this.overlay != null) {
+            collectWords(this.overlay, new StringBuilder(), words);
+        }
+        return words;
+    }
+
+    private static void collectWords(DictSegment ds, StringBuilder path, List<String> words) {
+        for (DictSegment child : ds.getChildren()) {
+            path.append(child.getNodeChar());
+            if (child.isWord()) {
+                words.add(path.toString());
+            }
+            collectWords(child, path, words);
+            path.setLength(path.length() - 1);
+        }
+    }
+
+    /**
+     * 词条变化的取值：低2位为状态，其上为启用的词的词频编码
+     * @param state 1启用，2屏蔽，0恢复为基础词典中的状态
+     * @param frequency 词频编码，0表示未标注
+     */
+    static int change(int state, int frequency) {
+        return state | frequency << 2;
+    }
+
+    /**
+     * 以写时复制方式更新增量词典，当前对象不变
+     * @param changes 词条 -> 变化，由change生成；只有状态时即为状态，1启用，2屏蔽，0恢复为基础词典中的状态
+     * @return 更新后的词典
+     */
+    OverlayTrie update(Map<String, Integer> changes) {
+        if (changes.isEmpty()) {
+            return this;
+        }
+        DictSegment root = this.overlay == null ? new DictSegment((char) 0) : this.overlay.copy();
+        Set<DictSegment> copied = Collections.newSetFromMap(new IdentityHashMap<DictSegment, Boolean>());
+        copied.add(root);
+        for (Map.Entry<String, Integer> change : changes.entrySet()) {
+            int value = change.getValue();
+            root.updateSegment(change.getKey().toCharArray(), value & 3, value >>> 2, copied);
+        }
+        return new OverlayTrie(this.base, root.hasNextNode() ? root : null);
+    }
+
+    /**
+     * 占用的堆内存字节数：基础词典，以及增量词典树及其已构建的自动机
+     */
+    long ramBytesUsed() {
+        AhoCorasick ac = this.overlayAutomaton;
+        return this.base.ramBytesUsed() + (this.overlay == null ? 0 : this.overlay.ramBytesUsed())
+                + (ac == null ? 0 : ac.ramBytesUsed());
+    }
+
+    long offHeapBytesUsed() {
+        return this.base.offHeapBytesUsed();
+    }
+
+    boolean isMapped() {
+        return this.base.isMapped();
+    }
+}
@@ -0,0 +1,345 @@
+package org.wltea.analyzer.dic;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.SpecialPermission;
+import org.wltea.analyzer.help.ESPluginLoggerFactory;
+
+/**
+ * 远程扩展词典的下载
+ *
+ * 响应体边读边解析，不依赖Content-Length，分块传输（chunked）的响应同样可以读取；Content-Encoding为gzip时由HttpClient解压，
+ * 响应体本身是gzip文件（如 .dic.gz）时按魔数识别后解压。读取使用固定大小的缓冲，超过MAX_WORD_LENGTH的行视为非法内容跳过
+ *
+ * 所有词典集合的远程检查（Monitor）与下载共用一个带连接池的HttpClient，下载在独立的线程池中并发执行，
+ * 不占用构建词典的线程；每个请求单独设置超时，一个地址响应慢不影响其它地址。节点关闭时由close释放
+ *
+ * 设置了缓存目录时，每次下载成功的词条写入RemoteDictionaryCache，启动时可直接使用并以条件请求重新验证
+ */
+final class RemoteDictionary {
+
+	private static final Logger logger = ESPluginLoggerFactory.getLogger(RemoteDictionary.class.getName());
+
+	//读取缓冲的大小（字符）
+	private static final int BUFFER_SIZE = 8192;
+	//单个词条的最大长度，更长的行被跳过
+	static final int MAX_WORD_LENGTH = 256;
+
+	//连接池大小；长轮询的请求会一直占用连接，同一服务器的连接数不宜过少
+	private static final int MAX_CONNECTIONS = 32;
+	private static final int MAX_CONNECTIONS_PER_ROUTE = 16;
+	//并发下载的线程数
+	private static final int FETCH_THREADS = 4;
+
+	private static final AtomicInteger threadCount = new AtomicInteger();
+
+	private static CloseableHttpClient httpclient;
+	private static ExecutorService fetchPool;
+	private static RemoteDictionaryCache cache;
+
+	private RemoteDictionary() {
+	}
+
+	/**
+	 * 共用的HttpClient，首次使用时创建
+	 */
+	static synchronized CloseableHttpClient client() {
+		if (httpclient == null) {
+			PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+			connectionManager.setMaxTotal(MAX_CONNECTIONS);
+			connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_ROUTE);
+			httpclient = HttpClients.custom().setConnectionManager(connectionManager).evictExpiredConnections()
+					.evictIdleConnections(60, TimeUnit.SECONDS).build();
+		}
+		return httpclient;
+	}
+
+	/**
+	 * 设置远程词典的缓存目录，为null时不缓存
+	 */
+	static synchronized void setCacheDir(Path dir) {
+		cache = dir == null ? null : new RemoteDictionaryCache(dir);
+	}
+
+	private static synchronized RemoteDictionaryCache cache() {
+		return cache;
+	}
+
+	/**
+	 * 在下载线程池中异步下载远程词条
+	 * @return 结果同load
+	 */
+	static Future<Set<String>> fetch(String location) {
+		return submit(() -> load(location));
+	}
+
+	/**
+	 * 在下载线程池中执行任务
+	 */
+	static <T> Future<T> submit(Callable<T> task) {
+		ExecutorService pool;
+		synchronized (RemoteDictionary.class) {
+			if (fetchPool == null) {
+				fetchPool = Executors.newFixedThreadPool(FETCH_THREADS, runnable -> {
+					Thread thread = new Thread(runnable, "ik-dict-fetch-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+			}
+			pool = fetchPool;
+		}
+		return pool.submit(task);
+	}
+
+	/**
+	 * 关闭下载线程池及连接池，之后再使用时重新创建
+	 */
+	static synchronized void close() {
+		if (fetchPool != null) {
+			fetchPool.shutdownNow();
+			fetchPool = null;
+		}
+		if (httpclient != null) {
+			try {
+				httpclient.close();
+			} catch (IOException e) {
+				logger.error("[Dict Loading] close http client error", e);
+			}
+			httpclient = null;
+		}
+	}
+
+	/**
+	 * 读取地址的本地缓存
+	 * @return 未设置缓存目录或缓存不可用时返回null
+	 */
+	static RemoteDictionaryCache.Entry cached(String location) {
+		RemoteDictionaryCache cache = cache();
+		if (cache == null) {
+			return null;
+		}
+		SpecialPermission.check();
+		return AccessController.doPrivileged(
+				(PrivilegedAction<RemoteDictionaryCache.Entry>) () -> cache.read(location));
+	}
+
+	/**
+	 * 下载远程词条，去除首尾空白并转为小写
+	 * @return 词条；请求失败或返回码不是200时为null，调用方保留原有词条
+	 */
+	static Set<String> load(String location) { // NOTE:htt, 从远程获取分词列表
+		RemoteDictionaryCache.Entry entry = get(location, null);
+		return entry == null ? null : entry.words;
+	}
+
+	/**
+	 * 以缓存的ETag、Last-Modified发送条件请求，重新验证缓存的词条
+	 * @return 远程词条已变化时返回新的词条；未变化或请求失败时返回null
+	 */
+	static Set<String> revalidate(String location, RemoteDictionaryCache.Entry cached) {
+		RemoteDictionaryCache.Entry entry = get(location, cached);
+		return entry == null || entry == cached ? null : entry.words;
+	}
+
+	private static RemoteDictionaryCache.Entry get(String location, RemoteDictionaryCache.Entry cached) {
+		SpecialPermission.check();
+		return AccessController.doPrivileged(
+				(PrivilegedAction<RemoteDictionaryCache.Entry>) () -> getUnprivileged(location, cached));
+	}
+
+	/**
+	 * @return 下载的词条及版本标识；远程未变化时返回cached；请求失败时返回null
+	 */
+	private static RemoteDictionaryCache.Entry getUnprivileged(String location, RemoteDictionaryCache.Entry cached) {
+		long start = System.nanoTime();
+		RequestConfig rc = RequestConfig.custom().setConnectionRequestTimeout(10 * 1000).setConnectTimeout(10 * 1000)
+				.setSocketTimeout(60 * 1000).build();
+		HttpGet get = new HttpGet(location);
+		get.setConfig(rc);
+		if (cached != null && cached.eTag != null) {
+			get.setHeader("If-None-Match", cached.eTag);
+		}
+		if (cached != null && cached.lastModified != null) {
+			get.setHeader("If-Modified-Since", cached.lastModified);
+		}
+		try (CloseableHttpResponse response = client().execute(get)) {
+			int code = response.getStatusLine().getStatusCode();
+			if (code == 304 && cached != null) {
+				logger.info("[Dict Loading] {} not modified, {} ms", location, (System.nanoTime() - start) / 1000000);
+				return cached;
+			}
+			if (code != 200) {
+				logger.error("[Dict Loading] {} return bad code {}", location, code);
+				return null;
+			}
+
+			Set<String> words = new HashSet<String>();
+			RemoteDictionaryCache.Entry entry = new RemoteDictionaryCache.Entry(words, header(response, "ETag"),
+					header(response, "Last-Modified"));
+			HttpEntity entity = response.getEntity();
+			if (entity != null) {
+				// 获取编码，默认为utf-8
+				ContentType contentType = ContentType.get(entity);
+				Charset charset = contentType != null && contentType.getCharset() != null ? contentType.getCharset()
+						: StandardCharsets.UTF_8;
+				CountingInputStream counting = new CountingInputStream(entity.getContent());
+				int skipped;
+				try (Reader reader = new InputStreamReader(decode(counting), charset)) {
+					skipped = readWords(reader, word -> words.add(word.toLowerCase())); // NOTE:htt, 从远程连接加载内容构建词典
+				}
+				logger.info("[Dict Loading] {}: {} bytes, {} words, {} skipped, {} ms", location, counting.count,
+						words.size(), skipped, (System.nanoTime() - start) / 1000000);
+			}
+			RemoteDictionaryCache cache = cache();
+			if (cache != null) {
+				cache.write(location, entry);
+			}
+			return entry;
+		} catch (IOException | RuntimeException e) {
+			logger.error("[Dict Loading] " + location + " error", e);
+			return null;
+		}
+	}
+
+	private static String header(CloseableHttpResponse response, String name) {
+		Header header = response.getLastHeader(name);
+		return header == null ? null : header.getValue();
+	}
+
+	/**
+	 * 响应体以gzip魔数开头时解压
+	 */
+	private static InputStream decode(InputStream in) throws IOException {
+		BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+		buffered.mark(2);
+		int b1 = buffered.read();
+		int b2 = buffered.read();
+		buffered.reset();
+		if (b1 == 0x1f && b2 == 0x8b) {
+			return new GZIPInputStream(buffered, BUFFER_SIZE);
+		}
+		return buffered;
+	}
+
+	/**
+	 * 逐行读取词条，去除BOM及首尾空白，忽略空行；每行最多缓存MAX_WORD_LENGTH个字符，超长的行只记数并跳过
+	 * @return 跳过的行数
+	 */
+	static int readWords(Reader reader, Consumer<String> consumer) throws IOException {
+		char[] buffer = new char[BUFFER_SIZE];
+		char[] line = new char[MAX_WORD_LENGTH];
+		int length = 0;
+		boolean overflow = false;
+		boolean first = true;
+		int skipped = 0;
+		int n;
+		while ((n = reader.read(buffer)) != -1) {
+			int i = 0;
+			if (first && n > 0) {
+				first = false;
+				if (buffer[0] == '\uFEFF') {
+					i = 1;
+				}
+			}
+			for (; i < n; i++) {
+				char c = buffer[i];
+				if (c == '\n' || c == '\r') {
+					skipped += accept(line, length, overflow, consumer);
+					length = 0;
+					overflow = false;
+				} else if (length < line.length) {
+					line[length++] = c;
+				} else {
+					overflow = true;
+				}
+			}
+		}
+		skipped += accept(line, length, overflow, consumer);
+		return skipped;
+	}
+
+	private static int accept(char[] line, int length, boolean overflow, Consumer<String> consumer) {
+		if (overflow) {
+			return 1;
+		}
+		int begin = 0;
+		int end = length;
+		while (begin < end && line[begin] <= ' ') {
+			begin++;
+		}
+		while (end > begin && line[end - 1] <= ' ') {
+			end--;
+		}
+		if (begin < end) {
+			consumer.accept(new String(line, begin, end - begin));
+		}
+		return 0;
+	}
+
+	/**
+	 * 统计读取的字节数
+	 */
+	private static final class CountingInputStream extends FilterInputStream {
+
+		long count;
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b != -1) {
+				count++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0) {
+				count += n;
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			count += skipped;
+			return skipped;
+		}
+	}
+}
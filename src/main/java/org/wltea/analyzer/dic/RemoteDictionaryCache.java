@@ -0,0 +1,165 @@
+package org.wltea.analyzer.dic;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import org.apache.logging.log4j.Logger;
+import org.wltea.analyzer.help.ESPluginLoggerFactory;
+
+/**
+ * 远程词典的本地缓存
+ *
+ * 每个远程地址最近一次下载成功的词条及其ETag、Last-Modified保存在缓存目录下的一个二进制文件中，文件名为地址的SHA-1。
+ * 启动时直接使用缓存的词条，不等待远程服务器，随后在后台以条件请求重新验证；远程服务器不可用时节点仍以上次的词条启动
+ *
+ * 文件格式：魔数、版本、地址、ETag、Last-Modified、词条数、各词条，末尾为之前全部内容的CRC32
+ */
+final class RemoteDictionaryCache {
+
+	//文件魔数 "IKRC"
+	private static final int MAGIC = 0x494B5243;
+	//格式版本
+	private static final int FORMAT_VERSION = 1;
+	private static final String SUFFIX = ".cache";
+
+	private static final Logger logger = ESPluginLoggerFactory.getLogger(RemoteDictionaryCache.class.getName());
+
+	private final Path dir;
+
+	RemoteDictionaryCache(Path dir) {
+		this.dir = dir;
+	}
+
+	/**
+	 * 读取地址的缓存
+	 * @return 缓存不存在、格式不符或已损坏时返回null
+	 */
+	Entry read(String location) {
+		Path file = file(location);
+		if (!Files.isRegularFile(file)) {
+			return null;
+		}
+		CRC32 crc = new CRC32();
+		try (InputStream is = Files.newInputStream(file);
+				DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(is), crc))) {
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !location.equals(in.readUTF())) {
+				logger.info("[Dict Loading] {} has unsupported format, ignored", file);
+				return null;
+			}
+			String eTag = readNullable(in);
+			String lastModified = readNullable(in);
+			int count = in.readInt();
+			Set<String> words = new HashSet<String>(Math.max(16, count * 4 / 3 + 1));
+			for (int i = 0; i < count; i++) {
+				words.add(in.readUTF());
+			}
+			long expected = crc.getValue();
+			if (in.readLong() != expected) {
+				logger.warn("[Dict Loading] {} is corrupted, ignored", file);
+				return null;
+			}
+			return new Entry(words, eTag, lastModified);
+		} catch (IOException e) {
+			logger.warn("[Dict Loading] unable to read {}: {}", file, e.toString());
+			return null;
+		}
+	}
+
+	/**
+	 * 写出地址的缓存，先写临时文件再原子替换；写入失败只记录日志，不影响词典的加载
+	 */
+	void write(String location, Entry entry) {
+		Path file = file(location);
+		try {
+			if (!Files.isDirectory(this.dir)) {
+				Files.createDirectories(this.dir);
+			}
+			Path tmp = Files.createTempFile(this.dir, file.getFileName().toString(), ".tmp");
+			try {
+				CRC32 crc = new CRC32();
+				try (OutputStream os = Files.newOutputStream(tmp);
+						DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(os), crc))) {
+					out.writeInt(MAGIC);
+					out.writeInt(FORMAT_VERSION);
+					out.writeUTF(location);
+					writeNullable(out, entry.eTag);
+					writeNullable(out, entry.lastModified);
+					out.writeInt(entry.words.size());
+					for (String word : entry.words) {
+						out.writeUTF(word);
+					}
+					out.flush();
+					out.writeLong(crc.getValue());
+				}
+				try {
+					Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+				} catch (AtomicMoveNotSupportedException e) {
+					Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+				}
+			} finally {
+				Files.deleteIfExists(tmp);
+			}
+		} catch (IOException | SecurityException e) {
+			logger.warn("[Dict Loading] unable to write {}: {}", file, e.toString());
+		}
+	}
+
+	/**
+	 * 地址对应的缓存文件
+	 */
+	Path file(String location) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(location.getBytes(StandardCharsets.UTF_8));
+			StringBuilder name = new StringBuilder(digest.length * 2 + SUFFIX.length());
+			for (byte b : digest) {
+				name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return this.dir.resolve(name.append(SUFFIX).toString());
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String readNullable(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	private static void writeNullable(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	/**
+	 * 一个远程地址的词条及其版本标识
+	 */
+	static final class Entry {
+		final Set<String> words;
+		final String eTag;
+		final String lastModified;
+
+		Entry(Set<String> words, String eTag, String lastModified) {
+			this.words = words;
+			this.eTag = eTag;
+			this.lastModified = lastModified;
+		}
+	}
+}
@@ -0,0 +1,153 @@
+/**
+ * IK 中文分词  版本 5.0
+ * IK Analyzer release 5.0
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.wltea.analyzer.dic;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 停用词集合，不可变
+ *
+ * 停用词通常只有几十到几千个，每个输出的词元都要判断一次。词条按长度分桶，每个长度一张开放寻址散列表，
+ * 表中只存放词条在字符数组中的起始位置；判断时对词元字符计算多项式散列，长度不存在的词元直接返回，全程不分配对象
+ */
+public final class StopWordSet {
+
+    /**
+     * 空集合，不过滤任何词元
+     */
+    public static final StopWordSet EMPTY = new StopWordSet(new ArrayList<String>());
+
+    //全部词条首尾相接
+    private final char[] chars;
+    //词长 -> 散列表，槽位为词条在chars中的起始位置加1，0为空槽；没有该长度的词条时为null
+    private final int[][] tables;
+    private final int size;
+
+    private StopWordSet(Collection<String> words) {
+        Set<String> distinct = new LinkedHashSet<String>(words);
+        int maxLength = 0;
+        int total = 0;
+        for (String word : distinct) {
+            maxLength = Math.max(maxLength, word.length());
+            total += word.length();
+        }
+        int[] counts = new int[maxLength + 1];
+        for (String word : distinct) {
+            counts[word.length()]++;
+        }
+        this.tables = new int[maxLength + 1][];
+        for (int length = 1; length <= maxLength; length++) {
+            if (counts[length] > 0) {
+                //装载因子不超过0.5
+                int capacity = Integer.highestOneBit(counts[length]) << 2;
+                this.tables[length] = new int[capacity];
+            }
+        }
+        this.chars = new char[total];
+        int offset = 0;
+        for (String word : distinct) {
+            int length = word.length();
+            if (length == 0) {
+                continue;
+            }
+            word.getChars(0, length, this.chars, offset);
+            int[] table = this.tables[length];
+            int mask = table.length - 1;
+            int slot = hash(this.chars, offset, length) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = offset + 1;
+            offset += length;
+        }
+        this.size = distinct.contains("") ? distinct.size() - 1 : distinct.size();
+    }
+
+    /**
+     * 由词条构建停用词集合
+     */
+    public static StopWordSet of(Collection<String> words) {
+        return words.isEmpty() ? EMPTY : new StopWordSet(words);
+    }
+
+    /**
+     * 由词条及文本词典构建停用词集合
+     * @param words 词条
+     * @param file 文本词典，UTF-8编码，每行一个词；为null则只使用words
+     */
+    public static StopWordSet of(Collection<String> words, Path file) throws IOException {
+        if (file == null) {
+            return of(words);
+        }
+        List<String> all = new ArrayList<String>(words);
+        DictionaryCompiler.readWords(file, word -> all.add(WordFrequency.word(word)));
+        return of(all);
+    }
+
+    /**
+     * 判断词段是否为停用词
+     */
+    public boolean contains(char[] charArray, int begin, int length) {
+        if (length <= 0 || length >= this.tables.length) {
+            return false;
+        }
+        int[] table = this.tables[length];
+        if (table == null) {
+            return false;
+        }
+        int mask = table.length - 1;
+        int slot = hash(charArray, begin, length) & mask;
+        for (int entry; (entry = table[slot]) != 0; slot = (slot + 1) & mask) {
+            if (equals(charArray, begin, entry - 1, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    private boolean equals(char[] charArray, int begin, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            if (charArray[begin + i] != this.chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(char[] charArray, int begin, int length) {
+        int h = 0;
+        for (int i = begin, end = begin + length; i < end; i++) {
+            h = 31 * h + charArray[i];
+        }
+        //打散低位，槽位取低位
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,266 @@
+/**
+ * IK 中文分词  版本 5.0
+ * IK Analyzer release 5.0
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.wltea.analyzer.dic;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.elasticsearch.common.xcontent.ToXContentFragment;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+/**
+ * 一个词典的结构统计，不可变
+ *
+ * 基础词典（双数组）及增量词典树分别统计节点数、词条数、最大深度及子节点数分布，增量词典树另统计数组方式与散列表方式存储的节点数；
+ * 子节点数分布按2的幂分桶：0、1、2-3、4-7 …… 统计时遍历整个词典，代价与节点数成正比，只在查询统计时计算。
+ * FST格式的基础词典不能按节点遍历，只给出编译时记录的节点数、词条数及最长词长
+ */
+public final class TrieStats implements ToXContentFragment {
+
+    //子节点数分布的桶数，最后一个桶为 2^(FAN_OUT_BUCKETS-2) 及以上
+    private static final int FAN_OUT_BUCKETS = 18;
+
+    //基础词典的格式：double_array 或 fst
+    private final String format;
+    //叠加后启用的词条数
+    private final long words;
+    private final long heapBytes;
+    private final long offHeapBytes;
+    private final boolean mapped;
+    private final Structure base;
+    //没有增量词典时为null
+    private final Structure overlay;
+
+    private TrieStats(String format, long words, long heapBytes, long offHeapBytes, boolean mapped, Structure base,
+            Structure overlay) {
+        this.format = format;
+        this.words = words;
+        this.heapBytes = heapBytes;
+        this.offHeapBytes = offHeapBytes;
+        this.mapped = mapped;
+        this.base = base;
+        this.overlay = overlay;
+    }
+
+    /**
+     * 统计叠加了增量词典的基础词典
+     */
+    static TrieStats of(OverlayTrie trie) {
+        BaseTrie baseTrie = trie.getBase();
+        Structure base = baseTrie instanceof DoubleArrayTrie ? of((DoubleArrayTrie) baseTrie) : of((FstTrie) baseTrie);
+        Structure overlay = null;
+        long words = base.words;
+        if (trie.getOverlay() != null) {
+            overlay = new Structure(true);
+            //增量词典的根节点与基础词典的根节点对应
+            words += overlay.walk(trie.getOverlay(), baseTrie, BaseTrie.ROOT, 0);
+        }
+        return new TrieStats(baseTrie instanceof DoubleArrayTrie ? "double_array" : "fst", words, trie.ramBytesUsed(),
+                trie.offHeapBytesUsed(), trie.isMapped(), base, overlay);
+    }
+
+    private static Structure of(FstTrie fst) {
+        Structure s = new Structure(false);
+        s.nodes = fst.getNodeCount();
+        s.words = fst.getWordCount();
+        s.maxDepth = fst.getMaxLength();
+        return s;
+    }
+
+    private static Structure of(DoubleArrayTrie dat) {
+        Structure s = new Structure(false);
+        int size = dat.getSize();
+        int[] children = new int[size];
+        //各节点的深度，-1为尚未计算；双数组中父节点的下标不一定小于子节点，沿父节点回溯求深度
+        int[] depth = new int[size];
+        Arrays.fill(depth, -1);
+        depth[DoubleArrayTrie.ROOT] = 0;
+        int[] path = new int[64];
+        for (int t = 1; t < size; t++) {
+            int parent = dat.parent(t);
+            if (parent < 0) {
+                continue;
+            }
+            children[parent]++;
+            if (dat.isWord(t)) {
+                s.words++;
+            }
+            int len = 0;
+            for (int n = t; depth[n] < 0; n = dat.parent(n)) {
+                if (len == path.length) {
+                    path = Arrays.copyOf(path, len * 2);
+                }
+                path[len++] = n;
+            }
+            for (int i = len - 1; i >= 0; i--) {
+                depth[path[i]] = depth[dat.parent(path[i])] + 1;
+            }
+            s.maxDepth = Math.max(s.maxDepth, depth[t]);
+        }
+        for (int t = 0; t < size; t++) {
+            if (t == DoubleArrayTrie.ROOT || dat.parent(t) >= 0) {
+                s.nodes++;
+                s.fanOut[bucket(children[t])]++;
+            }
+        }
+        return s;
+    }
+
+    private static int bucket(int children) {
+        return Math.min(32 - Integer.numberOfLeadingZeros(children), FAN_OUT_BUCKETS - 1);
+    }
+
+    private static String bucketName(int bucket) {
+        if (bucket <= 1) {
+            return Integer.toString(bucket);
+        }
+        int from = 1 << (bucket - 1);
+        return bucket == FAN_OUT_BUCKETS - 1 ? from + "+" : from + "-" + ((from << 1) - 1);
+    }
+
+    /**
+     * 叠加增量词典后启用的词条数
+     */
+    public long getWords() {
+        return words;
+    }
+
+    /**
+     * 堆内存字节数，包括增量词典树的估算值
+     */
+    public long getHeapBytes() {
+        return heapBytes;
+    }
+
+    public long getOffHeapBytes() {
+        return offHeapBytes;
+    }
+
+    /**
+     * 双数组是否映射自预编译文件
+     */
+    public boolean isMapped() {
+        return mapped;
+    }
+
+    public long getBaseNodes() {
+        return base.nodes;
+    }
+
+    public long getOverlayNodes() {
+        return overlay == null ? 0 : overlay.nodes;
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.field("format", format);
+        builder.field("words", words);
+        builder.field("heap_bytes", heapBytes);
+        builder.field("off_heap_bytes", offHeapBytes);
+        builder.field("mapped", mapped);
+        builder.startObject("base");
+        base.toXContent(builder);
+        builder.endObject();
+        if (overlay != null) {
+            builder.startObject("overlay");
+            overlay.toXContent(builder);
+            builder.endObject();
+        }
+        return builder;
+    }
+
+    /**
+     * 一棵词典树的结构
+     */
+    private static final class Structure {
+        //是否为增量词典树
+        final boolean overlay;
+        long nodes;
+        //基础词典中为启用的词条数；增量词典树中为设置为启用的词条数
+        long words;
+        //增量词典树中设置为屏蔽的词条数
+        long disabledWords;
+        //增量词典树中有子节点的节点，按存储方式计数
+        long arrayNodes;
+        long tableNodes;
+        int maxDepth;
+        final long[] fanOut = new long[FAN_OUT_BUCKETS];
+
+        Structure(boolean overlay) {
+            this.overlay = overlay;
+        }
+
+        /**
+         * 遍历增量词典树，同时在基础词典中沿同一路径转移
+         * @param baseNode 基础词典中对应的节点，路径不在基础词典中时为-1
+         * @return 该子树使叠加后的词条数增加的数目
+         */
+        long walk(DictSegment ds, BaseTrie base, int baseNode, int depth) {
+            long delta = 0;
+            this.nodes++;
+            this.maxDepth = Math.max(this.maxDepth, depth);
+            this.fanOut[bucket(ds.getStoreSize())]++;
+            if (ds.hasNextNode()) {
+                if (ds.isTableMode()) {
+                    this.tableNodes++;
+                } else {
+                    this.arrayNodes++;
+                }
+            }
+            for (DictSegment child : ds.getChildren()) {
+                int b = baseNode < 0 ? -1 : base.transition(baseNode, child.getNodeChar());
+                boolean baseWord = b >= 0 && base.isWord(b);
+                if (child.isWord()) {
+                    this.words++;
+                    delta += baseWord ? 0 : 1;
+                } else if (child.isDisabled()) {
+                    this.disabledWords++;
+                    delta -= baseWord ? 1 : 0;
+                }
+                delta += walk(child, base, b, depth + 1);
+            }
+            return delta;
+        }
+
+        void toXContent(XContentBuilder builder) throws IOException {
+            builder.field("nodes", nodes);
+            if (overlay) {
+                builder.field("enabled_words", words);
+                builder.field("disabled_words", disabledWords);
+                builder.field("array_nodes", arrayNodes);
+                builder.field("table_nodes", tableNodes);
+            } else {
+                builder.field("words", words);
+            }
+            builder.field("max_depth", maxDepth);
+            //FST没有子节点数分布
+            if (fanOut[0] > 0) {
+                builder.startObject("fan_out");
+                for (int i = 0; i < FAN_OUT_BUCKETS; i++) {
+                    if (fanOut[i] > 0) {
+                        builder.field(bucketName(i), fanOut[i]);
+                    }
+                }
+                builder.endObject();
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * IK 中文分词  版本 5.0
+ * IK Analyzer release 5.0
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.wltea.analyzer.dic;
+
+/**
+ * 词频
+ *
+ * 词典每行可在词后以制表符附带词频，如 "词\t1234"，未附带的词频为0（未标注）。
+ * 词频按对数量化为1~63的编码，每个编码相差根号2倍：双数组中存放在节点状态字节的高6位，
+ * 增量词典树中存放在节点上，FST中作为词的输出，都不额外增加节点
+ */
+final class WordFrequency {
+
+    //编码上限，占6位
+    static final int MAX_CODE = 63;
+    //未标注词频的词按该词频计算
+    static final double DEFAULT_FREQUENCY = 1;
+    //不在词典中的单字按该词频计算，低于任何词
+    static final double UNKNOWN_FREQUENCY = 0.5;
+
+    //词频最多18位数字，不会溢出long
+    private static final int MAX_DIGITS = 18;
+
+    //各编码词频的自然对数
+    private static final double[] LOG_FREQUENCY = new double[MAX_CODE + 1];
+
+    static {
+        for (int code = 0; code <= MAX_CODE; code++) {
+            LOG_FREQUENCY[code] = Math.log(decode(code));
+        }
+    }
+
+    private WordFrequency() {
+    }
+
+    /**
+     * 词条中的词：去掉词频列，没有词频列时即为词条本身
+     */
+    static String word(String entry) {
+        int tab = separator(entry);
+        return tab < 0 ? entry : entry.substring(0, tab).trim();
+    }
+
+    /**
+     * 词条附带的词频，没有时返回0
+     */
+    static long frequency(String entry) {
+        int tab = separator(entry);
+        return tab < 0 ? 0 : Long.parseLong(entry.substring(tab + 1));
+    }
+
+    /**
+     * 词条附带词频的编码，没有时返回0
+     */
+    static int code(String entry) {
+        return encode(frequency(entry));
+    }
+
+    /**
+     * 由词及词频生成词条
+     */
+    static String entry(String word, long frequency) {
+        return frequency <= 0 ? word : word + '\t' + frequency;
+    }
+
+    /**
+     * 词频编码：1 + 2 * log2(词频)，四舍五入，超出上限取上限；词频不大于0时为0
+     */
+    static int encode(long frequency) {
+        if (frequency <= 0) {
+            return 0;
+        }
+        long code = 1 + Math.round(2 * Math.log(frequency) / Math.log(2));
+        return (int) Math.min(MAX_CODE, code);
+    }
+
+    /**
+     * 编码还原的词频，编码为0（未标注）时为默认词频
+     */
+    static double decode(int code) {
+        return code == 0 ? DEFAULT_FREQUENCY : Math.pow(2, (code - 1) / 2.0);
+    }
+
+    /**
+     * 编码还原的词频的自然对数
+     */
+    static double logFrequency(int code) {
+        return LOG_FREQUENCY[code];
+    }
+
+    /**
+     * 最后一个制表符的位置，其后须为1~18位数字，且之前有词；否则返回-1，整行都是词
+     */
+    private static int separator(String entry) {
+        int tab = entry.lastIndexOf('\t');
+        int digits = entry.length() - tab - 1;
+        if (tab <= 0 || digits == 0 || digits > MAX_DIGITS) {
+            return -1;
+        }
+        for (int i = tab + 1; i < entry.length(); i++) {
+            char c = entry.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+        }
+        return tab;
+    }
+}
@@ -119,6 +119,16 @@ public final class IKTokenizer extends Tokenizer { // NOTE:htt, ik 分词器
         skippedPositions = 0;
 	}	
 	
+	/*
+	 * 归还分词上下文，复用时由reset重新借用
+	 * @see org.apache.lucene.analysis.Tokenizer#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		super.close();
+		_IKImplement.close();
+	}
+	
 	@Override
 	public final void end() throws IOException {
         super.end();
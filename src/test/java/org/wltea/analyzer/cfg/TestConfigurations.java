@@ -0,0 +1,71 @@
+package org.wltea.analyzer.cfg;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Map;
+
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.env.Environment;
+
+/**
+ * 测试用的配置：在临时的ES目录下放入插件自带的基础词典（config目录），并生成词典集合的配置文件
+ *
+ * 基础词典在JVM内只加载一次，各测试使用各自的词典集合，互不影响
+ */
+public final class TestConfigurations {
+
+	//插件自带的基础词典，相对于项目目录
+	private static final Path PLUGIN_CONFIG = Paths.get("config");
+
+	private static final String[] BASE_DICTS = { "main.dic", "quantifier.dic", "stopword.dic", "surname.dic",
+			"suffix.dic", "preposition.dic" };
+
+	private TestConfigurations() {
+	}
+
+	/**
+	 * @param home ES目录，配置写入 home/config/analysis-ik
+	 * @param dictionarySet 词典集合名称
+	 * @param entries 词典集合配置文件中的各项
+	 * @param settings 分析器的其它设置，可以为null
+	 */
+	public static Configuration create(Path home, String dictionarySet, Map<String, String> entries, Settings settings)
+			throws IOException {
+		Path conf = home.resolve("config").resolve("analysis-ik");
+		Files.createDirectories(conf);
+		for (String dict : BASE_DICTS) {
+			if (!Files.exists(conf.resolve(dict))) {
+				Files.copy(PLUGIN_CONFIG.resolve(dict), conf.resolve(dict));
+			}
+		}
+		if (!Files.exists(conf.resolve("IKAnalyzer.cfg.xml"))) {
+			Files.write(conf.resolve("IKAnalyzer.cfg.xml"), properties(Collections.<String, String>emptyMap()));
+		}
+		Files.write(conf.resolve("IKAnalyzer-" + dictionarySet + ".cfg.xml"), properties(entries));
+
+		Settings.Builder builder = Settings.builder().put("path.home", home.toString())
+				.put("dictionary_set", dictionarySet).put("enable_remote_dict", "false")
+				.put("enable_autocheck_dict", "false");
+		if (settings != null) {
+			builder.put(settings);
+		}
+		Settings all = builder.build();
+		return new Configuration(new Environment(all, null), all);
+	}
+
+	private static byte[] properties(Map<String, String> entries) {
+		StringBuilder xml = new StringBuilder();
+		xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		xml.append("<!DOCTYPE properties SYSTEM \"http://java.sun.com/dtd/properties.dtd\">\n");
+		xml.append("<properties>\n");
+		for (Map.Entry<String, String> entry : entries.entrySet()) {
+			xml.append("\t<entry key=\"").append(entry.getKey()).append("\">").append(entry.getValue()).append("</entry>\n");
+		}
+		xml.append("</properties>\n");
+		return xml.toString().getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,411 @@
+package org.wltea.analyzer.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Stack;
+import java.util.TreeSet;
+
+import org.elasticsearch.common.settings.Settings;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wltea.analyzer.cfg.Configuration;
+import org.wltea.analyzer.cfg.TestConfigurations;
+import org.wltea.analyzer.dic.Dictionary;
+
+/**
+ * 歧义裁决：默认的规则裁决与原实现（LexemePath）逐条路径比较，在随机生成的词元网格及真实文本上选出的词元完全相同；
+ * use_smart为optimal时，动态规划选出的组合与穷举全部不相交组合得到的最优组合，
+ * 按有效文本长度、词元个数、路径跨度、结束位置、X权重、P权重逐项比较完全相同
+ */
+public class IKArbitratorTests {
+
+	//单个crossPath穷举的词元数上限
+	private static final int MAX_BRUTE_FORCE_LEXEMES = 24;
+
+	@ClassRule
+	public static TemporaryFolder home = new TemporaryFolder();
+
+	private static Configuration cfg;
+	private static Configuration optimal;
+
+	@BeforeClass
+	public static void setUpConfiguration() throws IOException {
+		cfg = TestConfigurations.create(home.getRoot().toPath(), "arbitrator", Collections.<String, String>emptyMap(), null)
+				.setUseSmart(true);
+		optimal = TestConfigurations.create(home.getRoot().toPath(), "arbitrator", Collections.<String, String>emptyMap(),
+				Settings.builder().put("use_smart", "optimal").build());
+	}
+
+	@Test
+	public void testRulesMatchLexemePathOnRandomLattices() {
+		Random random = new Random(20181018L);
+		AnalyzeContext context = new AnalyzeContext(cfg);
+		IKArbitrator arbitrator = new IKArbitrator();
+		int paths = 0;
+		for (int round = 0; round < 20000; round++) {
+			LexemeLattice lattice = context.getOrgLexemes();
+			lattice.clear();
+			randomLattice(random, lattice);
+			paths += this.checkAgainstLexemePath(arbitrator, context, "round " + round);
+		}
+		assertTrue(paths > 10000);
+	}
+
+	@Test
+	public void testRulesMatchLexemePathOnText() throws IOException {
+		SegmentationContext segmentation = SegmentationContext.borrow(cfg);
+		int paths = 0;
+		int lines = 0;
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				IKArbitratorTests.class.getResourceAsStream("arbitrator-corpus.txt"), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				segmentation.reset();
+				this.segment(segmentation, line);
+				paths += this.checkAgainstLexemePath(segmentation.arbitrator, segmentation.context, line);
+				lines++;
+			}
+		}
+		// 确认语料中确实有足够多的歧义路径
+		assertEquals(81, lines);
+		assertTrue("ambiguous paths " + paths, paths > 100);
+	}
+
+	@Test
+	public void testSmartOutputUnchanged() throws IOException {
+		// 原实现的ik_smart结果
+		assertEquals("八七平方厘米/粒", smart(cfg, "八七平方厘米粒"));
+		assertEquals("政教合一/三/七一/八", smart(cfg, "政教合一三七一八"));
+		assertEquals("两八十八/颗", smart(cfg, "两八十八颗"));
+		assertEquals("概率坐标纸/工", smart(cfg, "概率坐标纸工"));
+		assertEquals("中华人民共和国/国歌", smart(cfg, "中华人民共和国国歌"));
+	}
+
+	@Test
+	public void testOptimalMatchesExhaustiveSearch() {
+		Random random = new Random(20181017L);
+		AnalyzeContext context = new AnalyzeContext(optimal);
+		IKArbitrator arbitrator = new IKArbitrator(false, true);
+		int paths = 0;
+		for (int round = 0; round < 20000; round++) {
+			LexemeLattice lattice = context.getOrgLexemes();
+			lattice.clear();
+			randomLattice(random, lattice);
+			List<int[][]> crossPaths = crossPaths(lattice);
+			arbitrator.process(context, true);
+
+			assertEquals(crossPaths.size(), lattice.getPathCount());
+			for (int p = 0; p < crossPaths.size(); p++) {
+				int[][] candidates = crossPaths.get(p);
+				if (candidates.length < 2 || candidates.length > MAX_BRUTE_FORCE_LEXEMES) {
+					continue;
+				}
+				assertArrayEquals("round " + round + ", path " + p, bestKey(candidates), key(chosen(lattice, p)));
+				paths++;
+			}
+		}
+		// 确认确实检查了足够多的歧义路径
+		assertTrue(paths > 10000);
+	}
+
+	/**
+	 * 在长度为2到15的文本上随机生成词元
+	 */
+	private static void randomLattice(Random random, LexemeLattice lattice) {
+		int length = 2 + random.nextInt(14);
+		int lexemes = 1 + random.nextInt(2 * length);
+		for (int i = 0; i < lexemes; i++) {
+			int begin = random.nextInt(length);
+			lattice.add(begin, 1 + random.nextInt(Math.min(4, length - begin)), Lexeme.TYPE_CNWORD);
+		}
+	}
+
+	/**
+	 * 按IKSegmenter的方式用子分词器处理一行文本，得到歧义处理前的词元网格
+	 */
+	private void segment(SegmentationContext segmentation, String text) throws IOException {
+		AnalyzeContext context = segmentation.context;
+		context.setDictionary(Dictionary.getDictionary(cfg.getDictionarySet()).getSnapshot());
+		assertEquals(text.length(), context.fillBuffer(new StringReader(text)));
+		context.initCursor();
+		do {
+			for (int i = 0; i < segmentation.segmenters.size(); i++) {
+				segmentation.segmenters.get(i).analyze(context);
+			}
+		} while (context.moveCursor());
+	}
+
+	/**
+	 * 对网格做歧义处理，逐条比较有歧义的crossPath与原实现选出的词元
+	 * @return 比较的crossPath数
+	 */
+	private int checkAgainstLexemePath(IKArbitrator arbitrator, AnalyzeContext context, String message) {
+		LexemeLattice lattice = context.getOrgLexemes();
+		List<int[][]> crossPaths = crossPaths(lattice);
+		arbitrator.process(context, true);
+
+		assertEquals(message, crossPaths.size(), lattice.getPathCount());
+		int paths = 0;
+		for (int p = 0; p < crossPaths.size(); p++) {
+			if (crossPaths.get(p).length < 2) {
+				continue;
+			}
+			int[][] expected = LexemePath.judge(crossPaths.get(p));
+			int[][] actual = chosen(lattice, p);
+			assertEquals(message + ", path " + p, expected.length, actual.length);
+			for (int i = 0; i < expected.length; i++) {
+				assertArrayEquals(message + ", path " + p, expected[i], actual[i]);
+			}
+			paths++;
+		}
+		return paths;
+	}
+
+	private static String smart(Configuration configuration, String text) throws IOException {
+		IKSegmenter segmenter = new IKSegmenter(new StringReader(text), configuration);
+		StringBuilder tokens = new StringBuilder();
+		for (Lexeme l = segmenter.next(); l != null; l = segmenter.next()) {
+			tokens.append(tokens.length() == 0 ? "" : "/").append(l.getLexemeText());
+		}
+		return tokens.toString();
+	}
+
+	/**
+	 * 第p条路径选出的词元，每个词元为 {起始位置, 长度}
+	 */
+	private static int[][] chosen(LexemeLattice lattice, int p) {
+		int[][] chosen = new int[lattice.getPathEnd(p) - lattice.getPathStart(p)][];
+		for (int i = 0; i < chosen.length; i++) {
+			int l = lattice.getChosen(lattice.getPathStart(p) + i);
+			chosen[i] = new int[] { lattice.getBegin(l), lattice.getLength(l) };
+		}
+		return chosen;
+	}
+
+	/**
+	 * 按裁决器的方式将网格中的词元分为互不相交的crossPath，每个词元为 {起始位置, 长度}
+	 */
+	private static List<int[][]> crossPaths(LexemeLattice lattice) {
+		List<int[][]> paths = new ArrayList<int[][]>();
+		List<int[]> current = new ArrayList<int[]>();
+		int pathEnd = -1;
+		for (int l = lattice.first(); l >= 0; l = lattice.next(l)) {
+			int begin = lattice.getBegin(l);
+			if (!current.isEmpty() && begin >= pathEnd) {
+				paths.add(current.toArray(new int[0][]));
+				current.clear();
+			}
+			current.add(new int[] { begin, lattice.getLength(l) });
+			pathEnd = Math.max(pathEnd, begin + lattice.getLength(l));
+		}
+		if (!current.isEmpty()) {
+			paths.add(current.toArray(new int[0][]));
+		}
+		return paths;
+	}
+
+	/**
+	 * 穷举全部非空的不相交组合，返回最优组合的比较键
+	 */
+	private static long[] bestKey(int[][] candidates) {
+		return enumerate(candidates, 0, -1, new ArrayList<int[]>(), null);
+	}
+
+	/**
+	 * 依次尝试在组合末尾接上从from开始、不早于end起始的各个词元
+	 */
+	private static long[] enumerate(int[][] candidates, int from, int end, List<int[]> path, long[] best) {
+		if (!path.isEmpty()) {
+			long[] key = key(path.toArray(new int[0][]));
+			if (best == null || compare(key, best) > 0) {
+				best = key;
+			}
+		}
+		for (int i = from; i < candidates.length; i++) {
+			if (candidates[i][0] >= end) {
+				path.add(candidates[i]);
+				best = enumerate(candidates, i + 1, candidates[i][0] + candidates[i][1], path, best);
+				path.remove(path.size() - 1);
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * 组合的比较键，逐项越大越优：有效文本长度、-词元个数、路径跨度、结束位置、X权重、P权重
+	 */
+	private static long[] key(int[][] path) {
+		long payload = 0;
+		long xWeight = 1;
+		long pWeight = 0;
+		for (int i = 0; i < path.length; i++) {
+			payload += path[i][1];
+			xWeight *= path[i][1];
+			pWeight += (long) (i + 1) * path[i][1];
+		}
+		int begin = path[0][0];
+		int end = path[path.length - 1][0] + path[path.length - 1][1];
+		return new long[] { payload, -path.length, end - begin, end, xWeight, pWeight };
+	}
+
+	private static int compare(long[] a, long[] b) {
+		for (int i = 0; i < a.length; i++) {
+			if (a[i] != b[i]) {
+				return a[i] > b[i] ? 1 : -1;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * 原实现的词元链及歧义识别，词元为 {起始位置, 长度}，用作对照
+	 */
+	private static final class LexemePath implements Comparable<LexemePath> {
+
+		private final List<int[]> lexemes = new ArrayList<int[]>();
+		private int pathBegin = -1;
+		private int pathEnd = -1;
+		private int payloadLength;
+
+		/**
+		 * 正向遍历得到第一个方案，再按冲突词元逆序回滚并正向遍历生成其余方案，取TreeSet中的最优方案
+		 */
+		static int[][] judge(int[][] crossPath) {
+			TreeSet<LexemePath> pathOptions = new TreeSet<LexemePath>();
+			LexemePath option = new LexemePath();
+			Stack<Integer> lexemeStack = option.forwardPath(crossPath, 0);
+			pathOptions.add(option.copy());
+			while (!lexemeStack.isEmpty()) {
+				int c = lexemeStack.pop();
+				while (option.checkCross(crossPath[c])) {
+					option.removeTail();
+				}
+				option.forwardPath(crossPath, c);
+				pathOptions.add(option.copy());
+			}
+			return pathOptions.first().lexemes.toArray(new int[0][]);
+		}
+
+		private Stack<Integer> forwardPath(int[][] crossPath, int from) {
+			Stack<Integer> conflictStack = new Stack<Integer>();
+			for (int i = from; i < crossPath.length; i++) {
+				if (!this.addNotCrossLexeme(crossPath[i])) {
+					conflictStack.push(i);
+				}
+			}
+			return conflictStack;
+		}
+
+		private boolean addNotCrossLexeme(int[] lexeme) {
+			if (this.lexemes.isEmpty()) {
+				this.lexemes.add(lexeme);
+				this.pathBegin = lexeme[0];
+				this.pathEnd = lexeme[0] + lexeme[1];
+				this.payloadLength += lexeme[1];
+				return true;
+			} else if (this.checkCross(lexeme)) {
+				return false;
+			} else {
+				this.addLexeme(lexeme);
+				this.payloadLength += lexeme[1];
+				this.pathBegin = this.lexemes.get(0)[0];
+				int[] tail = this.lexemes.get(this.lexemes.size() - 1);
+				this.pathEnd = tail[0] + tail[1];
+				return true;
+			}
+		}
+
+		/**
+		 * 与QuickSortSet相同，按起始位置、长度倒序插入，不与之前的词元相交的词元可能插在最前
+		 */
+		private void addLexeme(int[] lexeme) {
+			int i = this.lexemes.size();
+			while (i > 0 && (this.lexemes.get(i - 1)[0] > lexeme[0]
+					|| (this.lexemes.get(i - 1)[0] == lexeme[0] && this.lexemes.get(i - 1)[1] < lexeme[1]))) {
+				i--;
+			}
+			this.lexemes.add(i, lexeme);
+		}
+
+		private void removeTail() {
+			int[] tail = this.lexemes.remove(this.lexemes.size() - 1);
+			if (this.lexemes.isEmpty()) {
+				this.pathBegin = -1;
+				this.pathEnd = -1;
+				this.payloadLength = 0;
+			} else {
+				this.payloadLength -= tail[1];
+				int[] newTail = this.lexemes.get(this.lexemes.size() - 1);
+				this.pathEnd = newTail[0] + newTail[1];
+			}
+		}
+
+		private boolean checkCross(int[] lexeme) {
+			return (lexeme[0] >= this.pathBegin && lexeme[0] < this.pathEnd)
+					|| (this.pathBegin >= lexeme[0] && this.pathBegin < lexeme[0] + lexeme[1]);
+		}
+
+		private int getXWeight() {
+			int product = 1;
+			for (int[] lexeme : this.lexemes) {
+				product *= lexeme[1];
+			}
+			return product;
+		}
+
+		private int getPWeight() {
+			int pWeight = 0;
+			int p = 0;
+			for (int[] lexeme : this.lexemes) {
+				p++;
+				pWeight += p * lexeme[1];
+			}
+			return pWeight;
+		}
+
+		private LexemePath copy() {
+			LexemePath theCopy = new LexemePath();
+			theCopy.pathBegin = this.pathBegin;
+			theCopy.pathEnd = this.pathEnd;
+			theCopy.payloadLength = this.payloadLength;
+			theCopy.lexemes.addAll(this.lexemes);
+			return theCopy;
+		}
+
+		@Override
+		public int compareTo(LexemePath o) {
+			if (this.payloadLength != o.payloadLength) {
+				return this.payloadLength > o.payloadLength ? -1 : 1;
+			}
+			if (this.lexemes.size() != o.lexemes.size()) {
+				return this.lexemes.size() < o.lexemes.size() ? -1 : 1;
+			}
+			if (this.pathEnd - this.pathBegin != o.pathEnd - o.pathBegin) {
+				return this.pathEnd - this.pathBegin > o.pathEnd - o.pathBegin ? -1 : 1;
+			}
+			if (this.pathEnd != o.pathEnd) {
+				return this.pathEnd > o.pathEnd ? -1 : 1;
+			}
+			if (this.getXWeight() != o.getXWeight()) {
+				return this.getXWeight() > o.getXWeight() ? -1 : 1;
+			}
+			if (this.getPWeight() != o.getPWeight()) {
+				return this.getPWeight() > o.getPWeight() ? -1 : 1;
+			}
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package org.wltea.analyzer.core;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.lucene.index.IndexWriter;
+import org.elasticsearch.common.settings.Settings;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wltea.analyzer.cfg.Configuration;
+import org.wltea.analyzer.cfg.TestConfigurations;
+
+/**
+ * 超长的字母数字串、中文数词等在缓冲区扩容后仍按max_token_length切分，输出的每个词项都不超过Lucene的词项长度限制
+ */
+public class IKSegmenterTests {
+
+	private static final String ALPHANUMERIC = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+
+	@Rule
+	public TemporaryFolder temp = new TemporaryFolder();
+
+	private Configuration configuration(Settings settings) throws IOException {
+		return TestConfigurations.create(temp.getRoot().toPath(), "tokens", Collections.<String, String>emptyMap(), settings);
+	}
+
+	@Test
+	public void testLongLetterRunFitsTermLimit() throws IOException {
+		Random random = new Random(25L);
+		StringBuilder run = new StringBuilder();
+		while (run.length() < 40000) {
+			run.append(ALPHANUMERIC.charAt(random.nextInt(ALPHANUMERIC.length())));
+		}
+		String text = "base64 " + run + " 结束";
+		assertThat(run.toString().getBytes(StandardCharsets.UTF_8).length, greaterThan(IndexWriter.MAX_TERM_LENGTH));
+
+		for (String smart : new String[] { "false", "true" }) {
+			long forced = IKSegmenter.getForcedBoundaries();
+			List<String> tokens = analyze(configuration(Settings.builder().put("use_smart", smart).build()), text);
+			assertFits(tokens, 4096);
+			assertThat(IKSegmenter.getForcedBoundaries() - forced, greaterThan(0L));
+			if (smart.equals("true")) {
+				// 切分后的各段首尾相接，覆盖整个字母数字串
+				assertThat(String.join("", tokens.subList(1, tokens.size() - 1)), is(run.toString().toLowerCase()));
+			}
+		}
+	}
+
+	@Test
+	public void testLongNumeralRunFitsTermLimit() throws IOException {
+		StringBuilder run = new StringBuilder();
+		while (run.length() < 12000) {
+			run.append("一二三四五六七八九十");
+		}
+		assertThat(run.toString().getBytes(StandardCharsets.UTF_8).length, greaterThan(IndexWriter.MAX_TERM_LENGTH));
+
+		// 最大长度取上限时，每个字符3个字节的词项也不超过限制
+		int limit = IndexWriter.MAX_TERM_LENGTH / 3;
+		for (String smart : new String[] { "false", "true" }) {
+			List<String> tokens = analyze(configuration(Settings.builder().put("use_smart", smart)
+					.put("max_token_length", limit).build()), run.toString());
+			assertFits(tokens, limit);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMaxTokenLengthAboveTermLimit() throws IOException {
+		configuration(Settings.builder().put("max_token_length", IndexWriter.MAX_TERM_LENGTH / 3 + 1).build());
+	}
+
+	private static void assertFits(List<String> tokens, int maxLength) {
+		for (String token : tokens) {
+			assertThat(token.length(), lessThanOrEqualTo(maxLength));
+			assertThat(token.getBytes(StandardCharsets.UTF_8).length, lessThanOrEqualTo(IndexWriter.MAX_TERM_LENGTH));
+		}
+	}
+
+	private static List<String> analyze(Configuration configuration, String text) throws IOException {
+		IKSegmenter segmenter = new IKSegmenter(new StringReader(text), configuration);
+		List<String> tokens = new ArrayList<String>();
+		for (Lexeme l = segmenter.next(); l != null; l = segmenter.next()) {
+			tokens.add(l.getLexemeText());
+		}
+		return tokens;
+	}
+}
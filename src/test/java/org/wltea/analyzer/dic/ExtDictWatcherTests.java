@@ -0,0 +1,65 @@
+package org.wltea.analyzer.dic;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.elasticsearch.common.settings.Settings;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wltea.analyzer.cfg.TestConfigurations;
+
+/**
+ * 扩展词典文件删除后移除其词条，重新创建后再次加载
+ */
+public class ExtDictWatcherTests {
+
+	@Rule
+	public TemporaryFolder temp = new TemporaryFolder();
+
+	@Test
+	public void testDeletedFileDropsItsWords() throws IOException {
+		Path home = temp.newFolder().toPath();
+		Path dict = home.resolve("config").resolve("analysis-ik").resolve("deleted.dic");
+		Files.createDirectories(dict.getParent());
+		Files.write(dict, "将被删除的词条\n".getBytes(StandardCharsets.UTF_8));
+		Map<String, String> entries = new HashMap<String, String>();
+		entries.put("ext_dict", "deleted.dic");
+		TestConfigurations.create(home, "deleted", entries,
+				Settings.builder().put("enable_autocheck_dict", "true").build());
+		Dictionary dictionary = Dictionary.getDictionary("deleted");
+		assertThat(dictionary.matchInMainDict("将被删除的词条".toCharArray()).isMatch(), is(true));
+
+		Files.delete(dict);
+		dictionary.checkExtDict();
+		assertThat(dictionary.matchInMainDict("将被删除的词条".toCharArray()).isMatch(), is(false));
+
+		Files.write(dict, "将被删除的词条\n".getBytes(StandardCharsets.UTF_8));
+		dictionary.checkExtDict();
+		assertThat(dictionary.matchInMainDict("将被删除的词条".toCharArray()).isMatch(), is(true));
+	}
+
+	@Test
+	public void testStateOfDeletedFileIsMissing() throws IOException {
+		Path dict = temp.newFile("state.dic").toPath();
+		Files.write(dict, "词条\n".getBytes(StandardCharsets.UTF_8));
+		ExtDictWatcher.FileState previous = ExtDictWatcher.FileState.of(dict.toString(), null, true);
+		assertThat(previous, not(nullValue()));
+		assertThat(previous, not(sameInstance(ExtDictWatcher.FileState.MISSING)));
+
+		// 文件删除后不再保留上次的状态
+		Files.delete(dict);
+		assertThat(ExtDictWatcher.FileState.of(dict.toString(), previous, false), sameInstance(ExtDictWatcher.FileState.MISSING));
+		assertThat(ExtDictWatcher.FileState.of(dict.toString(), previous, true), sameInstance(ExtDictWatcher.FileState.MISSING));
+	}
+}
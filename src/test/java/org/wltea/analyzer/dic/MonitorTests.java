@@ -0,0 +1,169 @@
+package org.wltea.analyzer.dic;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wltea.analyzer.cfg.TestConfigurations;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * 远程词典的检查：失败退避，以及长轮询
+ */
+public class MonitorTests {
+
+	private static final long INTERVAL = 1000;
+	//长轮询的挂起时间，挂起超过一半时立即发起下一次检查
+	private static final long LONG_POLL_TIMEOUT = 2000;
+
+	@Rule
+	public TemporaryFolder temp = new TemporaryFolder();
+
+	private HttpServer server;
+	private ExecutorService serverThreads;
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		serverThreads = Executors.newCachedThreadPool();
+		server.setExecutor(serverThreads);
+		server.start();
+	}
+
+	@After
+	public void stopServer() {
+		server.stop(0);
+		serverThreads.shutdownNow();
+		RemoteDictionary.close();
+	}
+
+	private String url(String path) {
+		return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + path;
+	}
+
+	@Test
+	public void testFailureBackoff() {
+		AtomicInteger status = new AtomicInteger(503);
+		server.createContext("/backoff.dic", exchange -> {
+			exchange.sendResponseHeaders(status.get(), -1);
+			exchange.close();
+		});
+		Monitor monitor = new Monitor(null, url("/backoff.dic"), INTERVAL, 0, 0);
+
+		List<Long> delays = new ArrayList<Long>();
+		for (int i = 0; i < 5; i++) {
+			delays.add(monitor.runUnprivileged());
+		}
+		// 按间隔的 1、3、7、15 倍退避，之后保持 15 倍
+		assertThat(delays, contains(INTERVAL, 3 * INTERVAL, 7 * INTERVAL, 15 * INTERVAL, 15 * INTERVAL));
+
+		// 成功后恢复原间隔，再次失败时重新从 1 倍开始
+		status.set(304);
+		assertThat(monitor.runUnprivileged(), is(INTERVAL));
+		status.set(500);
+		assertThat(monitor.runUnprivileged(), is(INTERVAL));
+		assertThat(monitor.runUnprivileged(), is(3 * INTERVAL));
+	}
+
+	@Test
+	public void testUnreachableServerBacksOff() {
+		String location = url("/gone.dic");
+		server.stop(0);
+		Monitor monitor = new Monitor(null, location, INTERVAL, 0, 0);
+
+		assertThat(monitor.runUnprivileged(), is(INTERVAL));
+		assertThat(monitor.runUnprivileged(), is(3 * INTERVAL));
+	}
+
+	@Test
+	public void testHeldRequestReturningChangeChecksAgainImmediately() throws Exception {
+		AtomicInteger version = new AtomicInteger(1);
+		AtomicReference<String> prefer = new AtomicReference<String>();
+		server.createContext("/longpoll.dic", exchange -> {
+			exchange.getResponseHeaders().set("ETag", "\"v" + version.get() + "\"");
+			if ("HEAD".equals(exchange.getRequestMethod())) {
+				prefer.set(exchange.getRequestHeaders().getFirst("Prefer"));
+				// 挂起一段时间后词库发生变化
+				sleep(LONG_POLL_TIMEOUT / 4);
+				version.set(2);
+				exchange.getResponseHeaders().set("ETag", "\"v2\"");
+				exchange.sendResponseHeaders(200, -1);
+			} else {
+				byte[] body = (version.get() == 1 ? "旧词条\n" : "新词条\n").getBytes(StandardCharsets.UTF_8);
+				exchange.sendResponseHeaders(200, body.length);
+				exchange.getResponseBody().write(body);
+			}
+			exchange.close();
+		});
+		Map<String, String> entries = new HashMap<String, String>();
+		entries.put("remote_ext_dict", url("/longpoll.dic"));
+		TestConfigurations.create(temp.newFolder().toPath(), "longpoll", entries, null);
+		Dictionary dictionary = Dictionary.getDictionary("longpoll");
+		assertThat(dictionary.matchInMainDict("旧词条".toCharArray()).isMatch(), is(true));
+
+		Monitor monitor = new Monitor(dictionary, url("/longpoll.dic"), INTERVAL, 0, LONG_POLL_TIMEOUT);
+		assertThat(monitor.runUnprivileged(), is(0L));
+		assertThat(prefer.get(), is("wait=" + LONG_POLL_TIMEOUT / 1000));
+		assertThat(dictionary.matchInMainDict("新词条".toCharArray()).isMatch(), is(true));
+		assertThat(dictionary.matchInMainDict("旧词条".toCharArray()).isMatch(), is(false));
+	}
+
+	@Test
+	public void testNotModifiedAfterWaitChecksAgainImmediately() {
+		AtomicReference<String> prefer = new AtomicReference<String>();
+		server.createContext("/held.dic", exchange -> {
+			prefer.set(exchange.getRequestHeaders().getFirst("Prefer"));
+			// 服务器挂起到超时仍无变化
+			sleep(LONG_POLL_TIMEOUT);
+			exchange.sendResponseHeaders(304, -1);
+			exchange.close();
+		});
+		Monitor monitor = new Monitor(null, url("/held.dic"), INTERVAL, 0, LONG_POLL_TIMEOUT);
+
+		assertThat(monitor.runUnprivileged(), is(0L));
+		assertThat(prefer.get(), is("wait=" + LONG_POLL_TIMEOUT / 1000));
+	}
+
+	@Test
+	public void testServerIgnoringPreferFallsBackToInterval() {
+		AtomicInteger requests = new AtomicInteger();
+		server.createContext("/poll.dic", exchange -> {
+			requests.incrementAndGet();
+			// 不支持长轮询的服务器立即返回
+			exchange.sendResponseHeaders(304, -1);
+			exchange.close();
+		});
+		Monitor monitor = new Monitor(null, url("/poll.dic"), INTERVAL, 0, LONG_POLL_TIMEOUT);
+
+		assertThat(monitor.runUnprivileged(), is(INTERVAL));
+		assertThat(monitor.runUnprivileged(), is(INTERVAL));
+		assertThat(requests.get(), is(2));
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,174 @@
+package org.wltea.analyzer.dic;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.elasticsearch.common.settings.Settings;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wltea.analyzer.cfg.TestConfigurations;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * 远程词典的下载：分块传输、gzip、并发下载，以及节点关闭后不留下词典线程
+ */
+public class RemoteDictionaryTests {
+
+	@Rule
+	public TemporaryFolder temp = new TemporaryFolder();
+
+	private HttpServer server;
+	private ExecutorService serverThreads;
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		serverThreads = Executors.newCachedThreadPool();
+		server.setExecutor(serverThreads);
+		server.start();
+	}
+
+	@After
+	public void stopServer() {
+		server.stop(0);
+		serverThreads.shutdownNow();
+		RemoteDictionary.close();
+	}
+
+	private String url(String path) {
+		return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + path;
+	}
+
+	private static void send(HttpExchange exchange, int code, byte[] body) throws IOException {
+		exchange.sendResponseHeaders(code, body.length == 0 ? -1 : body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	private static byte[] gzip(String text) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+			out.write(text.getBytes(StandardCharsets.UTF_8));
+		}
+		return bytes.toByteArray();
+	}
+
+	@Test
+	public void testChunkedResponse() {
+		server.createContext("/chunked.dic", exchange -> {
+			// 长度为0时以分块传输发送，响应中没有Content-Length
+			exchange.sendResponseHeaders(200, 0);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write("\uFEFF中华人民\n".getBytes(StandardCharsets.UTF_8));
+				out.flush();
+				out.write("  ElasticSearch \r\n\r\n".getBytes(StandardCharsets.UTF_8));
+				out.flush();
+				// 一个字符的UTF-8字节被拆到两个分块中
+				byte[] last = "分词器".getBytes(StandardCharsets.UTF_8);
+				out.write(last, 0, 4);
+				out.flush();
+				out.write(last, 4, last.length - 4);
+			}
+		});
+
+		Set<String> words = RemoteDictionary.load(url("/chunked.dic"));
+		assertThat(words, containsInAnyOrder("中华人民", "elasticsearch", "分词器"));
+	}
+
+	@Test
+	public void testGzipContentEncoding() {
+		server.createContext("/encoded.dic", exchange -> {
+			exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+			send(exchange, 200, gzip("压缩\n传输\n"));
+		});
+
+		assertThat(RemoteDictionary.load(url("/encoded.dic")), containsInAnyOrder("压缩", "传输"));
+	}
+
+	@Test
+	public void testGzipBody() {
+		server.createContext("/words.dic.gz", exchange -> send(exchange, 200, gzip("压缩文件\n词典\n")));
+
+		assertThat(RemoteDictionary.load(url("/words.dic.gz")), containsInAnyOrder("压缩文件", "词典"));
+	}
+
+	@Test
+	public void testSlowSourcesAreFetchedInParallel() throws Exception {
+		long delay = 1000;
+		server.createContext("/slow", exchange -> {
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			send(exchange, 200, exchange.getRequestURI().getPath().getBytes(StandardCharsets.UTF_8));
+		});
+
+		long start = System.nanoTime();
+		List<Future<Set<String>>> futures = new ArrayList<Future<Set<String>>>();
+		for (int i = 0; i < 3; i++) {
+			futures.add(RemoteDictionary.fetch(url("/slow/" + i)));
+		}
+		for (int i = 0; i < 3; i++) {
+			assertThat(futures.get(i).get(10, TimeUnit.SECONDS), containsInAnyOrder("/slow/" + i));
+		}
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		assertThat(elapsed, lessThan(2 * delay));
+	}
+
+	@Test
+	public void testNoThreadsLeftAfterShutdown() throws Exception {
+		server.createContext("/remote.dic", exchange -> send(exchange, 200, "远程词条\n".getBytes(StandardCharsets.UTF_8)));
+		Map<String, String> entries = new HashMap<String, String>();
+		entries.put("remote_ext_dict", url("/remote.dic"));
+		TestConfigurations.create(temp.newFolder().toPath(), "shutdown", entries,
+				Settings.builder().put("enable_remote_dict", "true").put("enable_autocheck_dict", "true").build());
+		assertThat(Dictionary.getDictionary("shutdown").matchInMainDict("远程词条".toCharArray()).isMatch(), is(true));
+
+		Dictionary.shutdown();
+		// 线程在响应中断后退出，稍等片刻
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		List<String> remaining = dictionaryThreads();
+		while (!remaining.isEmpty() && System.nanoTime() < deadline) {
+			Thread.sleep(50);
+			remaining = dictionaryThreads();
+		}
+		assertThat(remaining, empty());
+	}
+
+	private static List<String> dictionaryThreads() {
+		List<String> names = new ArrayList<String>();
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.isAlive() && thread.getName().startsWith("ik-dict-")) {
+				names.add(thread.getName());
+			}
+		}
+		return names;
+	}
+}